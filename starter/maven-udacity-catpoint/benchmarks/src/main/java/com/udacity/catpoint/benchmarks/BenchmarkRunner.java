@@ -0,0 +1,38 @@
+package com.udacity.catpoint.benchmarks;
+
+import org.openjdk.jmh.Main;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Entry point of the benchmark jar. Takes the usual JMH command line options and, unless a thread
+ * count is given with -t, runs the selected benchmarks once for each thread count listed in the
+ * catpoint.threads system property (default 1,2,4,8).
+ *
+ *      java -jar benchmarks-1.0-SNAPSHOT-jar-with-dependencies.jar SecurityServiceBenchmark -p sensorCount=1000
+ *      java -Dcatpoint.threads=1,16 -jar benchmarks-1.0-SNAPSHOT-jar-with-dependencies.jar -rf json
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException, IOException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        if(commandLine.shouldHelp() || commandLine.shouldList() || commandLine.shouldListWithParams()
+                || commandLine.shouldListProfilers() || commandLine.shouldListResultFormats()
+                || commandLine.getThreads().hasValue()) {
+            Main.main(args);
+            return;
+        }
+        for(String threads : System.getProperty("catpoint.threads", "1,2,4,8").split(",")) {
+            new Runner(new OptionsBuilder()
+                    .parent(commandLine)
+                    .threads(Integer.parseInt(threads.trim()))
+                    .build())
+                    .run();
+        }
+    }
+}
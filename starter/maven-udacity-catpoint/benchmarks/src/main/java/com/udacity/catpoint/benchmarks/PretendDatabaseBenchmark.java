@@ -0,0 +1,124 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+/**
+ * Benchmarks of writes to PretendDatabaseSecurityRepositoryImpl, which serializes every sensor to
+ * JSON and stores it in the user preferences on each change. The forked JVM keeps its preferences
+ * under {@value #PREFS_ROOT} in the working directory rather than in the user's own preferences, which
+ * the benchmark never touches; it refuses to run where the platform ignores that setting.
+ *
+ * The repository isn't thread safe; calls are serialized, so higher thread counts show contention
+ * rather than parallel throughput.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-D" + PretendDatabaseBenchmark.USER_ROOT + "=" + PretendDatabaseBenchmark.PREFS_ROOT)
+@State(Scope.Benchmark)
+public class PretendDatabaseBenchmark {
+
+    static final String USER_ROOT = "java.util.prefs.userRoot";
+    static final String PREFS_ROOT = "target/benchmark-prefs";
+
+    @Param({"10", "50"})
+    public int sensorCount;
+
+    private Preferences prefs;
+    private PretendDatabaseSecurityRepositoryImpl repository;
+    private Sensor[] sensors;
+
+    @Setup(Level.Trial)
+    public void setUp() throws BackingStoreException {
+        //only the file based preferences read the root from the system property
+        if(!PREFS_ROOT.equals(System.getProperty(USER_ROOT))
+                || !Preferences.userRoot().getClass().getName().equals("java.util.prefs.FileSystemPreferences")) {
+            throw new IllegalStateException("Preferences are not redirected to " + PREFS_ROOT + ", so the benchmark would overwrite the user's own");
+        }
+        prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
+        //start from an empty node, whatever an earlier trial left behind
+        prefs.clear();
+        repository = new PretendDatabaseSecurityRepositoryImpl();
+        sensors = new Sensor[sensorCount];
+        SensorType[] types = SensorType.values();
+        for(int i = 0; i < sensorCount; i++) {
+            sensors[i] = new Sensor("Sensor " + i, types[i % types.length]);
+            repository.addSensor(sensors[i]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void clearPrefs() throws BackingStoreException {
+        prefs.clear();
+        prefs.flush();
+    }
+
+    @State(Scope.Thread)
+    public static class SensorPicker {
+        private final SplittableRandom random = new SplittableRandom(42);
+        private boolean alarm;
+    }
+
+    @Benchmark
+    public void updateSensor(SensorPicker picker) {
+        Sensor sensor = sensors[picker.random.nextInt(sensors.length)];
+        synchronized (repository) {
+            sensor.setActive(!Boolean.TRUE.equals(sensor.getActive()));
+            repository.updateSensor(sensor);
+        }
+    }
+
+    /**
+     * Deactivates every sensor and stores them as one batch, as arming does; the repository rewrites
+     * the sensor set once for all of them.
+     */
+    @Benchmark
+    public void updateAllSensors() {
+        synchronized (repository) {
+            for(Sensor sensor : sensors) {
+                sensor.setActive(false);
+            }
+            repository.updateSensors(Arrays.asList(sensors));
+        }
+    }
+
+    @Benchmark
+    public void addAndRemoveSensor() {
+        Sensor sensor = new Sensor("Temporary", SensorType.MOTION);
+        synchronized (repository) {
+            repository.addSensor(sensor);
+            repository.removeSensor(sensor);
+        }
+    }
+
+    @Benchmark
+    public void setAlarmStatus(SensorPicker picker) {
+        picker.alarm = !picker.alarm;
+        synchronized (repository) {
+            repository.setAlarmStatus(picker.alarm ? AlarmStatus.ALARM : AlarmStatus.NO_ALARM);
+        }
+    }
+}
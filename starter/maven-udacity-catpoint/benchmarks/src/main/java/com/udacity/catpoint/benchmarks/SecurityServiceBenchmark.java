@@ -0,0 +1,104 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.service.SecurityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the SecurityService operations that run for every sensor event, arming change and
+ * camera frame. Storage is kept in memory and the image service is a stub, so the numbers reflect
+ * the service's own work as the number of sensors grows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecurityServiceBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int sensorCount;
+
+    private SecurityService securityService;
+    private Sensor[] sensors;
+    private final BufferedImage frame = new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB);
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        //answers alternate so both the cat and no-cat paths are measured
+        ImageService stubImageService = new ImageService() {
+            private boolean cat;
+
+            @Override
+            public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+                cat = !cat;
+                return cat;
+            }
+        };
+        securityService = new SecurityService(new InMemorySecurityRepository(), stubImageService);
+        securityService.setSensorStatusListener(() -> { });
+        sensors = new Sensor[sensorCount];
+        SensorType[] types = SensorType.values();
+        for(int i = 0; i < sensorCount; i++) {
+            sensors[i] = new Sensor("Sensor " + i, types[i % types.length]);
+            securityService.addSensor(sensors[i]);
+        }
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+    }
+
+    /**
+     * Per-thread choice of which sensor to flip next.
+     */
+    @State(Scope.Thread)
+    public static class SensorPicker {
+        private final SplittableRandom random = new SplittableRandom(42);
+        private boolean armedHome;
+
+        Sensor next(Sensor[] sensors) {
+            return sensors[random.nextInt(sensors.length)];
+        }
+    }
+
+    @Benchmark
+    public void changeSensorActivationStatus(SensorPicker picker) {
+        Sensor sensor = picker.next(sensors);
+        securityService.changeSensorActivationStatus(sensor, !Boolean.TRUE.equals(sensor.getActive()));
+    }
+
+    @Benchmark
+    public void setArmingStatus(SensorPicker picker) {
+        //alternate between the two armed states; both reset every sensor
+        picker.armedHome = !picker.armedHome;
+        securityService.setArmingStatus(picker.armedHome ? ArmingStatus.ARMED_HOME : ArmingStatus.ARMED_AWAY);
+    }
+
+    @Benchmark
+    public void processImage() {
+        securityService.processImage(frame);
+    }
+
+    @Benchmark
+    public Set<Sensor> getSensors() {
+        return securityService.getSensors();
+    }
+}
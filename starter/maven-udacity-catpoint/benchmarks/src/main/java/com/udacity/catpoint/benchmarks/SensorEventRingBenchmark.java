@@ -0,0 +1,80 @@
+package com.udacity.catpoint.benchmarks;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SensorEventRing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of sensor events pushed through a {@link SensorEventRing}. Once the ring fills up,
+ * producers wait for the consumer, so the score is the rate at which events are actually applied
+ * rather than just queued. Compare with SecurityServiceBenchmark.changeSensorActivationStatus,
+ * which applies and stores each event on the calling thread.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SensorEventRingBenchmark {
+
+    @Param({"100", "10000"})
+    public int sensorCount;
+
+    private SensorEventRing ring;
+    private UUID[] sensorIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ImageService noCats = (image, confidenceThreshhold) -> false;
+        SecurityService securityService = new SecurityService(new InMemorySecurityRepository(), noCats);
+        securityService.setSensorStatusListener(() -> { });
+        sensorIds = new UUID[sensorCount];
+        SensorType[] types = SensorType.values();
+        for(int i = 0; i < sensorCount; i++) {
+            Sensor sensor = new Sensor("Sensor " + i, types[i % types.length]);
+            securityService.addSensor(sensor);
+            sensorIds[i] = sensor.getSensorId();
+        }
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+        ring = new SensorEventRing(securityService);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        ring.close();
+    }
+
+    /**
+     * Per-thread choice of which sensor reports next.
+     */
+    @State(Scope.Thread)
+    public static class EventSource {
+        private final SplittableRandom random = new SplittableRandom(42);
+    }
+
+    @Benchmark
+    public void publish(EventSource source) {
+        ring.publish(sensorIds[source.random.nextInt(sensorIds.length)], source.random.nextBoolean(), System.nanoTime());
+    }
+}
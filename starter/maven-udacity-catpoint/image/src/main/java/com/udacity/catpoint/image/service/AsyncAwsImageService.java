@@ -0,0 +1,300 @@
+package com.udacity.catpoint.image.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.rekognition.RekognitionAsyncClient;
+import software.amazon.awssdk.services.rekognition.model.DetectLabelsRequest;
+import software.amazon.awssdk.services.rekognition.model.DetectLabelsResponse;
+import software.amazon.awssdk.services.rekognition.model.Image;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Image Recognition Service that calls AWS Rekognition without blocking a thread per request and
+ * protects the system from a slow or failing remote. Calls time out, failed calls are retried with
+ * jittered exponential backoff, and after repeated failures a circuit breaker stops calling the
+ * remote for a while. Whenever the remote can't answer, the frame is passed to a local fallback
+ * ImageService instead. Calls beyond the in-flight limit also go to the fallback rather than queueing
+ * behind a slow remote.
+ *
+ * Reads the same config.properties keys as {@link AwsImageService}, plus these optional ones:
+ *      aws.endpoint=[URL to send requests to instead of the regional AWS endpoint]
+ *      aws.async.max.in.flight=[maximum number of concurrent remote calls, default 8]
+ *      aws.async.timeout.ms=[time allowed for one remote call, default 2000]
+ *      aws.async.max.retries=[retries after a failed call, default 2]
+ *      aws.async.breaker.failures=[failures in a row that open the circuit breaker, default 5]
+ *      aws.async.breaker.open.ms=[how long the circuit breaker stays open, default 30000]
+ */
+public class AsyncAwsImageService implements ImageService, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncAwsImageService.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 8;
+    public static final long DEFAULT_TIMEOUT_MILLIS = 2000;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final int DEFAULT_BREAKER_FAILURES = 5;
+    public static final long DEFAULT_BREAKER_OPEN_MILLIS = 30_000;
+
+    private static final long BASE_BACKOFF_MILLIS = 50;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private final RekognitionAsyncClient client;
+    private final ImageService fallback;
+    private final Semaphore inFlight;
+    private final Duration callTimeout;
+    private final int maxRetries;
+    private final CircuitBreaker circuitBreaker;
+    private final ThreadLocal<JpegEncoder> encoders;
+
+    private final LongAdder remoteCalls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+
+    /**
+     * Creates a service configured from config.properties. If the file is missing, every frame is
+     * passed to the fallback.
+     * @param fallback Local image service used when the remote can't answer
+     */
+    public AsyncAwsImageService(ImageService fallback) {
+        this(loadProperties(), fallback);
+    }
+
+    private AsyncAwsImageService(Properties props, ImageService fallback) {
+        this(props.getProperty("aws.id") == null ? null : createClient(
+                        props.getProperty("aws.id"),
+                        props.getProperty("aws.secret"),
+                        props.getProperty("aws.region"),
+                        props.getProperty("aws.endpoint") == null ? null : URI.create(props.getProperty("aws.endpoint")),
+                        Duration.ofMillis(longProperty(props, "aws.async.timeout.ms", DEFAULT_TIMEOUT_MILLIS))),
+                fallback,
+                (int) longProperty(props, "aws.async.max.in.flight", DEFAULT_MAX_IN_FLIGHT),
+                Duration.ofMillis(longProperty(props, "aws.async.timeout.ms", DEFAULT_TIMEOUT_MILLIS)),
+                (int) longProperty(props, "aws.async.max.retries", DEFAULT_MAX_RETRIES),
+                new CircuitBreaker((int) longProperty(props, "aws.async.breaker.failures", DEFAULT_BREAKER_FAILURES),
+                        longProperty(props, "aws.async.breaker.open.ms", DEFAULT_BREAKER_OPEN_MILLIS), TimeUnit.MILLISECONDS),
+                Float.parseFloat(props.getProperty("aws.jpeg.quality", String.valueOf(AwsImageService.DEFAULT_JPEG_QUALITY))),
+                (int) longProperty(props, "aws.max.dimension", AwsImageService.DEFAULT_MAX_DIMENSION));
+    }
+
+    /**
+     * @param client Client used for remote calls, or null to always use the fallback
+     * @param fallback Local image service used when the remote can't answer
+     * @param maxInFlight Maximum number of remote calls running at the same time
+     * @param callTimeout Time allowed for each remote call, retries excluded
+     * @param maxRetries Number of times a failed call is retried
+     * @param circuitBreaker Breaker guarding the remote
+     * @param jpegQuality JPEG quality between 0 and 1 used to send images
+     * @param maxDimension Longest side images are scaled down to before sending. 0 sends them full size.
+     */
+    public AsyncAwsImageService(RekognitionAsyncClient client, ImageService fallback, int maxInFlight, Duration callTimeout,
+                                int maxRetries, CircuitBreaker circuitBreaker, float jpegQuality, int maxDimension) {
+        if(maxInFlight < 1 || maxRetries < 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive and maxRetries not negative");
+        }
+        this.client = client;
+        this.fallback = Objects.requireNonNull(fallback);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.callTimeout = callTimeout;
+        this.maxRetries = maxRetries;
+        this.circuitBreaker = Objects.requireNonNull(circuitBreaker);
+        this.encoders = ThreadLocal.withInitial(() -> new JpegEncoder(jpegQuality, maxDimension));
+    }
+
+    /**
+     * Builds an async Rekognition client. The SDK's own retries are turned off because this service retries itself.
+     * @param endpoint Endpoint to call instead of the regional AWS endpoint, or null
+     */
+    public static RekognitionAsyncClient createClient(String awsId, String awsSecret, String awsRegion, URI endpoint, Duration callTimeout) {
+        var builder = RekognitionAsyncClient.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create(awsId, awsSecret)))
+                .region(Region.of(awsRegion))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        .apiCallTimeout(callTimeout)
+                        .retryPolicy(RetryPolicy.none())
+                        .build());
+        if(endpoint != null) {
+            builder.endpointOverride(endpoint);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns true if the provided image contains a cat. Blocks until the remote or the fallback has answered.
+     * @param image Image to scan
+     * @param confidenceThreshhold Minimum threshhold to consider for cat. For example, 90.0f would require 90% confidence minimum
+     */
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return imageContainsCatAsync(image, confidenceThreshhold).join();
+    }
+
+    /**
+     * Scans an image without blocking on the remote.
+     * @param image Image to scan
+     * @param confidenceThreshhold Minimum threshhold to consider for cat
+     * @return Future completed with true if the image contains a cat
+     */
+    public CompletableFuture<Boolean> imageContainsCatAsync(BufferedImage image, float confidenceThreshhold) {
+        if(client == null) {
+            return useFallback(image, confidenceThreshhold);
+        }
+        //shed and open-circuit frames go to the fallback before paying for the JPEG encoding
+        if(!inFlight.tryAcquire()) {
+            return useFallback(image, confidenceThreshhold);
+        }
+        //checked after taking a permit, so a trial call let through by a half-open breaker always gets made
+        if(!circuitBreaker.allowRequest()) {
+            inFlight.release();
+            return useFallback(image, confidenceThreshhold);
+        }
+        DetectLabelsRequest request;
+        try {
+            Image awsImage = Image.builder().bytes(SdkBytes.fromByteArrayUnsafe(encoders.get().encode(image))).build();
+            request = DetectLabelsRequest.builder().image(awsImage).minConfidence(confidenceThreshhold).build();
+        } catch (IOException ioe) {
+            inFlight.release();
+            //the remote was never asked; counted as failed so a half-open breaker isn't left waiting for its trial
+            circuitBreaker.recordFailure();
+            log.error("Error building image byte array", ioe);
+            return CompletableFuture.completedFuture(false);
+        }
+        return callWithRetries(request, 0).handle((response, error) -> {
+            inFlight.release();
+            if(error == null) {
+                circuitBreaker.recordSuccess();
+                return CompletableFuture.completedFuture(AwsImageService.labelsContainCat(response));
+            }
+            circuitBreaker.recordFailure();
+            log.warn("Remote image recognition failed, using fallback", unwrap(error));
+            return useFallbackAsync(image, confidenceThreshhold);
+        }).thenCompose(result -> result);
+    }
+
+    private CompletableFuture<DetectLabelsResponse> callWithRetries(DetectLabelsRequest request, int attempt) {
+        remoteCalls.increment();
+        CompletableFuture<DetectLabelsResponse> call;
+        try {
+            call = client.detectLabels(request);
+        } catch (RuntimeException e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        return call.orTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS).handle((response, error) -> {
+            if(error == null) {
+                return CompletableFuture.completedFuture(response);
+            }
+            if(attempt >= maxRetries || !retryable(unwrap(error))) {
+                return CompletableFuture.<DetectLabelsResponse>failedFuture(error);
+            }
+            retries.increment();
+            return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(backoffMillis(attempt), TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> callWithRetries(request, attempt + 1));
+        }).thenCompose(result -> result);
+    }
+
+    /**
+     * Exponential backoff with full jitter, so clients that failed together don't retry together.
+     */
+    private static long backoffMillis(int attempt) {
+        long cap = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    private static boolean retryable(Throwable error) {
+        if(error instanceof SdkServiceException) {
+            SdkServiceException serviceException = (SdkServiceException) error;
+            return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+        }
+        return error instanceof TimeoutException || error instanceof SdkClientException || error instanceof IOException;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Runs the fallback on the default async pool. Remote failures are handled on the client's
+     * completion thread or on the single thread that fires timeouts, and scanning there would hold
+     * up the other calls and their timeouts.
+     */
+    private CompletableFuture<Boolean> useFallbackAsync(BufferedImage image, float confidenceThreshhold) {
+        fallbacks.increment();
+        return CompletableFuture.supplyAsync(() -> fallback.imageContainsCat(image, confidenceThreshhold));
+    }
+
+    private CompletableFuture<Boolean> useFallback(BufferedImage image, float confidenceThreshhold) {
+        fallbacks.increment();
+        try {
+            return CompletableFuture.completedFuture(fallback.imageContainsCat(image, confidenceThreshhold));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * @return Number of remote calls made, retries included
+     */
+    public long getRemoteCallCount() {
+        return remoteCalls.sum();
+    }
+
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @return Number of images answered by the fallback
+     */
+    public long getFallbackCount() {
+        return fallbacks.sum();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return circuitBreaker.getState();
+    }
+
+    @Override
+    public void close() {
+        if(client != null) {
+            client.close();
+        }
+    }
+
+    private static Properties loadProperties() {
+        Properties props = new Properties();
+        try (InputStream is = AsyncAwsImageService.class.getClassLoader().getResourceAsStream("config.properties")) {
+            if(is == null) {
+                throw new IOException("config.properties not found");
+            }
+            props.load(is);
+        } catch (IOException ioe) {
+            log.error("Unable to initialize AWS Rekognition, no properties file found", ioe);
+        }
+        return props;
+    }
+
+    private static long longProperty(Properties props, String key, long defaultValue) {
+        String value = props.getProperty(key);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+}
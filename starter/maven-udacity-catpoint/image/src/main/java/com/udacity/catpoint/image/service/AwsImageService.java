@@ -12,9 +12,7 @@ import software.amazon.awssdk.services.rekognition.model.DetectLabelsRequest;
 import software.amazon.awssdk.services.rekognition.model.DetectLabelsResponse;
 import software.amazon.awssdk.services.rekognition.model.Image;
 
-import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Properties;
@@ -32,13 +30,29 @@ import java.util.stream.Collectors;
  *      aws.id=[your access key id]
  *      aws.secret=[your Secret access key]
  *      aws.region=[an aws region of choice. For example: us-east-2]
+ *
+ * Optional keys tune how images are encoded before they are sent:
+ *      aws.jpeg.quality=[JPEG quality between 0 and 1, default 0.75]
+ *      aws.max.dimension=[longest side in pixels images are scaled down to, 0 to send full size, default 1280]
  */
 public class AwsImageService implements ImageService {
 
     private Logger log = LoggerFactory.getLogger(AwsImageService.class);
 
     //aws recommendation is to maintain only a single instance of client objects
-    private static RekognitionClient rekognitionClient;
+    private static volatile RekognitionClient rekognitionClient;
+
+    public static final float DEFAULT_JPEG_QUALITY = 0.75f;
+    public static final int DEFAULT_MAX_DIMENSION = 1280;
+
+    private float jpegQuality = DEFAULT_JPEG_QUALITY;
+    private int maxDimension = DEFAULT_MAX_DIMENSION;
+    private String awsId;
+    private String awsSecret;
+    private String awsRegion;
+
+    //encoders keep their writer and buffers, so each scanning thread gets its own
+    private final ThreadLocal<JpegEncoder> encoders = ThreadLocal.withInitial(() -> new JpegEncoder(jpegQuality, maxDimension));
 
     public AwsImageService() {
         Properties props = new Properties();
@@ -49,15 +63,35 @@ public class AwsImageService implements ImageService {
             return;
         }
 
-        String awsId = props.getProperty("aws.id");
-        String awsSecret = props.getProperty("aws.secret");
-        String awsRegion = props.getProperty("aws.region");
+        awsId = props.getProperty("aws.id");
+        awsSecret = props.getProperty("aws.secret");
+        awsRegion = props.getProperty("aws.region");
+        jpegQuality = Float.parseFloat(props.getProperty("aws.jpeg.quality", String.valueOf(DEFAULT_JPEG_QUALITY)));
+        maxDimension = Integer.parseInt(props.getProperty("aws.max.dimension", String.valueOf(DEFAULT_MAX_DIMENSION)));
+    }
 
-        AwsCredentials awsCredentials = AwsBasicCredentials.create(awsId, awsSecret);
-        rekognitionClient = RekognitionClient.builder()
-                .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
-                .region(Region.of(awsRegion))
-                .build();
+    /**
+     * Builds the client on the first scan rather than in the constructor; loading the SDK and its
+     * HTTP stack takes far longer than the rest of the application's startup.
+     */
+    private RekognitionClient client() {
+        RekognitionClient client = rekognitionClient;
+        if(client != null) {
+            return client;
+        }
+        synchronized (AwsImageService.class) {
+            if(rekognitionClient == null) {
+                if(awsId == null || awsSecret == null || awsRegion == null) {
+                    throw new IllegalStateException("AWS Rekognition is not configured, see config.properties");
+                }
+                AwsCredentials awsCredentials = AwsBasicCredentials.create(awsId, awsSecret);
+                rekognitionClient = RekognitionClient.builder()
+                        .credentialsProvider(StaticCredentialsProvider.create(awsCredentials))
+                        .region(Region.of(awsRegion))
+                        .build();
+            }
+            return rekognitionClient;
+        }
     }
 
     /**
@@ -69,16 +103,20 @@ public class AwsImageService implements ImageService {
     @Override
     public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
         Image awsImage = null;
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-            ImageIO.write(image, "jpg", os);
-            awsImage = Image.builder().bytes(SdkBytes.fromByteArray(os.toByteArray())).build();
+        try {
+            //the encoder hands over a fresh array, so the SDK doesn't need its own copy
+            awsImage = Image.builder().bytes(SdkBytes.fromByteArrayUnsafe(encoders.get().encode(image))).build();
         } catch (IOException ioe) {
             log.error("Error building image byte array", ioe);
             return false;
         }
         DetectLabelsRequest detectLabelsRequest = DetectLabelsRequest.builder().image(awsImage).minConfidence(confidenceThreshhold).build();
-        DetectLabelsResponse response = rekognitionClient.detectLabels(detectLabelsRequest);
+        DetectLabelsResponse response = client().detectLabels(detectLabelsRequest);
         logLabelsForFun(response);
+        return labelsContainCat(response);
+    }
+
+    static boolean labelsContainCat(DetectLabelsResponse response) {
         return response.labels().stream().filter(l -> l.name().toLowerCase().contains("cat")).findFirst().isPresent();
     }
 
@@ -0,0 +1,208 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Image service that remembers the verdicts of another image service. Images are identified by a
+ * 64-bit difference hash of a small grayscale version of the image, so repeated scans of the same
+ * picture, or of a camera looking at an unchanged scene, are answered from the cache without calling
+ * the wrapped service. Verdicts are cached separately for each confidence threshold.
+ *
+ * By default only an identical hash reuses a verdict. A maximum Hamming distance can be set so that
+ * hashes differing in a few bits, as happens after re-encoding or with sensor noise, share one; a
+ * near match only ever reuses a cat verdict, because a cat entering a corner of the picture changes
+ * just as few bits and must not be answered with the empty scene's verdict.
+ *
+ * The cache is bounded both by size, evicting the least recently used verdict first, and by age.
+ */
+public class CachingImageService implements ImageService {
+
+    //difference hash compares each cell with its right neighbour, so it needs one extra column
+    private static final int HASH_WIDTH = 9;
+    private static final int HASH_HEIGHT = 8;
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+    public static final long DEFAULT_TTL_SECONDS = 300;
+    public static final int DEFAULT_MAX_HAMMING_DISTANCE = 0;
+
+    private final ImageService delegate;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final int maxHammingDistance;
+    private final LongSupplier nanoClock;
+    private final Map<CacheKey, CachedVerdict> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingImageService(ImageService delegate) {
+        this(delegate, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    public CachingImageService(ImageService delegate, int maxEntries, long ttl, TimeUnit ttlUnit) {
+        this(delegate, maxEntries, ttl, ttlUnit, DEFAULT_MAX_HAMMING_DISTANCE, System::nanoTime);
+    }
+
+    /**
+     * @param delegate Image service asked on a cache miss
+     * @param maxEntries Maximum number of cached verdicts
+     * @param ttl How long a verdict stays valid
+     * @param ttlUnit Unit of {@code ttl}
+     * @param maxHammingDistance Number of hash bits two images may differ in and still share a cat verdict. 0 requires an exact match.
+     * @param nanoClock Source of the current time in nanoseconds
+     */
+    public CachingImageService(ImageService delegate, int maxEntries, long ttl, TimeUnit ttlUnit, int maxHammingDistance, LongSupplier nanoClock) {
+        if(maxEntries < 1 || ttl < 1 || maxHammingDistance < 0) {
+            throw new IllegalArgumentException("maxEntries and ttl must be positive and maxHammingDistance not negative");
+        }
+        this.delegate = Objects.requireNonNull(delegate);
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlUnit.toNanos(ttl);
+        this.maxHammingDistance = maxHammingDistance;
+        this.nanoClock = nanoClock;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<CacheKey, CachedVerdict> eldest) {
+                if(size() > CachingImageService.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        CacheKey key = new CacheKey(hash(image), confidenceThreshhold);
+        long now = nanoClock.getAsLong();
+        synchronized (cache) {
+            CachedVerdict cached = cache.get(key);
+            if(cached != null && now - cached.storedAt >= ttlNanos) {
+                cache.remove(key);
+                evictions.increment();
+                cached = null;
+            }
+            if(cached == null && maxHammingDistance > 0) {
+                cached = findSimilar(key, now);
+            }
+            if(cached != null) {
+                hits.increment();
+                return cached.cat;
+            }
+        }
+        misses.increment();
+        //the wrapped service may be slow, so it is called without holding the lock
+        boolean cat = delegate.imageContainsCat(image, confidenceThreshhold);
+        synchronized (cache) {
+            cache.put(key, new CachedVerdict(cat, nanoClock.getAsLong()));
+        }
+        return cat;
+    }
+
+    /**
+     * Looks for an unexpired cat verdict for a hash within the allowed Hamming distance. Only called after
+     * an exact lookup missed; the scan is cheap next to a call to the wrapped service. Must hold the lock.
+     */
+    private CachedVerdict findSimilar(CacheKey key, long now) {
+        CacheKey found = null;
+        for(Map.Entry<CacheKey, CachedVerdict> entry : cache.entrySet()) {
+            CacheKey candidate = entry.getKey();
+            CachedVerdict verdict = entry.getValue();
+            if(verdict.cat
+                    && candidate.thresholdBits == key.thresholdBits
+                    && Long.bitCount(candidate.hash ^ key.hash) <= maxHammingDistance
+                    && now - verdict.storedAt < ttlNanos) {
+                found = candidate;
+                break;
+            }
+        }
+        //looked up again outside the iteration, so the hit counts as a use for the eviction order
+        return found == null ? null : cache.get(found);
+    }
+
+    /**
+     * Computes the difference hash of an image: each bit records whether a cell of a 9x8 grayscale
+     * grid is brighter than its right-hand neighbour. Changes in compression, brightness or scale
+     * leave most bits unchanged.
+     */
+    static long hash(BufferedImage image) {
+        int[] gray = new int[HASH_WIDTH * HASH_HEIGHT];
+        GrayscaleSampler.sample(image, HASH_WIDTH, HASH_HEIGHT, gray);
+        long hash = 0;
+        for(int y = 0; y < HASH_HEIGHT; y++) {
+            for(int x = 0; x < HASH_WIDTH - 1; x++) {
+                int cell = y * HASH_WIDTH + x;
+                hash = (hash << 1) | (gray[cell] > gray[cell + 1] ? 1 : 0);
+            }
+        }
+        return hash;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of verdicts removed because the cache was full or the verdict had expired
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private static final class CacheKey {
+        private final long hash;
+        private final int thresholdBits;
+
+        private CacheKey(long hash, float confidenceThreshhold) {
+            this.hash = hash;
+            this.thresholdBits = Float.floatToIntBits(confidenceThreshhold);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            CacheKey key = (CacheKey) o;
+            return hash == key.hash && thresholdBits == key.thresholdBits;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash) * 31 + thresholdBits;
+        }
+    }
+
+    private static final class CachedVerdict {
+        private final boolean cat;
+        private final long storedAt;
+
+        private CachedVerdict(boolean cat, long storedAt) {
+            this.cat = cat;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * Turns an image into a fixed-length feature vector for {@link LocalCatClassifierImageService}.
+ * The image is reduced to a 32x32 grayscale grid; the features are a histogram of gradient
+ * orientations for each cell of a 4x4 grid over it, which describes edges and outlines rather
+ * than colours, followed by the overall brightness and contrast.
+ *
+ * The loops work on plain int and float arrays without branches in their bodies where possible,
+ * so the JIT compiler can turn them into SIMD instructions. Not thread safe; keep one extractor
+ * per thread.
+ */
+final class CatFeatureExtractor {
+
+    static final int GRID_SIZE = 32;
+    static final int CELLS = 4;
+    static final int BINS = 8;
+    static final int FEATURE_COUNT = CELLS * CELLS * BINS + 2;
+
+    private static final int CELL_SIZE = GRID_SIZE / CELLS;
+
+    //boundaries between orientation bins over 0-180 degrees, as unit vectors
+    private static final int[] BOUNDARY_COS = new int[BINS - 1];
+    private static final int[] BOUNDARY_SIN = new int[BINS - 1];
+
+    static {
+        for(int i = 0; i < BINS - 1; i++) {
+            double angle = Math.PI * (i + 1) / BINS;
+            BOUNDARY_COS[i] = (int) Math.round(Math.cos(angle) * 1024);
+            BOUNDARY_SIN[i] = (int) Math.round(Math.sin(angle) * 1024);
+        }
+    }
+
+    private final int[] gray = new int[GRID_SIZE * GRID_SIZE];
+    private final int[] gradientX = new int[GRID_SIZE * GRID_SIZE];
+    private final int[] gradientY = new int[GRID_SIZE * GRID_SIZE];
+
+    /**
+     * Fills {@code features} with the feature vector of an image.
+     * @param features Array of at least FEATURE_COUNT elements
+     */
+    void extract(BufferedImage image, float[] features) {
+        GrayscaleSampler.sample(image, GRID_SIZE, GRID_SIZE, gray);
+        computeGradients();
+        Arrays.fill(features, 0, FEATURE_COUNT, 0f);
+
+        for(int y = 1; y < GRID_SIZE - 1; y++) {
+            int cellRow = (y / CELL_SIZE) * CELLS;
+            for(int x = 1; x < GRID_SIZE - 1; x++) {
+                int i = y * GRID_SIZE + x;
+                int gx = gradientX[i];
+                int gy = gradientY[i];
+                //orientation is unsigned: a gradient and its opposite fall in the same bin
+                if(gy < 0 || (gy == 0 && gx < 0)) {
+                    gx = -gx;
+                    gy = -gy;
+                }
+                int bin = 0;
+                for(int b = 0; b < BINS - 1; b++) {
+                    //the gradient lies past boundary b if it is clockwise of the boundary vector
+                    bin += (gx * BOUNDARY_SIN[b] - gy * BOUNDARY_COS[b]) < 0 ? 1 : 0;
+                }
+                features[(cellRow + x / CELL_SIZE) * BINS + bin] += Math.abs(gx) + Math.abs(gy);
+            }
+        }
+
+        //normalize each cell so the features don't depend on overall contrast
+        for(int cell = 0; cell < CELLS * CELLS; cell++) {
+            float sum = 0;
+            for(int b = 0; b < BINS; b++) {
+                sum += features[cell * BINS + b];
+            }
+            float scale = 1f / (sum + 1f);
+            for(int b = 0; b < BINS; b++) {
+                features[cell * BINS + b] *= scale;
+            }
+        }
+
+        long total = 0;
+        long squares = 0;
+        for(int value : gray) {
+            total += value;
+            squares += value * value;
+        }
+        float mean = (float) total / gray.length;
+        float variance = Math.max(0f, (float) squares / gray.length - mean * mean);
+        features[FEATURE_COUNT - 2] = mean / 255f;
+        features[FEATURE_COUNT - 1] = (float) Math.sqrt(variance) / 128f;
+    }
+
+    private void computeGradients() {
+        //central differences; the border rows and columns are left out of the histograms
+        for(int y = 1; y < GRID_SIZE - 1; y++) {
+            int row = y * GRID_SIZE;
+            for(int x = 1; x < GRID_SIZE - 1; x++) {
+                gradientX[row + x] = gray[row + x + 1] - gray[row + x - 1];
+                gradientY[row + x] = gray[row + x + GRID_SIZE] - gray[row + x - GRID_SIZE];
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.udacity.catpoint.image.service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Stops calls to a remote service after it has failed several times in a row. While open, calls are
+ * refused until a cool-down has passed; then a single trial call is let through, and its outcome
+ * decides whether the breaker closes again or stays open for another cool-down.
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        /** Calls go through. */
+        CLOSED,
+        /** Calls are refused until the cool-down has passed. */
+        OPEN,
+        /** One trial call is in progress; other calls are refused. */
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        this(failureThreshold, openDuration, unit, System::nanoTime);
+    }
+
+    /**
+     * @param failureThreshold Number of failures in a row that opens the breaker
+     * @param openDuration How long the breaker stays open before letting a trial call through
+     * @param unit Unit of {@code openDuration}
+     * @param nanoClock Source of the current time in nanoseconds
+     */
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit, LongSupplier nanoClock) {
+        if(failureThreshold < 1 || openDuration < 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive and openDuration not negative");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return True if a call may be made now. The caller must report its outcome through
+     * recordSuccess or recordFailure.
+     */
+    public synchronized boolean allowRequest() {
+        switch(state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if(nanoClock.getAsLong() - openedAt >= openNanos) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if(state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = nanoClock.getAsLong();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
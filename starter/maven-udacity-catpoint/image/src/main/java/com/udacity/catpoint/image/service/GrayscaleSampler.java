@@ -0,0 +1,126 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.IndexColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+
+/**
+ * Reduces an image to a small grid of grayscale values. Common image types are read straight
+ * from their backing arrays instead of going through {@code getRGB} for every pixel; other
+ * types are first drawn into a small RGB image.
+ */
+final class GrayscaleSampler {
+
+    //number of sample points taken along each axis of a grid cell
+    private static final int SAMPLES_PER_CELL = 4;
+
+    private GrayscaleSampler() {
+    }
+
+    /**
+     * Fills {@code out} with the average luma (0-255) of each cell of a {@code width} x {@code height}
+     * grid laid over the image, in row-major order.
+     */
+    static void sample(BufferedImage image, int width, int height, int[] out) {
+        Raster raster = image.getRaster();
+        SampleModel model = raster.getSampleModel();
+        DataBuffer buffer = raster.getDataBuffer();
+        if(buffer instanceof DataBufferInt && model instanceof SinglePixelPackedSampleModel && model.getNumBands() >= 3) {
+            samplePacked(raster, (SinglePixelPackedSampleModel) model, ((DataBufferInt) buffer).getData(), width, height, out);
+        } else if(buffer instanceof DataBufferByte && model instanceof ComponentSampleModel && !(image.getColorModel() instanceof IndexColorModel)
+                && (model.getNumBands() == 1 || model.getNumBands() >= 3) && model.getSampleSize(0) == 8) {
+            sampleInterleaved(image, raster, (ComponentSampleModel) model, ((DataBufferByte) buffer).getData(), width, height, out);
+        } else {
+            BufferedImage rgb = new BufferedImage(width * SAMPLES_PER_CELL, height * SAMPLES_PER_CELL, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = rgb.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, rgb.getWidth(), rgb.getHeight(), null);
+            g.dispose();
+            sample(rgb, width, height, out);
+        }
+    }
+
+    private static void samplePacked(Raster raster, SinglePixelPackedSampleModel model, int[] data, int width, int height, int[] out) {
+        int[] offsets = model.getBitOffsets();
+        int[] masks = model.getBitMasks();
+        int stride = model.getScanlineStride();
+        int base = raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+        int imageWidth = raster.getWidth();
+        int imageHeight = raster.getHeight();
+        for(int cy = 0; cy < height; cy++) {
+            for(int cx = 0; cx < width; cx++) {
+                int sum = 0;
+                for(int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int row = base + samplePosition(cy, sy, height, imageHeight) * stride;
+                    for(int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int pixel = data[row + samplePosition(cx, sx, width, imageWidth)];
+                        sum += luma((pixel & masks[0]) >>> offsets[0], (pixel & masks[1]) >>> offsets[1], (pixel & masks[2]) >>> offsets[2]);
+                    }
+                }
+                out[cy * width + cx] = sum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+            }
+        }
+    }
+
+    private static void sampleInterleaved(BufferedImage image, Raster raster, ComponentSampleModel model, byte[] data, int width, int height, int[] out) {
+        int[] bandOffsets = model.getBandOffsets();
+        int[] bankIndices = model.getBankIndices();
+        for(int bank : bankIndices) {
+            if(bank != 0) {
+                //planar banks are rare enough to take the slow path
+                BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+                Graphics2D g = rgb.createGraphics();
+                g.drawImage(image, 0, 0, null);
+                g.dispose();
+                sample(rgb, width, height, out);
+                return;
+            }
+        }
+        //bands are always in red, green, blue(, alpha) order; the band offsets say where each one sits in a pixel
+        boolean gray = model.getNumBands() == 1;
+        int pixelStride = model.getPixelStride();
+        int stride = model.getScanlineStride();
+        int base = raster.getDataBuffer().getOffset()
+                - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX() * pixelStride;
+        int imageWidth = raster.getWidth();
+        int imageHeight = raster.getHeight();
+        for(int cy = 0; cy < height; cy++) {
+            for(int cx = 0; cx < width; cx++) {
+                int sum = 0;
+                for(int sy = 0; sy < SAMPLES_PER_CELL; sy++) {
+                    int row = base + samplePosition(cy, sy, height, imageHeight) * stride;
+                    for(int sx = 0; sx < SAMPLES_PER_CELL; sx++) {
+                        int pixel = row + samplePosition(cx, sx, width, imageWidth) * pixelStride;
+                        if(gray) {
+                            sum += data[pixel + bandOffsets[0]] & 0xFF;
+                        } else {
+                            sum += luma(data[pixel + bandOffsets[0]] & 0xFF, data[pixel + bandOffsets[1]] & 0xFF, data[pixel + bandOffsets[2]] & 0xFF);
+                        }
+                    }
+                }
+                out[cy * width + cx] = sum / (SAMPLES_PER_CELL * SAMPLES_PER_CELL);
+            }
+        }
+    }
+
+    /**
+     * Position along one axis of sample {@code sample} inside grid cell {@code cell}, spread evenly over the cell.
+     */
+    private static int samplePosition(int cell, int sample, int cells, int size) {
+        long scaled = ((long) cell * SAMPLES_PER_CELL + sample) * 2 + 1;
+        return (int) (scaled * size / (2L * cells * SAMPLES_PER_CELL));
+    }
+
+    private static int luma(int r, int g, int b) {
+        return (r * 77 + g * 150 + b * 29) >> 8;
+    }
+}
@@ -0,0 +1,176 @@
+package com.udacity.catpoint.image.service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Encodes images as JPEG while reusing the writer, the output buffer and, when images have to be
+ * converted or shrunk first, the intermediate image between calls. Not thread safe; keep one
+ * encoder per thread.
+ */
+final class JpegEncoder {
+
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private final ImageWriter writer;
+    private final ImageWriteParam writeParam;
+    private final int maxDimension;
+    private final ByteArrayImageOutputStream output = new ByteArrayImageOutputStream(INITIAL_BUFFER_SIZE);
+    private BufferedImage scratch;
+
+    /**
+     * @param quality JPEG quality between 0 and 1
+     * @param maxDimension Images wider or taller than this are scaled down before encoding. 0 disables scaling.
+     */
+    JpegEncoder(float quality, int maxDimension) {
+        if(quality < 0 || quality > 1 || maxDimension < 0) {
+            throw new IllegalArgumentException("quality must be within 0-1 and maxDimension not negative");
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if(!writers.hasNext()) {
+            throw new IllegalStateException("No JPEG image writer available");
+        }
+        this.writer = writers.next();
+        this.writeParam = writer.getDefaultWriteParam();
+        writeParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        writeParam.setCompressionQuality(quality);
+        this.maxDimension = maxDimension;
+    }
+
+    /**
+     * Encodes an image.
+     * @return A new array holding exactly the encoded bytes. This is the only copy of the data made.
+     */
+    byte[] encode(BufferedImage image) throws IOException {
+        output.rewind();
+        writer.setOutput(output);
+        try {
+            writer.write(null, new IIOImage(prepare(image), null, null), writeParam);
+        } finally {
+            writer.setOutput(null);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Returns the image to encode: the image itself if the JPEG writer takes it as is, otherwise a
+     * scaled or converted copy drawn into the reused scratch image.
+     */
+    private BufferedImage prepare(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int largest = Math.max(width, height);
+        if(maxDimension > 0 && largest > maxDimension) {
+            width = Math.max(1, (int) ((long) width * maxDimension / largest));
+            height = Math.max(1, (int) ((long) height * maxDimension / largest));
+        } else if(encodableAsIs(image)) {
+            return image;
+        }
+        //camera frames keep their size, so the scratch image is normally allocated once
+        if(scratch == null || scratch.getWidth() != width || scratch.getHeight() != height) {
+            scratch = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+        Graphics2D g = scratch.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scratch;
+    }
+
+    private static boolean encodableAsIs(BufferedImage image) {
+        switch(image.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_BGR:
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_BYTE_GRAY:
+                return true;
+            default:
+                //the JPEG writer rejects alpha channels and handles custom color models poorly
+                return false;
+        }
+    }
+
+    /**
+     * Image output stream writing into a growable byte array that is kept between images.
+     */
+    private static final class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+        private byte[] buffer;
+        private int length;
+
+        private ByteArrayImageOutputStream(int initialSize) {
+            buffer = new byte[initialSize];
+        }
+
+        private void rewind() {
+            streamPos = 0;
+            flushedPos = 0;
+            bitOffset = 0;
+            length = 0;
+        }
+
+        private byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + 1);
+            buffer[(int) streamPos++] = (byte) b;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            flushBits();
+            ensureCapacity(streamPos + len);
+            System.arraycopy(b, off, buffer, (int) streamPos, len);
+            streamPos += len;
+            length = Math.max(length, (int) streamPos);
+        }
+
+        @Override
+        public int read() throws IOException {
+            bitOffset = 0;
+            if(streamPos >= length) {
+                return -1;
+            }
+            return buffer[(int) streamPos++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            bitOffset = 0;
+            if(streamPos >= length) {
+                return -1;
+            }
+            int count = Math.min(len, length - (int) streamPos);
+            System.arraycopy(buffer, (int) streamPos, b, off, count);
+            streamPos += count;
+            return count;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        private void ensureCapacity(long capacity) throws IOException {
+            if(capacity > Integer.MAX_VALUE - 8) {
+                throw new IOException("Encoded image too large");
+            }
+            if(capacity > buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.max(capacity, Math.min(Integer.MAX_VALUE - 8L, buffer.length * 2L)));
+            }
+        }
+    }
+}
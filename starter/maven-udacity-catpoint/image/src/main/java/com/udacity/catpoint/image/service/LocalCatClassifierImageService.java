@@ -0,0 +1,124 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Image service that detects cats in-process with a logistic regression model over edge-orientation
+ * features (see {@link CatFeatureExtractor}). Needs no network or outside service, gives the same
+ * answer for the same image every time and scans a frame in well under a millisecond.
+ *
+ * The model is a bias followed by one weight per feature, stored as whitespace-separated numbers;
+ * lines starting with # are ignored. No model is bundled; the classifier is only as good as the
+ * model it is given, which should be trained on frames from the cameras it will watch.
+ */
+public class LocalCatClassifierImageService implements ImageService {
+
+    private final float bias;
+    private final float[] weights;
+
+    //feature extraction reuses its buffers, so each scanning thread gets its own
+    private final ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    /**
+     * Creates a classifier from a model in the text format described above. The stream is closed.
+     */
+    public LocalCatClassifierImageService(InputStream model) {
+        this(readModel(model));
+    }
+
+    /**
+     * @param bias Constant term of the model
+     * @param weights One weight per feature
+     */
+    public LocalCatClassifierImageService(float bias, float[] weights) {
+        if(weights.length != CatFeatureExtractor.FEATURE_COUNT) {
+            throw new IllegalArgumentException("Expected " + CatFeatureExtractor.FEATURE_COUNT + " weights but got " + weights.length);
+        }
+        this.bias = bias;
+        this.weights = weights.clone();
+    }
+
+    private LocalCatClassifierImageService(float[] model) {
+        this(model[0], Arrays.copyOfRange(model, 1, model.length));
+    }
+
+    /**
+     * Returns true if the classifier's confidence that the image shows a cat reaches the threshold.
+     * @param image Image to scan
+     * @param confidenceThreshhold Minimum threshhold to consider for cat. For example, 90.0f would require 90% confidence minimum
+     */
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        return confidence(image) >= confidenceThreshhold;
+    }
+
+    /**
+     * @return The classifier's confidence, from 0 to 100, that the image shows a cat
+     */
+    public float confidence(BufferedImage image) {
+        Workspace workspace = workspaces.get();
+        workspace.extractor.extract(image, workspace.features);
+        float score = bias + dot(weights, workspace.features);
+        return (float) (100.0 / (1.0 + Math.exp(-score)));
+    }
+
+    /**
+     * Dot product with four independent sums, so consecutive additions don't wait on each other
+     * and the JIT can keep several in flight or in one vector register.
+     */
+    private static float dot(float[] a, float[] b) {
+        float sum0 = 0, sum1 = 0, sum2 = 0, sum3 = 0;
+        int i = 0;
+        for(; i + 3 < a.length; i += 4) {
+            sum0 += a[i] * b[i];
+            sum1 += a[i + 1] * b[i + 1];
+            sum2 += a[i + 2] * b[i + 2];
+            sum3 += a[i + 3] * b[i + 3];
+        }
+        for(; i < a.length; i++) {
+            sum0 += a[i] * b[i];
+        }
+        return (sum0 + sum1) + (sum2 + sum3);
+    }
+
+    private static float[] readModel(InputStream model) {
+        if(model == null) {
+            throw new IllegalArgumentException("Model not found");
+        }
+        float[] values = new float[CatFeatureExtractor.FEATURE_COUNT + 1];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(model, StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                line = line.trim();
+                if(line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                for(String token : line.split("\\s+")) {
+                    if(count == values.length) {
+                        throw new IllegalArgumentException("Model has more than " + values.length + " values");
+                    }
+                    values[count++] = Float.parseFloat(token);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to read model", ioe);
+        }
+        if(count != values.length) {
+            throw new IllegalArgumentException("Model has " + count + " values, expected " + values.length);
+        }
+        return values;
+    }
+
+    private static class Workspace {
+        private final CatFeatureExtractor extractor = new CatFeatureExtractor();
+        private final float[] features = new float[CatFeatureExtractor.FEATURE_COUNT];
+    }
+}
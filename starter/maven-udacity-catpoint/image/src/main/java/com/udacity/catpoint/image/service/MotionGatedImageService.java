@@ -0,0 +1,99 @@
+package com.udacity.catpoint.image.service;
+
+import java.awt.image.BufferedImage;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Image service that only passes frames on to another image service when enough of the picture
+ * has changed since the last frame it passed on. Each frame is reduced to a small grayscale grid
+ * and compared cell by cell with the grid of the last analyzed frame; if the share of cells whose
+ * brightness moved by more than a set amount stays below the threshold, the previous verdict is
+ * returned without calling the wrapped service.
+ *
+ * An instance keeps the reference frame of a single camera, so use one instance per camera stream.
+ * Calls are serialized.
+ */
+public class MotionGatedImageService implements ImageService {
+
+    public static final int GRID_WIDTH = 64;
+    public static final int GRID_HEIGHT = 48;
+    public static final int DEFAULT_PIXEL_DELTA = 24;
+    public static final double DEFAULT_CHANGED_RATIO = 0.01;
+
+    private final ImageService delegate;
+    private final int pixelDelta;
+    private final double changedRatio;
+
+    private int[] reference = new int[GRID_WIDTH * GRID_HEIGHT];
+    private int[] current = new int[GRID_WIDTH * GRID_HEIGHT];
+    private boolean hasReference;
+    private float referenceThreshhold;
+    private boolean referenceVerdict;
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    public MotionGatedImageService(ImageService delegate) {
+        this(delegate, DEFAULT_PIXEL_DELTA, DEFAULT_CHANGED_RATIO);
+    }
+
+    /**
+     * @param delegate Image service asked about frames that changed
+     * @param pixelDelta Brightness difference (0-255) at which a grid cell counts as changed
+     * @param changedRatio Share of changed cells (0-1) at which a frame is passed on
+     */
+    public MotionGatedImageService(ImageService delegate, int pixelDelta, double changedRatio) {
+        if(pixelDelta < 0 || pixelDelta > 255 || changedRatio < 0 || changedRatio > 1) {
+            throw new IllegalArgumentException("pixelDelta must be within 0-255 and changedRatio within 0-1");
+        }
+        this.delegate = Objects.requireNonNull(delegate);
+        this.pixelDelta = pixelDelta;
+        this.changedRatio = changedRatio;
+    }
+
+    @Override
+    public synchronized boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        GrayscaleSampler.sample(image, GRID_WIDTH, GRID_HEIGHT, current);
+        if(hasReference && referenceThreshhold == confidenceThreshhold && !changedEnough()) {
+            skipped.increment();
+            return referenceVerdict;
+        }
+        boolean cat = delegate.imageContainsCat(image, confidenceThreshhold);
+        forwarded.increment();
+        //the analyzed frame becomes the new reference; keep the old array for the next sample
+        int[] previous = reference;
+        reference = current;
+        current = previous;
+        hasReference = true;
+        referenceThreshhold = confidenceThreshhold;
+        referenceVerdict = cat;
+        return cat;
+    }
+
+    /**
+     * Forgets the reference frame so the next frame is always passed on.
+     */
+    public synchronized void reset() {
+        hasReference = false;
+    }
+
+    public long getForwardedCount() {
+        return forwarded.sum();
+    }
+
+    public long getSkippedCount() {
+        return skipped.sum();
+    }
+
+    private boolean changedEnough() {
+        int limit = (int) Math.ceil(changedRatio * current.length);
+        int changed = 0;
+        for(int i = 0; i < current.length; i++) {
+            if(Math.abs(current[i] - reference[i]) > pixelDelta) {
+                changed++;
+            }
+        }
+        return changed >= Math.max(limit, 1);
+    }
+}
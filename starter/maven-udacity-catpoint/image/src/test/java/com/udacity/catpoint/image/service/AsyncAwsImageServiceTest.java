@@ -0,0 +1,179 @@
+package com.udacity.catpoint.image.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class AsyncAwsImageServiceTest {
+
+    private static final String CAT_RESPONSE = "{\"Labels\":[{\"Name\":\"Cat\",\"Confidence\":99.0}]}";
+
+    private StubRekognitionServer server;
+    private AsyncAwsImageService imageService;
+
+    @BeforeEach
+    void init() throws IOException {
+        server = new StubRekognitionServer();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        if(imageService != null) {
+            imageService.close();
+        }
+        server.close();
+    }
+
+    @Test
+    @DisplayName("Labels returned by the remote endpoint decide whether the image contains a cat")
+    public void whenRemoteFindsCat_returnTrue() {
+        server.responseBody = CAT_RESPONSE;
+        imageService = newImageService(Duration.ofSeconds(5), 5);
+
+        assertTrue(imageService.imageContainsCat(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+        assertEquals("RekognitionService.DetectLabels", server.lastTarget);
+        assertEquals(0, imageService.getFallbackCount());
+    }
+
+    @Test
+    @DisplayName("A remote that answers too slowly is retried, then the fallback answers and the breaker opens")
+    public void whenRemoteTooSlow_useFallbackAndOpenBreaker() {
+        server.responseBody = CAT_RESPONSE;
+        server.delayMillis = 3000;
+        imageService = newImageService(Duration.ofMillis(200), 1);
+
+        assertFalse(imageService.imageContainsCat(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+        assertEquals(2, imageService.getRemoteCallCount());
+        assertEquals(1, imageService.getFallbackCount());
+        assertEquals(CircuitBreaker.State.OPEN, imageService.getCircuitState());
+
+        //while the breaker is open the remote isn't called at all
+        assertFalse(imageService.imageContainsCat(new BufferedImage(64, 48, BufferedImage.TYPE_INT_RGB), 50.0f));
+        assertEquals(2, imageService.getRemoteCallCount());
+        assertEquals(2, imageService.getFallbackCount());
+    }
+
+    private AsyncAwsImageService newImageService(Duration timeout, int breakerFailures) {
+        return new AsyncAwsImageService(
+                AsyncAwsImageService.createClient("id", "secret", "us-east-2", server.uri(), timeout),
+                (image, confidenceThreshhold) -> false,
+                2, timeout, 1,
+                new CircuitBreaker(breakerFailures, 1, TimeUnit.MINUTES),
+                AwsImageService.DEFAULT_JPEG_QUALITY, AwsImageService.DEFAULT_MAX_DIMENSION);
+    }
+
+    /**
+     * Minimal HTTP/1.1 server standing in for the Rekognition endpoint. Answers every request with a
+     * fixed JSON body after an optional delay.
+     */
+    private static class StubRekognitionServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private volatile String responseBody = "{\"Labels\":[]}";
+        private volatile long delayMillis;
+        private volatile String lastTarget;
+
+        private StubRekognitionServer() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            Thread acceptor = new Thread(this::acceptConnections, "stub-rekognition");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+
+        private URI uri() {
+            return URI.create("http://localhost:" + serverSocket.getLocalPort());
+        }
+
+        private void acceptConnections() {
+            while(!serverSocket.isClosed()) {
+                try {
+                    Socket socket = serverSocket.accept();
+                    Thread handler = new Thread(() -> serve(socket), "stub-rekognition-connection");
+                    handler.setDaemon(true);
+                    handler.start();
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Socket socket) {
+            try (socket) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                while(true) {
+                    int contentLength = -1;
+                    String line = readLine(in);
+                    if(line == null) {
+                        return;
+                    }
+                    //skip the request line, then read headers until the blank line
+                    while(!(line = readLine(in)).isEmpty()) {
+                        int colon = line.indexOf(':');
+                        String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                        String value = line.substring(colon + 1).trim();
+                        if(name.equals("content-length")) {
+                            contentLength = Integer.parseInt(value);
+                        } else if(name.equals("x-amz-target")) {
+                            lastTarget = value;
+                        }
+                    }
+                    if(contentLength > 0) {
+                        in.readNBytes(contentLength);
+                    }
+                    if(delayMillis > 0) {
+                        Thread.sleep(delayMillis);
+                    }
+                    byte[] body = responseBody.getBytes(StandardCharsets.UTF_8);
+                    String headers = "HTTP/1.1 200 OK\r\n"
+                            + "Content-Type: application/x-amz-json-1.1\r\n"
+                            + "x-amzn-RequestId: stub\r\n"
+                            + "Content-Length: " + body.length + "\r\n\r\n";
+                    out.write(headers.getBytes(StandardCharsets.ISO_8859_1));
+                    out.write(body);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException | RuntimeException e) {
+                //the client closed the connection
+            }
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while((b = in.read()) != -1 && b != '\n') {
+                if(b != '\r') {
+                    line.write(b);
+                }
+            }
+            if(b == -1 && line.size() == 0) {
+                return null;
+            }
+            return line.toString(StandardCharsets.ISO_8859_1);
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+        }
+    }
+}
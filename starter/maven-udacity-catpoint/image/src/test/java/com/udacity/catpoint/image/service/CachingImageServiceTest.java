@@ -0,0 +1,131 @@
+package com.udacity.catpoint.image.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntBinaryOperator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class CachingImageServiceTest {
+
+    //90x80 pixels, so each cell of the 9x8 hash grid is 10x10 pixels
+    private static final BufferedImage FALLING = image((x, y) -> 255 - x * 2);
+    private static final BufferedImage RISING = image((x, y) -> x * 2);
+    private static final BufferedImage CHECKERED = image((x, y) -> (x / 10 + y / 10) % 2 * 200);
+    //FALLING with one cell brightened, which flips a single comparison
+    private static final BufferedImage FALLING_NEAR = image((x, y) -> x / 10 == 3 && y / 10 == 2 ? 255 : 255 - x * 2);
+
+    private final Map<BufferedImage, Boolean> verdicts = new HashMap<>();
+    private final AtomicLong now = new AtomicLong();
+    private int delegateCalls;
+    private final ImageService delegate = (image, confidenceThreshhold) -> {
+        delegateCalls++;
+        return verdicts.getOrDefault(image, false);
+    };
+
+    @BeforeEach
+    void init() {
+        verdicts.put(FALLING, true);
+        verdicts.put(FALLING_NEAR, false);
+    }
+
+    @Test
+    @DisplayName("The same picture is only sent to the wrapped service once per threshold")
+    public void whenSameImageScannedTwice_answerFromCache() {
+        CachingImageService cache = new CachingImageService(delegate);
+
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        assertFalse(cache.imageContainsCat(RISING, 50.0f));
+        assertTrue(cache.imageContainsCat(FALLING, 80.0f));
+
+        assertEquals(3, delegateCalls);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+    }
+
+    @Test
+    @DisplayName("By default a picture differing in a few hash bits is scanned again")
+    public void whenNearImageAndDefaultDistance_askDelegate() {
+        assertEquals(1, Long.bitCount(CachingImageService.hash(FALLING) ^ CachingImageService.hash(FALLING_NEAR)));
+        CachingImageService cache = new CachingImageService(delegate);
+
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        assertFalse(cache.imageContainsCat(FALLING_NEAR, 50.0f));
+        assertEquals(2, delegateCalls);
+    }
+
+    @Test
+    @DisplayName("Within the allowed distance only a cat verdict is reused, and the reuse keeps it from being evicted")
+    public void whenNearImageWithinDistance_reuseCatVerdictOnly() {
+        CachingImageService cache = new CachingImageService(delegate, 2, 1, TimeUnit.MINUTES, 2, now::get);
+        verdicts.put(FALLING_NEAR, true);
+
+        assertFalse(cache.imageContainsCat(RISING, 50.0f));
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        //near the rising image, but its verdict is no cat, so it is scanned
+        assertFalse(cache.imageContainsCat(image((x, y) -> x / 10 == 3 && y / 10 == 2 ? 255 : x * 2), 50.0f));
+        assertEquals(3, delegateCalls);
+        assertTrue(cache.imageContainsCat(FALLING_NEAR, 50.0f));
+        assertEquals(3, delegateCalls);
+
+        //the near hit made FALLING the most recently used entry, so the other verdict is evicted
+        cache.imageContainsCat(CHECKERED, 50.0f);
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        assertEquals(4, delegateCalls);
+    }
+
+    @Test
+    @DisplayName("Verdicts older than the time to live are scanned again")
+    public void whenVerdictExpired_askDelegateAgain() {
+        CachingImageService cache = new CachingImageService(delegate, 16, 10, TimeUnit.SECONDS, 0, now::get);
+
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        now.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        assertEquals(1, delegateCalls);
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(cache.imageContainsCat(FALLING, 50.0f));
+        assertEquals(2, delegateCalls);
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    @DisplayName("A full cache evicts the least recently used verdict")
+    public void whenCacheFull_evictLeastRecentlyUsed() {
+        CachingImageService cache = new CachingImageService(delegate, 2, 1, TimeUnit.MINUTES, 0, now::get);
+
+        cache.imageContainsCat(FALLING, 50.0f);
+        cache.imageContainsCat(RISING, 50.0f);
+        cache.imageContainsCat(FALLING, 50.0f);
+        cache.imageContainsCat(CHECKERED, 50.0f);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+
+        cache.imageContainsCat(FALLING, 50.0f);
+        assertEquals(3, delegateCalls);
+        cache.imageContainsCat(RISING, 50.0f);
+        assertEquals(4, delegateCalls);
+    }
+
+    private static BufferedImage image(IntBinaryOperator gray) {
+        BufferedImage image = new BufferedImage(90, 80, BufferedImage.TYPE_INT_RGB);
+        for(int y = 0; y < image.getHeight(); y++) {
+            for(int x = 0; x < image.getWidth(); x++) {
+                int value = gray.applyAsInt(x, y);
+                image.setRGB(x, y, value << 16 | value << 8 | value);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,80 @@
+package com.udacity.catpoint.image.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class GrayscaleSamplerTest {
+
+    //luma of red 100, green 150, blue 200: (100 * 77 + 150 * 150 + 200 * 29) >> 8
+    private static final int LUMA = 140;
+
+    @Test
+    @DisplayName("Packed RGB pixels are averaged per cell")
+    public void whenPackedRgb_sampleLumaPerCell() {
+        BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for(int i = 0; i < pixels.length; i++) {
+            //left half black, right half the test colour
+            pixels[i] = i % 8 < 4 ? 0 : 100 << 16 | 150 << 8 | 200;
+        }
+        assertArrayEquals(new int[] {0, LUMA, 0, LUMA}, sample(image, 2, 2));
+    }
+
+    @Test
+    @DisplayName("Interleaved BGR bytes are read in red, green, blue order")
+    public void whenInterleavedBgr_sampleLumaPerCell() {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_3BYTE_BGR);
+        byte[] bytes = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for(int i = 0; i < bytes.length; i += 3) {
+            bytes[i] = (byte) 200;
+            bytes[i + 1] = (byte) 150;
+            bytes[i + 2] = (byte) 100;
+        }
+        assertArrayEquals(new int[] {LUMA, LUMA, LUMA, LUMA}, sample(image, 2, 2));
+    }
+
+    @Test
+    @DisplayName("Gray bytes are taken as they are")
+    public void whenByteGray_sampleValuesPerCell() {
+        BufferedImage image = new BufferedImage(8, 4, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] bytes = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        for(int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 8 / 2 * 60);
+        }
+        assertArrayEquals(new int[] {0, 60, 120, 180}, sample(image, 4, 1));
+    }
+
+    @Test
+    @DisplayName("A sub-image is sampled from its own region of the shared buffer")
+    public void whenSubimage_sampleOnlyItsRegion() {
+        BufferedImage image = new BufferedImage(16, 8, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for(int i = 0; i < pixels.length; i++) {
+            pixels[i] = i % 16 < 8 ? 0 : 0xFFFFFF;
+        }
+        assertArrayEquals(new int[] {255, 255}, sample(image.getSubimage(8, 0, 8, 8), 2, 1));
+        assertArrayEquals(new int[] {0, 0}, sample(image.getSubimage(0, 0, 8, 8), 2, 1));
+    }
+
+    @Test
+    @DisplayName("Images with alpha are sampled like their colour channels")
+    public void whenArgb_ignoreAlpha() {
+        BufferedImage image = new BufferedImage(4, 4, BufferedImage.TYPE_INT_ARGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        Arrays.fill(pixels, 0x80 << 24 | 100 << 16 | 150 << 8 | 200);
+        assertArrayEquals(new int[] {LUMA}, sample(image, 1, 1));
+    }
+
+    private static int[] sample(BufferedImage image, int width, int height) {
+        int[] out = new int[width * height];
+        GrayscaleSampler.sample(image, width, height, out);
+        return out;
+    }
+}
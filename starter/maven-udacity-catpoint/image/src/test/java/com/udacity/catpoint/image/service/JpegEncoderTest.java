@@ -0,0 +1,80 @@
+package com.udacity.catpoint.image.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class JpegEncoderTest {
+
+    @Test
+    @DisplayName("An encoded image decodes to the same size and colours")
+    public void whenEncoded_decodeToSameImage() throws IOException {
+        JpegEncoder encoder = new JpegEncoder(0.9f, 0);
+        BufferedImage decoded = decode(encoder.encode(halves(64, 48, BufferedImage.TYPE_INT_RGB)));
+
+        assertEquals(64, decoded.getWidth());
+        assertEquals(48, decoded.getHeight());
+        assertColor(Color.RED, decoded.getRGB(8, 24));
+        assertColor(Color.BLUE, decoded.getRGB(56, 24));
+    }
+
+    @Test
+    @DisplayName("Images with alpha are converted and large images scaled down before encoding")
+    public void whenAlphaOrTooLarge_convertAndScale() throws IOException {
+        JpegEncoder encoder = new JpegEncoder(0.9f, 50);
+
+        BufferedImage scaled = decode(encoder.encode(halves(200, 100, BufferedImage.TYPE_INT_RGB)));
+        assertEquals(50, scaled.getWidth());
+        assertEquals(25, scaled.getHeight());
+
+        BufferedImage converted = decode(encoder.encode(halves(40, 20, BufferedImage.TYPE_INT_ARGB)));
+        assertEquals(40, converted.getWidth());
+        assertColor(Color.RED, converted.getRGB(4, 10));
+    }
+
+    @Test
+    @DisplayName("Reusing the encoder gives the same bytes and never leaks bytes of a larger earlier image")
+    public void whenReused_outputMatchesFreshEncoder() throws IOException {
+        JpegEncoder encoder = new JpegEncoder(0.8f, 0);
+        BufferedImage small = halves(16, 16, BufferedImage.TYPE_INT_RGB);
+        byte[] fresh = new JpegEncoder(0.8f, 0).encode(small);
+
+        encoder.encode(halves(400, 300, BufferedImage.TYPE_INT_RGB));
+        byte[] reused = encoder.encode(small);
+        assertArrayEquals(fresh, reused);
+        assertArrayEquals(reused, encoder.encode(small));
+    }
+
+    private static BufferedImage halves(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.RED);
+        g.fillRect(0, 0, width / 2, height);
+        g.setColor(Color.BLUE);
+        g.fillRect(width / 2, 0, width - width / 2, height);
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static void assertColor(Color expected, int rgb) {
+        Color actual = new Color(rgb);
+        //JPEG is lossy, so colours only come back close to the original
+        assertTrue(Math.abs(expected.getRed() - actual.getRed()) < 24
+                && Math.abs(expected.getGreen() - actual.getGreen()) < 24
+                && Math.abs(expected.getBlue() - actual.getBlue()) < 24, "expected " + expected + " but got " + actual);
+    }
+}
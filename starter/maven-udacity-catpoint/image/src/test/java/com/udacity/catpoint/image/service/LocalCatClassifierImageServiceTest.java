@@ -0,0 +1,97 @@
+package com.udacity.catpoint.image.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class LocalCatClassifierImageServiceTest {
+
+    private static final int MEAN_BRIGHTNESS = CatFeatureExtractor.FEATURE_COUNT - 2;
+
+    @Test
+    @DisplayName("A model with too few or too many values, or the wrong number of weights, is rejected")
+    public void whenModelHasWrongValueCount_throw() {
+        assertThrows(IllegalArgumentException.class, () -> new LocalCatClassifierImageService(model(CatFeatureExtractor.FEATURE_COUNT)));
+        assertThrows(IllegalArgumentException.class, () -> new LocalCatClassifierImageService(model(CatFeatureExtractor.FEATURE_COUNT + 2)));
+        assertThrows(IllegalArgumentException.class, () -> new LocalCatClassifierImageService(0f, new float[CatFeatureExtractor.FEATURE_COUNT - 1]));
+        assertThrows(IllegalArgumentException.class, () -> new LocalCatClassifierImageService((InputStream) null));
+    }
+
+    @Test
+    @DisplayName("A model in the text format with comments is read")
+    public void whenModelHasRightValueCount_load() {
+        LocalCatClassifierImageService classifier = new LocalCatClassifierImageService(model(CatFeatureExtractor.FEATURE_COUNT + 1));
+        assertEquals(50.0f, classifier.confidence(filled(Color.GRAY)), 0.001f);
+    }
+
+    @Test
+    @DisplayName("The confidence threshold decides the verdict on fixed images")
+    public void whenConfidenceReachesThreshold_returnTrue() {
+        float[] weights = new float[CatFeatureExtractor.FEATURE_COUNT];
+        weights[MEAN_BRIGHTNESS] = 10f;
+        LocalCatClassifierImageService classifier = new LocalCatClassifierImageService(-5f, weights);
+        BufferedImage white = filled(Color.WHITE);
+        BufferedImage black = filled(Color.BLACK);
+
+        //white scores 5 and black -5 before the logistic function
+        assertEquals(99.33f, classifier.confidence(white), 0.01f);
+        assertEquals(0.67f, classifier.confidence(black), 0.01f);
+        assertTrue(classifier.imageContainsCat(white, 90.0f));
+        assertFalse(classifier.imageContainsCat(white, 99.5f));
+        assertFalse(classifier.imageContainsCat(black, 0.7f));
+        assertTrue(classifier.imageContainsCat(black, 0.6f));
+    }
+
+    @Test
+    @DisplayName("The same image always gets the same confidence, from one classifier or another")
+    public void whenSameImageScannedAgain_returnSameConfidence() {
+        BufferedImage image = new BufferedImage(120, 90, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.ORANGE);
+        g.fillOval(30, 20, 60, 50);
+        g.setColor(Color.DARK_GRAY);
+        g.fillPolygon(new int[] {35, 45, 50}, new int[] {30, 5, 28}, 3);
+        g.dispose();
+
+        float[] weights = new float[CatFeatureExtractor.FEATURE_COUNT];
+        for(int i = 0; i < weights.length; i++) {
+            weights[i] = (i % 7 - 3) * 0.5f;
+        }
+        LocalCatClassifierImageService classifier = new LocalCatClassifierImageService(0.25f, weights);
+        float first = classifier.confidence(image);
+        assertEquals(first, classifier.confidence(image));
+        //the extractor's buffers are reused, so scanning another image in between must not matter
+        classifier.confidence(filled(Color.WHITE));
+        assertEquals(first, classifier.confidence(image));
+        assertEquals(first, new LocalCatClassifierImageService(0.25f, weights).confidence(image));
+        assertTrue(first >= 0f && first <= 100f);
+    }
+
+    private static ByteArrayInputStream model(int valueCount) {
+        StringBuilder text = new StringBuilder("# bias, then one weight per feature\n");
+        for(int i = 0; i < valueCount; i++) {
+            text.append(i % 10 == 9 ? "0\n" : "0 ");
+        }
+        return new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static BufferedImage filled(Color color) {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        g.dispose();
+        return image;
+    }
+}
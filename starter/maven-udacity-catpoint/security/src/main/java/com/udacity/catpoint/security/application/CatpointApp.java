@@ -1,11 +1,48 @@
 package com.udacity.catpoint.security.application;
 
+import com.udacity.catpoint.security.server.CatpointServer;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.StartupReport;
+
+import javax.swing.SwingUtilities;
+import javax.swing.UIManager;
+import java.awt.GraphicsEnvironment;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
 /**
- * This is the main class that launches the application.
+ * This is the main class that launches the application. Pass --headless, or run without a display,
+ * to start the HTTP server instead of the window.
+ *
+ * The repository is loaded on a background thread while the event dispatch thread initializes
+ * Swing, and the window is built on the event dispatch thread once both are done. Set
+ * catpoint.startupReport=true to print how long each step took and when the first frame was shown.
  */
 public class CatpointApp {
-    public static void main(String[] args) {
-        CatpointGui gui = new CatpointGui();
-        gui.setVisible(true);
+    public static void main(String[] args) throws Exception {
+        if(Arrays.asList(args).contains("--headless") || GraphicsEnvironment.isHeadless()) {
+            CatpointServer.main(args);
+            return;
+        }
+        StartupReport report = new StartupReport();
+        CompletableFuture<SecurityService> securityService = CompletableFuture.supplyAsync(
+                () -> report.time("repository", CatpointGui::createSecurityService));
+        SwingUtilities.invokeLater(() -> {
+            report.time("look and feel", UIManager::getLookAndFeel);
+            CatpointGui gui = report.time("window", () -> new CatpointGui(securityService.join()));
+            gui.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    report.milestone("first frame");
+                    report.print();
+                    if(StartupReport.exitAfterStartup()) {
+                        System.exit(0);
+                    }
+                }
+            });
+            gui.setVisible(true);
+        });
     }
 }
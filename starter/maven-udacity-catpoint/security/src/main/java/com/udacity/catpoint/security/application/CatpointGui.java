@@ -14,15 +14,30 @@ import javax.swing.*;
  * all our dependencies and providing them to other classes as necessary.
  */
 public class CatpointGui extends JFrame {
-    private PretendDatabaseSecurityRepositoryImpl securityRepository = new PretendDatabaseSecurityRepositoryImpl();
-    private FakeImageService imageService = new FakeImageService();
-    private SecurityService securityService = new SecurityService(securityRepository, imageService);
-    private DisplayPanel displayPanel = new DisplayPanel(securityService);
-    private ControlPanel controlPanel = new ControlPanel(securityService);
-    private SensorPanel sensorPanel = new SensorPanel(securityService);
-    private ImagePanel imagePanel = new ImagePanel(securityService);
+    private SecurityService securityService;
+    private DisplayPanel displayPanel;
+    private ControlPanel controlPanel;
+    private SensorPanel sensorPanel;
+    private ImagePanel imagePanel;
 
     public CatpointGui() {
+        this(createSecurityService());
+    }
+
+    /**
+     * @param securityService Service the panels show and control. May have been created on another
+     *                        thread while Swing was starting up.
+     */
+    public CatpointGui(SecurityService securityService) {
+        this.securityService = securityService;
+        displayPanel = new DisplayPanel(securityService);
+        controlPanel = new ControlPanel(securityService);
+        sensorPanel = new SensorPanel(securityService);
+        imagePanel = new ImagePanel(securityService);
+
+        //apply image scan results on the event dispatch thread so listeners can update components directly
+        securityService.setVerdictExecutor(SwingUtilities::invokeLater);
+
         setLocation(100, 100);
         setSize(600, 850);
         setTitle("Very Secure App");
@@ -38,4 +53,15 @@ public class CatpointGui extends JFrame {
         getContentPane().add(mainPanel);
 
     }
+
+    /**
+     * Creates the service with the demo repository and image service. Doesn't touch Swing, so it can
+     * run off the event dispatch thread.
+     */
+    public static SecurityService createSecurityService() {
+        SecurityService securityService = new SecurityService(new PretendDatabaseSecurityRepositoryImpl(), new FakeImageService());
+        //read the stored sensors now rather than when the first panel asks for them
+        securityService.getSensors();
+        return securityService;
+    }
 }
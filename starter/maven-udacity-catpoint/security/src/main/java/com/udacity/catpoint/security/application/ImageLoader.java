@@ -0,0 +1,224 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.security.service.WorkerThreads;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.event.IIOReadProgressListener;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.SwingUtilities;
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Loads pictures for the camera view on a background thread, so the event dispatch thread never
+ * waits for decoding or scaling.
+ *
+ * Very large pictures are subsampled while they are decoded, which skips most of the pixels instead
+ * of decoding them all and throwing them away; the result stays at least MAX_DECODE_DIMENSION pixels
+ * on its longer side, enough for the image service. The preview is then reduced by halving it
+ * repeatedly with bilinear filtering, which looks as good as area averaging at a fraction of the cost,
+ * and drawn into one of two preview images that are reused from load to load.
+ *
+ * Selecting a new picture cancels the load of the previous one.
+ */
+public class ImageLoader implements AutoCloseable {
+
+    public static final int MAX_DECODE_DIMENSION = 2048;
+
+    private final int previewWidth;
+    private final int previewHeight;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(WorkerThreads.factory("image-loader-"));
+
+    private final AtomicLong generation = new AtomicLong();
+    private Future<?> currentLoad;
+
+    //the label shows one preview while the next load draws into the other
+    private final BufferedImage[] previews = new BufferedImage[2];
+    private volatile int shownPreview = -1;
+
+    public ImageLoader(int previewWidth, int previewHeight) {
+        this.previewWidth = previewWidth;
+        this.previewHeight = previewHeight;
+    }
+
+    /**
+     * Starts loading a picture, cancelling any load still in progress.
+     * @param file Picture to load
+     * @param onLoaded Called on the event dispatch thread with the decoded picture and its preview
+     * @param onError Called on the event dispatch thread if the file can't be read as a picture
+     */
+    public synchronized void load(File file, BiConsumer<BufferedImage, BufferedImage> onLoaded, Consumer<Exception> onError) {
+        long loadGeneration = generation.incrementAndGet();
+        if(currentLoad != null) {
+            currentLoad.cancel(false);
+        }
+        currentLoad = executor.submit(() -> {
+            try {
+                BufferedImage image = decode(file, loadGeneration);
+                if(image == null || isStale(loadGeneration)) {
+                    return;
+                }
+                int target = shownPreview == 0 ? 1 : 0;
+                BufferedImage preview = scale(image, target);
+                SwingUtilities.invokeLater(() -> {
+                    if(!isStale(loadGeneration)) {
+                        shownPreview = target;
+                        onLoaded.accept(image, preview);
+                    }
+                });
+            } catch (IOException | RuntimeException e) {
+                SwingUtilities.invokeLater(() -> {
+                    if(!isStale(loadGeneration)) {
+                        onError.accept(e);
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean isStale(long loadGeneration) {
+        return generation.get() != loadGeneration;
+    }
+
+    /**
+     * @return The decoded picture, or null if a newer load made this one unnecessary
+     * @throws IOException if the file is not a readable picture
+     */
+    private BufferedImage decode(File file, long loadGeneration) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+            if(readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                int longerSide = Math.max(reader.getWidth(0), reader.getHeight(0));
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(1, longerSide / MAX_DECODE_DIMENSION);
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                reader.addIIOReadProgressListener(new AbortWhenStale(loadGeneration));
+                BufferedImage image = reader.read(0, param);
+                //an aborted read returns whatever was decoded so far
+                return isStale(loadGeneration) ? null : image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales a picture into the given preview image by halving it until it is within twice the preview
+     * size, then drawing it at the preview size, each step with bilinear filtering.
+     */
+    private BufferedImage scale(BufferedImage image, int target) {
+        BufferedImage current = image;
+        int width = image.getWidth();
+        int height = image.getHeight();
+        while(width / 2 >= previewWidth && height / 2 >= previewHeight) {
+            width /= 2;
+            height /= 2;
+            BufferedImage half = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            draw(current, half, width, height);
+            current = half;
+        }
+        BufferedImage preview = previews[target];
+        if(preview == null) {
+            preview = createPreviewImage();
+            previews[target] = preview;
+        }
+        draw(current, preview, previewWidth, previewHeight);
+        return preview;
+    }
+
+    private static void draw(BufferedImage source, BufferedImage destination, int width, int height) {
+        Graphics2D g = destination.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * @return An image in the screen's native pixel format, so painting it needs no conversion
+     */
+    private BufferedImage createPreviewImage() {
+        if(GraphicsEnvironment.isHeadless()) {
+            return new BufferedImage(previewWidth, previewHeight, BufferedImage.TYPE_INT_RGB);
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDefaultConfiguration().createCompatibleImage(previewWidth, previewHeight);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Stops decoding as soon as a newer picture has been selected.
+     */
+    private class AbortWhenStale implements IIOReadProgressListener {
+        private final long loadGeneration;
+
+        private AbortWhenStale(long loadGeneration) {
+            this.loadGeneration = loadGeneration;
+        }
+
+        @Override
+        public void imageProgress(ImageReader source, float percentageDone) {
+            if(isStale(loadGeneration)) {
+                source.abort();
+            }
+        }
+
+        @Override
+        public void sequenceStarted(ImageReader source, int minIndex) {
+        }
+
+        @Override
+        public void sequenceComplete(ImageReader source) {
+        }
+
+        @Override
+        public void imageStarted(ImageReader source, int imageIndex) {
+        }
+
+        @Override
+        public void imageComplete(ImageReader source) {
+        }
+
+        @Override
+        public void thumbnailStarted(ImageReader source, int imageIndex, int thumbnailIndex) {
+        }
+
+        @Override
+        public void thumbnailProgress(ImageReader source, float percentageDone) {
+        }
+
+        @Override
+        public void thumbnailComplete(ImageReader source) {
+        }
+
+        @Override
+        public void readAborted(ImageReader source) {
+        }
+    }
+}
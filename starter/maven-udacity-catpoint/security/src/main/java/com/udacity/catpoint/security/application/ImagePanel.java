@@ -5,12 +5,12 @@ import com.udacity.catpoint.security.service.SecurityService;
 import com.udacity.catpoint.security.service.StyleService;
 import net.miginfocom.swing.MigLayout;
 
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
 
 /** Panel containing the 'camera' output. Allows users to 'refresh' the camera
  * by uploading their own picture, and 'scan' the picture, sending it for image analysis
@@ -25,6 +25,9 @@ public class ImagePanel extends JPanel implements StatusListener {
     private int IMAGE_WIDTH = 300;
     private int IMAGE_HEIGHT = 225;
 
+    //decodes and scales chosen pictures off the event dispatch thread
+    private final ImageLoader imageLoader = new ImageLoader(IMAGE_WIDTH, IMAGE_HEIGHT);
+
     public ImagePanel(SecurityService securityService) {
         super();
         setLayout(new MigLayout());
@@ -49,20 +52,30 @@ public class ImagePanel extends JPanel implements StatusListener {
             if(chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
                 return;
             }
-            try {
-                currentCameraImage = ImageIO.read(chooser.getSelectedFile());
-                Image tmp = new ImageIcon(currentCameraImage).getImage();
-                cameraLabel.setIcon(new ImageIcon(tmp.getScaledInstance(IMAGE_WIDTH, IMAGE_HEIGHT, Image.SCALE_SMOOTH)));
-            } catch (IOException |NullPointerException ioe) {
-                JOptionPane.showMessageDialog(null, "Invalid image selected.");
-            }
-            repaint();
+            imageLoader.load(chooser.getSelectedFile(),
+                    (image, preview) -> {
+                        currentCameraImage = image;
+                        cameraLabel.setIcon(new ImageIcon(preview));
+                        repaint();
+                    },
+                    error -> JOptionPane.showMessageDialog(null, "Invalid image selected."));
         });
 
-        //button that sends the image to the image service
+        //button that sends the image to the image service without waiting for the result
         JButton scanPictureButton = new JButton("Scan Picture");
         scanPictureButton.addActionListener(e -> {
-            securityService.processImage(currentCameraImage);
+            if(currentCameraImage == null) {
+                JOptionPane.showMessageDialog(this, "Select a picture before scanning.");
+                return;
+            }
+            securityService.processImageAsync(currentCameraImage).whenComplete((cat, error) -> {
+                //a frame dropped under load is simply not scanned; any other failure is shown
+                if(error != null && !(error instanceof CancellationException)) {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                            "Unable to scan the picture: " + cause, "Scan failed", JOptionPane.ERROR_MESSAGE));
+                }
+            });
         });
 
         add(cameraHeader, "span 3, wrap");
@@ -7,13 +7,23 @@ import com.udacity.catpoint.security.service.StyleService;
 import net.miginfocom.swing.MigLayout;
 
 import javax.swing.*;
+import javax.swing.table.TableCellRenderer;
+import java.awt.Component;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 /**
  * Panel that allows users to add sensors to their system. Sensors may be
  * manually set to "active" and "inactive" to test the system.
+ *
+ * Sensors are listed in a table inside a scroll pane, so only the visible rows are drawn and a
+ * change to one sensor only redraws its row.
  */
 public class SensorPanel extends JPanel implements SensorStatusListener {
 
+    //status changes from elsewhere are picked up at most this often
+    private static final int REFRESH_DELAY_MILLIS = 100;
+
     private SecurityService securityService;
 
     private JLabel panelLabel = new JLabel("Sensor Management");
@@ -23,14 +33,15 @@ public class SensorPanel extends JPanel implements SensorStatusListener {
     private JComboBox newSensorTypeDropdown = new JComboBox(SensorType.values());
     private JButton addNewSensorButton = new JButton("Add New Sensor");
 
-    private JPanel sensorListPanel;
+    private SensorTableModel sensorTableModel;
+    private JTable sensorTable;
     private JPanel newSensorPanel;
+    private Timer refreshTimer;
 
     public SensorPanel(SecurityService securityService) {
         super();
         setLayout(new MigLayout());
         this.securityService = securityService;
-        this.securityService.setSensorStatusListener(this);
 
         panelLabel.setFont(StyleService.HEADING_FONT);
         addNewSensorButton.addActionListener(e ->
@@ -38,14 +49,16 @@ public class SensorPanel extends JPanel implements SensorStatusListener {
                         SensorType.valueOf(newSensorTypeDropdown.getSelectedItem().toString()))));
 
         newSensorPanel = buildAddSensorPanel();
-        sensorListPanel = new JPanel();
-        sensorListPanel.setLayout(new MigLayout());
+        sensorTableModel = new SensorTableModel(securityService);
+        sensorTable = buildSensorTable();
 
-        updateSensorList(sensorListPanel);
+        refreshTimer = new Timer(REFRESH_DELAY_MILLIS, e -> sensorTableModel.refresh());
+        refreshTimer.setRepeats(false);
+        this.securityService.setSensorStatusListener(this);
 
         add(panelLabel, "wrap");
         add(newSensorPanel, "span");
-        add(sensorListPanel, "span");
+        add(new JScrollPane(sensorTable), "span, width 560:560:560, height 200:300:600");
     }
 
     /**
@@ -63,64 +76,85 @@ public class SensorPanel extends JPanel implements SensorStatusListener {
     }
 
     /**
-     * Requests the current list of sensors and updates the provided panel to display them. Sensors
-     * will display in the order that they are created.
-     * @param p The Panel to populate with the current list of sensors
+     * Builds the sensor table. The two action columns are drawn as buttons by one shared renderer
+     * and clicks on them are handled by a mouse listener, so rows hold no components of their own.
      */
-    private void updateSensorList(JPanel p) {
-        p.removeAll();
-        securityService.getSensors().stream().sorted().forEach(s -> {
-            JLabel sensorLabel = new JLabel(String.format("%s(%s): %s", s.getName(),  s.getSensorType().toString(),(s.getActive() ? "Active" : "Inactive")));
-            JButton sensorToggleButton = new JButton((s.getActive() ? "Deactivate" : "Activate"));
-            JButton sensorRemoveButton = new JButton("Remove Sensor");
-
-            sensorToggleButton.addActionListener(e -> setSensorActivity(s, !s.getActive()) );
-            sensorRemoveButton.addActionListener(e -> removeSensor(s));
-
-            //hard code some sizes, tsk tsk
-            p.add(sensorLabel, "width 300:300:300");
-            p.add(sensorToggleButton, "width 100:100:100");
-            p.add(sensorRemoveButton, "wrap");
+    private JTable buildSensorTable() {
+        JTable table = new JTable(sensorTableModel);
+        table.setFillsViewportHeight(true);
+        table.setRowSelectionAllowed(false);
+        table.getTableHeader().setReorderingAllowed(false);
+
+        TableCellRenderer buttonRenderer = new TableCellRenderer() {
+            private final JButton button = new JButton();
+
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                                    boolean hasFocus, int row, int column) {
+                button.setText(value.toString());
+                return button;
+            }
+        };
+        table.getColumnModel().getColumn(SensorTableModel.TOGGLE_COLUMN).setCellRenderer(buttonRenderer);
+        table.getColumnModel().getColumn(SensorTableModel.REMOVE_COLUMN).setCellRenderer(buttonRenderer);
+        table.getColumnModel().getColumn(SensorTableModel.TOGGLE_COLUMN).setPreferredWidth(100);
+        table.getColumnModel().getColumn(SensorTableModel.REMOVE_COLUMN).setPreferredWidth(120);
+        table.setRowHeight(new JButton("Activate").getPreferredSize().height);
+
+        table.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int row = table.rowAtPoint(e.getPoint());
+                int column = table.columnAtPoint(e.getPoint());
+                if(row < 0) {
+                    return;
+                }
+                Sensor sensor = sensorTableModel.getSensorAt(row);
+                if(column == SensorTableModel.TOGGLE_COLUMN) {
+                    setSensorActivity(sensor, !Boolean.TRUE.equals(sensor.getActive()));
+                } else if(column == SensorTableModel.REMOVE_COLUMN) {
+                    removeSensor(sensor);
+                }
+            }
         });
-
-        repaint();
-        revalidate();
+        return table;
     }
 
     /**
-     * Asks the securityService to change a sensor activation status and then rebuilds the current sensor list
+     * Asks the securityService to change a sensor activation status and then redraws that sensor's row
      * @param sensor The sensor to update
      * @param isActive The sensor's activation status
      */
     private void setSensorActivity(Sensor sensor, Boolean isActive) {
         securityService.changeSensorActivationStatus(sensor, isActive);
-        updateSensorList(sensorListPanel);
+        sensorTableModel.sensorChanged(sensor);
     }
 
     /**
-     * Adds a sensor to the securityService and then rebuilds the sensor list
+     * Adds a sensor to the securityService and then inserts its row
      * @param sensor The sensor to add
      */
     private void addSensor(Sensor sensor) {
-        if(securityService.getSensors().size() < 4) {
-            securityService.addSensor(sensor);
-            updateSensorList(sensorListPanel);
-        } else {
-            JOptionPane.showMessageDialog(null, "To add more than 4 sensors, please subscribe to our Premium Membership!");
-        }
+        securityService.addSensor(sensor);
+        sensorTableModel.sensorAdded(sensor);
     }
 
     /**
-     * Remove a sensor from the securityService and then rebuild the sensor list
+     * Remove a sensor from the securityService and then delete its row
      * @param sensor The sensor to remove
      */
     private void removeSensor(Sensor sensor) {
         securityService.removeSensor(sensor);
-        updateSensorList(sensorListPanel);
+        sensorTableModel.sensorRemoved(sensor);
     }
 
+    /**
+     * Called after arming resets the sensors. Bursts of calls are folded into one refresh of the table.
+     */
     @Override
     public void sensorStatusChanged() {
-        updateSensorList(sensorListPanel);
+        if(!refreshTimer.isRunning()) {
+            refreshTimer.start();
+        }
     }
 }
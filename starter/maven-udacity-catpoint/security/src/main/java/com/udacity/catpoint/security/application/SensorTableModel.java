@@ -0,0 +1,158 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.service.SecurityService;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Table model over the security service's sensors, in the service's sort order. Rows are only
+ * re-rendered when something about them changed: toggling a sensor updates its row, adding or
+ * removing one inserts or deletes a row, and {@link #refresh} compares the activation status each
+ * row was last drawn with against the sensors' current state.
+ *
+ * Only used on the event dispatch thread.
+ */
+public class SensorTableModel extends AbstractTableModel {
+
+    static final int NAME_COLUMN = 0;
+    static final int TYPE_COLUMN = 1;
+    static final int ZONE_COLUMN = 2;
+    static final int STATUS_COLUMN = 3;
+    static final int TOGGLE_COLUMN = 4;
+    static final int REMOVE_COLUMN = 5;
+
+    private static final String[] COLUMN_NAMES = {"Name", "Type", "Zone", "Status", "", ""};
+
+    private final SecurityService securityService;
+    private final List<Sensor> sensors = new ArrayList<>();
+    //activation status each row was last rendered with
+    private final List<Boolean> renderedActive = new ArrayList<>();
+    private long sensorVersion = -1;
+
+    public SensorTableModel(SecurityService securityService) {
+        this.securityService = securityService;
+        reload();
+    }
+
+    /**
+     * Brings the table up to date with the service. Reloads every row if sensors were added or removed
+     * elsewhere; otherwise only rows whose activation status changed are updated.
+     */
+    public void refresh() {
+        if(securityService.getSensorVersion() != sensorVersion) {
+            reload();
+            return;
+        }
+        for(int row = 0; row < sensors.size(); row++) {
+            if(isActive(sensors.get(row)) != renderedActive.get(row)) {
+                renderedActive.set(row, isActive(sensors.get(row)));
+                fireTableRowsUpdated(row, row);
+            }
+        }
+    }
+
+    /**
+     * Updates the row of a sensor whose state changed.
+     */
+    public void sensorChanged(Sensor sensor) {
+        int row = rowOf(sensor);
+        if(row >= 0) {
+            renderedActive.set(row, isActive(sensor));
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    /**
+     * Inserts the row of a sensor just added to the service.
+     */
+    public void sensorAdded(Sensor sensor) {
+        int row = Collections.binarySearch(sensors, sensor);
+        if(row < 0 && sensorVersion == securityService.getSensorVersion() - 1) {
+            row = -row - 1;
+            sensors.add(row, sensor);
+            renderedActive.add(row, isActive(sensor));
+            sensorVersion++;
+            fireTableRowsInserted(row, row);
+        } else {
+            refresh();
+        }
+    }
+
+    /**
+     * Deletes the row of a sensor just removed from the service.
+     */
+    public void sensorRemoved(Sensor sensor) {
+        int row = rowOf(sensor);
+        if(row >= 0 && sensorVersion == securityService.getSensorVersion() - 1) {
+            sensors.remove(row);
+            renderedActive.remove(row);
+            sensorVersion++;
+            fireTableRowsDeleted(row, row);
+        } else {
+            refresh();
+        }
+    }
+
+    public Sensor getSensorAt(int row) {
+        return sensors.get(row);
+    }
+
+    @Override
+    public int getRowCount() {
+        return sensors.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Sensor sensor = sensors.get(row);
+        switch(column) {
+            case NAME_COLUMN:
+                return sensor.getName();
+            case TYPE_COLUMN:
+                return sensor.getSensorType().toString();
+            case ZONE_COLUMN:
+                return sensor.getZone();
+            case STATUS_COLUMN:
+                return renderedActive.get(row) ? "Active" : "Inactive";
+            case TOGGLE_COLUMN:
+                return renderedActive.get(row) ? "Deactivate" : "Activate";
+            default:
+                return "Remove Sensor";
+        }
+    }
+
+    private void reload() {
+        sensorVersion = securityService.getSensorVersion();
+        sensors.clear();
+        renderedActive.clear();
+        //the service's sensor set is already sorted
+        for(Sensor sensor : securityService.getSensors()) {
+            sensors.add(sensor);
+            renderedActive.add(isActive(sensor));
+        }
+        fireTableDataChanged();
+    }
+
+    private int rowOf(Sensor sensor) {
+        int row = Collections.binarySearch(sensors, sensor);
+        return row >= 0 && sensors.get(row).equals(sensor) ? row : -1;
+    }
+
+    private static boolean isActive(Sensor sensor) {
+        return Boolean.TRUE.equals(sensor.getActive());
+    }
+}
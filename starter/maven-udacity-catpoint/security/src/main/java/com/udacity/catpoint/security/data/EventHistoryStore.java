@@ -0,0 +1,502 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Append-only history of sensor activations, arming changes, alarm transitions and cat verdicts,
+ * kept next to the repository for looking back at what happened, for example after an incident.
+ *
+ * Events are stored in columns in fixed-size segment files that are memory-mapped, so queries read
+ * only the columns and the part of each segment they need and nothing is loaded onto the heap:
+ * - timestamps: 8 bytes, nanoseconds since the epoch, never decreasing
+ * - type: 1 byte
+ * - from and to status: 1 byte, 4 bits each
+ * - sensor: 4 bytes, an index into the sensor dictionary file, or -1
+ *
+ * A segment's header holds its time range, the number of events of each type and a bitmap of the
+ * sensors it has events for. A query finds the first segment of its time range by binary search,
+ * skips segments that can't have matching events, and binary searches the timestamps of the
+ * others, so narrow time ranges cost the same however long the history is.
+ *
+ * A segment's event count in its header is updated after the event itself, so an event is either
+ * complete or not there after a crash. Mapped files survive the process crashing but reach the disk
+ * only when the operating system writes them back, or on {@link #flush}.
+ *
+ * Appends are serialized; queries may run at the same time as appends and see the events that were
+ * complete when they started.
+ */
+public class EventHistoryStore implements AutoCloseable {
+
+    public static final int DEFAULT_SEGMENT_CAPACITY = 1 << 20;
+
+    private static final String SENSOR_DICTIONARY = "sensors.dict";
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final int MAGIC = 0x43504548; //"CPEH"
+    private static final int VERSION = 1;
+    //header fields
+    private static final int COUNT = 8;
+    private static final int CAPACITY = 12;
+    private static final int FIRST_TIMESTAMP = 16;
+    private static final int LAST_TIMESTAMP = 24;
+    private static final int TYPE_COUNTS = 32;
+    private static final int SENSOR_BITMAP = 64;
+    private static final int SENSOR_BITMAP_WORDS = 16;
+    private static final int HEADER_SIZE = 256;
+    private static final int BYTES_PER_EVENT = Long.BYTES + 1 + 1 + Integer.BYTES;
+
+    private static final int NO_SENSOR = -1;
+    private static final HistoryEvent.Type[] TYPES = HistoryEvent.Type.values();
+    //wall clock time in nanoseconds, advancing with System.nanoTime()
+    private static final long EPOCH_NANOS_AT_ZERO = System.currentTimeMillis() * 1_000_000L - System.nanoTime();
+
+    private final Path directory;
+    private final int segmentCapacity;
+    private final LongSupplier epochNanoClock;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private Segment active;
+    private int nextSegmentNumber;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    private final Map<UUID, Integer> sensorIndexes = new HashMap<>();
+    //replaced when a sensor is added, so queries can read it without locking
+    private volatile UUID[] sensorIds = new UUID[0];
+    private FileChannel sensorDictionary;
+
+    public EventHistoryStore(Path directory) {
+        this(directory, DEFAULT_SEGMENT_CAPACITY, EventHistoryStore::epochNanos);
+    }
+
+    /**
+     * @param directory Directory holding the segment and sensor dictionary files. Created if missing.
+     * @param segmentCapacity Number of events per segment file
+     * @param epochNanoClock Source of event timestamps, in nanoseconds since the epoch
+     */
+    public EventHistoryStore(Path directory, int segmentCapacity, LongSupplier epochNanoClock) {
+        if(segmentCapacity < 1 || segmentCapacity > (Integer.MAX_VALUE - HEADER_SIZE) / BYTES_PER_EVENT) {
+            throw new IllegalArgumentException("segmentCapacity must be positive and fit one mapping");
+        }
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+        this.epochNanoClock = epochNanoClock;
+        try {
+            Files.createDirectories(directory);
+            loadSensorDictionary();
+            loadSegments();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open event history in " + directory, ioe);
+        }
+    }
+
+    /**
+     * @return The current time in nanoseconds since the epoch, with nanosecond resolution
+     */
+    public static long epochNanos() {
+        return EPOCH_NANOS_AT_ZERO + System.nanoTime();
+    }
+
+    /**
+     * @return The current time by this store's clock, for building queries such as "the last hour"
+     */
+    public long now() {
+        return epochNanoClock.getAsLong();
+    }
+
+    public void recordSensor(UUID sensorId, boolean active) {
+        append(active ? HistoryEvent.Type.SENSOR_ACTIVATED : HistoryEvent.Type.SENSOR_DEACTIVATED, sensorId, 0, 0);
+    }
+
+    public void recordArmingChange(ArmingStatus from, ArmingStatus to) {
+        append(HistoryEvent.Type.ARMING_CHANGED, null, from.ordinal(), to.ordinal());
+    }
+
+    public void recordAlarmChange(AlarmStatus from, AlarmStatus to) {
+        append(HistoryEvent.Type.ALARM_CHANGED, null, from.ordinal(), to.ordinal());
+    }
+
+    public void recordCatVerdict(boolean catDetected) {
+        append(HistoryEvent.Type.CAT_VERDICT, null, 0, catDetected ? 1 : 0);
+    }
+
+    /**
+     * @return Number of events matching the query
+     */
+    public long count(HistoryQuery query) {
+        long[] count = new long[1];
+        scan(query, (segment, index) -> {
+            count[0]++;
+            return true;
+        });
+        return count[0];
+    }
+
+    /**
+     * @return The first events matching the query, oldest first
+     */
+    public List<HistoryEvent> find(HistoryQuery query, int limit) {
+        List<HistoryEvent> events = new ArrayList<>();
+        if(limit > 0) {
+            scan(query, (segment, index) -> {
+                events.add(segment.event(index, sensorIds));
+                return events.size() < limit;
+            });
+        }
+        return events;
+    }
+
+    /**
+     * Passes every event matching the query to the consumer, oldest first.
+     */
+    public void forEach(HistoryQuery query, Consumer<HistoryEvent> consumer) {
+        scan(query, (segment, index) -> {
+            consumer.accept(segment.event(index, sensorIds));
+            return true;
+        });
+    }
+
+    public synchronized long getEventCount() {
+        long count = 0;
+        for(Segment segment : segments) {
+            count += segment.count;
+        }
+        return count;
+    }
+
+    /**
+     * Forces recorded events to the storage device.
+     */
+    public synchronized void flush() {
+        try {
+            if(active != null) {
+                active.buffer.force();
+            }
+            sensorDictionary.force(false);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to flush event history", ioe);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        flush();
+        try {
+            sensorDictionary.close();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to close event history", ioe);
+        }
+    }
+
+    private synchronized void append(HistoryEvent.Type type, UUID sensorId, int from, int to) {
+        int sensor = sensorId == null ? NO_SENSOR : sensorIndex(sensorId);
+        long timestamp = Math.max(epochNanoClock.getAsLong(), lastTimestamp);
+        if(active == null || active.count == active.capacity) {
+            active = createSegment();
+        }
+        active.append(timestamp, type, sensor, from, to);
+        lastTimestamp = timestamp;
+    }
+
+    /**
+     * Calls the visitor with the segment and position of each matching event until it returns false.
+     */
+    private void scan(HistoryQuery query, EventVisitor visitor) {
+        Segment[] snapshot;
+        int[] counts;
+        synchronized (this) {
+            snapshot = segments.toArray(new Segment[0]);
+            counts = new int[snapshot.length];
+            for(int i = 0; i < snapshot.length; i++) {
+                counts[i] = snapshot[i].count;
+            }
+        }
+        int sensor = NO_SENSOR;
+        if(query.getSensorId() != null) {
+            Integer index;
+            synchronized (this) {
+                index = sensorIndexes.get(query.getSensorId());
+            }
+            if(index == null) {
+                return; //never had an event
+            }
+            sensor = index;
+        }
+        int type = query.getType() == null ? HistoryQuery.ANY : query.getType().ordinal();
+        int to = query.getTo();
+
+        for(int s = firstSegmentEndingAtOrAfter(snapshot, counts, query.getFromNanos()); s < snapshot.length; s++) {
+            Segment segment = snapshot[s];
+            int count = counts[s];
+            if(count == 0 || segment.timestamp(0) >= query.getToNanos()) {
+                break;
+            }
+            if((type != HistoryQuery.ANY && segment.typeCounts[type] == 0) || (sensor != NO_SENSOR && !segment.mayHaveSensor(sensor))) {
+                continue;
+            }
+            int end = segment.firstAtOrAfter(query.getToNanos(), count);
+            for(int i = segment.firstAtOrAfter(query.getFromNanos(), count); i < end; i++) {
+                if(type != HistoryQuery.ANY && segment.type(i) != type) {
+                    continue;
+                }
+                if(sensor != NO_SENSOR && segment.sensor(i) != sensor) {
+                    continue;
+                }
+                if(to != HistoryQuery.ANY && segment.to(i) != to) {
+                    continue;
+                }
+                if(!visitor.visit(segment, i)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static int firstSegmentEndingAtOrAfter(Segment[] segments, int[] counts, long timestamp) {
+        int low = 0;
+        int high = segments.length;
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(counts[mid] > 0 && segments[mid].timestamp(counts[mid] - 1) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int sensorIndex(UUID sensorId) {
+        Integer index = sensorIndexes.get(sensorId);
+        if(index != null) {
+            return index;
+        }
+        ByteBuffer entry = ByteBuffer.allocate(16);
+        entry.putLong(sensorId.getMostSignificantBits()).putLong(sensorId.getLeastSignificantBits()).flip();
+        try {
+            while(entry.hasRemaining()) {
+                sensorDictionary.write(entry);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to append to event history", ioe);
+        }
+        UUID[] ids = Arrays.copyOf(sensorIds, sensorIds.length + 1);
+        ids[ids.length - 1] = sensorId;
+        sensorIds = ids;
+        sensorIndexes.put(sensorId, ids.length - 1);
+        return ids.length - 1;
+    }
+
+    private void loadSensorDictionary() throws IOException {
+        sensorDictionary = FileChannel.open(directory.resolve(SENSOR_DICTIONARY),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        //a partial entry left by a crash is dropped
+        long entries = sensorDictionary.size() / 16;
+        ByteBuffer buffer = ByteBuffer.allocate((int) entries * 16);
+        while(buffer.hasRemaining() && sensorDictionary.read(buffer, buffer.position()) >= 0) {
+        }
+        buffer.flip();
+        UUID[] ids = new UUID[(int) entries];
+        for(int i = 0; i < ids.length; i++) {
+            ids[i] = new UUID(buffer.getLong(), buffer.getLong());
+            sensorIndexes.put(ids[i], i);
+        }
+        sensorIds = ids;
+        sensorDictionary.truncate(entries * 16);
+        sensorDictionary.position(entries * 16);
+    }
+
+    private void loadSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+        files.sort(null); //segment numbers are zero-padded
+        for(Path file : files) {
+            Segment segment = Segment.open(file);
+            segments.add(segment);
+            if(segment.count > 0) {
+                lastTimestamp = segment.timestamp(segment.count - 1);
+            }
+            String name = file.getFileName().toString();
+            nextSegmentNumber = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())) + 1;
+        }
+        if(!segments.isEmpty()) {
+            active = segments.get(segments.size() - 1);
+        }
+    }
+
+    private Segment createSegment() {
+        Path file = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, nextSegmentNumber, SEGMENT_SUFFIX));
+        try {
+            Segment segment = Segment.create(file, segmentCapacity);
+            nextSegmentNumber++;
+            if(active != null) {
+                active.buffer.force();
+            }
+            segments.add(segment);
+            return segment;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to create event history segment " + file, ioe);
+        }
+    }
+
+    @FunctionalInterface
+    private interface EventVisitor {
+        /**
+         * @return False to stop the scan
+         */
+        boolean visit(Segment segment, int index);
+    }
+
+    /**
+     * One mapped segment file. Its events and header are only written while holding the store's lock;
+     * count, typeCounts and sensorBitmap mirror the header.
+     */
+    private static final class Segment {
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final int typeColumn;
+        private final int statusColumn;
+        private final int sensorColumn;
+        private int count;
+        private final int[] typeCounts = new int[TYPES.length];
+        private final long[] sensorBitmap = new long[SENSOR_BITMAP_WORDS];
+
+        private Segment(MappedByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+            typeColumn = HEADER_SIZE + capacity * Long.BYTES;
+            statusColumn = typeColumn + capacity;
+            sensorColumn = statusColumn + capacity;
+        }
+
+        private static long size(int capacity) {
+            return HEADER_SIZE + (long) capacity * BYTES_PER_EVENT;
+        }
+
+        static Segment create(Path file, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size(capacity));
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(CAPACITY, capacity);
+                buffer.putInt(COUNT, 0);
+                return new Segment(buffer, capacity);
+            }
+        }
+
+        static Segment open(Path file) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while(header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                }
+                if(header.getInt(0) != MAGIC) {
+                    throw new IOException("Unrecognized event history segment " + file);
+                }
+                if(header.getInt(4) != VERSION) {
+                    throw new IOException("Unsupported event history version " + header.getInt(4) + " in " + file);
+                }
+                int capacity = header.getInt(CAPACITY);
+                if(channel.size() < size(capacity)) {
+                    throw new IOException("Truncated event history segment " + file);
+                }
+                Segment segment = new Segment(channel.map(FileChannel.MapMode.READ_WRITE, 0, size(capacity)), capacity);
+                segment.count = Math.min(header.getInt(COUNT), capacity);
+                for(int t = 0; t < TYPES.length; t++) {
+                    segment.typeCounts[t] = header.getInt(TYPE_COUNTS + t * Integer.BYTES);
+                }
+                for(int w = 0; w < SENSOR_BITMAP_WORDS; w++) {
+                    segment.sensorBitmap[w] = header.getLong(SENSOR_BITMAP + w * Long.BYTES);
+                }
+                return segment;
+            }
+        }
+
+        void append(long timestamp, HistoryEvent.Type type, int sensor, int from, int to) {
+            int index = count;
+            buffer.putLong(HEADER_SIZE + index * Long.BYTES, timestamp);
+            buffer.put(typeColumn + index, (byte) type.ordinal());
+            buffer.put(statusColumn + index, (byte) (from << 4 | to));
+            buffer.putInt(sensorColumn + index * Integer.BYTES, sensor);
+
+            int typeCount = ++typeCounts[type.ordinal()];
+            buffer.putInt(TYPE_COUNTS + type.ordinal() * Integer.BYTES, typeCount);
+            if(sensor != NO_SENSOR) {
+                int word = (sensor >>> 6) % SENSOR_BITMAP_WORDS;
+                sensorBitmap[word] |= 1L << sensor;
+                buffer.putLong(SENSOR_BITMAP + word * Long.BYTES, sensorBitmap[word]);
+            }
+            if(index == 0) {
+                buffer.putLong(FIRST_TIMESTAMP, timestamp);
+            }
+            buffer.putLong(LAST_TIMESTAMP, timestamp);
+            //the event only counts once everything above is written
+            buffer.putInt(COUNT, index + 1);
+            count = index + 1;
+        }
+
+        boolean mayHaveSensor(int sensor) {
+            return (sensorBitmap[(sensor >>> 6) % SENSOR_BITMAP_WORDS] & 1L << sensor) != 0;
+        }
+
+        long timestamp(int index) {
+            return buffer.getLong(HEADER_SIZE + index * Long.BYTES);
+        }
+
+        int type(int index) {
+            return buffer.get(typeColumn + index);
+        }
+
+        int from(int index) {
+            return (buffer.get(statusColumn + index) >> 4) & 0xF;
+        }
+
+        int to(int index) {
+            return buffer.get(statusColumn + index) & 0xF;
+        }
+
+        int sensor(int index) {
+            return buffer.getInt(sensorColumn + index * Integer.BYTES);
+        }
+
+        /**
+         * @return Index of the first of the first count events at or after the timestamp, or count
+         */
+        int firstAtOrAfter(long timestamp, int count) {
+            int low = 0;
+            int high = count;
+            while(low < high) {
+                int mid = (low + high) >>> 1;
+                if(timestamp(mid) < timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        HistoryEvent event(int index, UUID[] sensorIds) {
+            int sensor = sensor(index);
+            return new HistoryEvent(timestamp(index), TYPES[type(index)],
+                    sensor == NO_SENSOR ? null : sensorIds[sensor], from(index), to(index));
+        }
+    }
+}
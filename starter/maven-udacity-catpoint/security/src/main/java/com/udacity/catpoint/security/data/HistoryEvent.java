@@ -0,0 +1,100 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.UUID;
+
+/**
+ * One entry of the {@link EventHistoryStore}: something that happened to the security system and when.
+ */
+public final class HistoryEvent {
+
+    public enum Type {
+        /** A sensor became active. */
+        SENSOR_ACTIVATED,
+        /** A sensor became inactive, either by itself or because the system was armed. */
+        SENSOR_DEACTIVATED,
+        /** The arming status changed. */
+        ARMING_CHANGED,
+        /** The alarm status changed. */
+        ALARM_CHANGED,
+        /** The cameras were scanned; the verdict is whether any of them shows a cat. */
+        CAT_VERDICT
+    }
+
+    private static final ArmingStatus[] ARMING_STATUSES = ArmingStatus.values();
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+
+    private final long timestampNanos;
+    private final Type type;
+    private final UUID sensorId;
+    private final int from;
+    private final int to;
+
+    HistoryEvent(long timestampNanos, Type type, UUID sensorId, int from, int to) {
+        this.timestampNanos = timestampNanos;
+        this.type = type;
+        this.sensorId = sensorId;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * @return Nanoseconds since the epoch
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return The sensor of a sensor event, otherwise null
+     */
+    public UUID getSensorId() {
+        return sensorId;
+    }
+
+    /**
+     * @return The alarm status an ALARM_CHANGED event moved to, otherwise null
+     */
+    public AlarmStatus getAlarmStatus() {
+        return type == Type.ALARM_CHANGED ? ALARM_STATUSES[to] : null;
+    }
+
+    public AlarmStatus getPreviousAlarmStatus() {
+        return type == Type.ALARM_CHANGED ? ALARM_STATUSES[from] : null;
+    }
+
+    /**
+     * @return The arming status an ARMING_CHANGED event moved to, otherwise null
+     */
+    public ArmingStatus getArmingStatus() {
+        return type == Type.ARMING_CHANGED ? ARMING_STATUSES[to] : null;
+    }
+
+    public ArmingStatus getPreviousArmingStatus() {
+        return type == Type.ARMING_CHANGED ? ARMING_STATUSES[from] : null;
+    }
+
+    /**
+     * @return The verdict of a CAT_VERDICT event, otherwise false
+     */
+    public boolean isCatDetected() {
+        return type == Type.CAT_VERDICT && to == 1;
+    }
+
+    @Override
+    public String toString() {
+        switch(type) {
+            case ALARM_CHANGED:
+                return timestampNanos + " " + type + " " + getPreviousAlarmStatus() + " -> " + getAlarmStatus();
+            case ARMING_CHANGED:
+                return timestampNanos + " " + type + " " + getPreviousArmingStatus() + " -> " + getArmingStatus();
+            case CAT_VERDICT:
+                return timestampNanos + " " + type + " " + isCatDetected();
+            default:
+                return timestampNanos + " " + type + " " + sensorId;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.UUID;
+
+/**
+ * Selects events from an {@link EventHistoryStore}: a time range, optionally narrowed to one event
+ * type, one sensor and the status a change moved to. Queries are immutable; each narrowing method
+ * returns a new query.
+ *
+ * For example, all alarms raised between t1 and t2:
+ * HistoryQuery.between(t1, t2).alarmStatus(AlarmStatus.ALARM)
+ */
+public final class HistoryQuery {
+
+    static final int ANY = -1;
+
+    private final long fromNanos;
+    private final long toNanos;
+    private final HistoryEvent.Type type;
+    private final UUID sensorId;
+    private final int to;
+
+    private HistoryQuery(long fromNanos, long toNanos, HistoryEvent.Type type, UUID sensorId, int to) {
+        this.fromNanos = fromNanos;
+        this.toNanos = toNanos;
+        this.type = type;
+        this.sensorId = sensorId;
+        this.to = to;
+    }
+
+    /**
+     * @param fromNanos Start of the range in nanoseconds since the epoch, inclusive
+     * @param toNanos End of the range, exclusive
+     */
+    public static HistoryQuery between(long fromNanos, long toNanos) {
+        return new HistoryQuery(fromNanos, toNanos, null, null, ANY);
+    }
+
+    public HistoryQuery type(HistoryEvent.Type type) {
+        return new HistoryQuery(fromNanos, toNanos, type, sensorId, to);
+    }
+
+    /**
+     * Only events of one sensor, which are sensor activations and deactivations.
+     */
+    public HistoryQuery sensor(UUID sensorId) {
+        return new HistoryQuery(fromNanos, toNanos, type, sensorId, to);
+    }
+
+    /**
+     * Only alarm changes to the given status.
+     */
+    public HistoryQuery alarmStatus(AlarmStatus alarmStatus) {
+        return new HistoryQuery(fromNanos, toNanos, HistoryEvent.Type.ALARM_CHANGED, sensorId, alarmStatus.ordinal());
+    }
+
+    /**
+     * Only arming changes to the given status.
+     */
+    public HistoryQuery armingStatus(ArmingStatus armingStatus) {
+        return new HistoryQuery(fromNanos, toNanos, HistoryEvent.Type.ARMING_CHANGED, sensorId, armingStatus.ordinal());
+    }
+
+    long getFromNanos() {
+        return fromNanos;
+    }
+
+    long getToNanos() {
+        return toNanos;
+    }
+
+    HistoryEvent.Type getType() {
+        return type;
+    }
+
+    UUID getSensorId() {
+        return sensorId;
+    }
+
+    int getTo() {
+        return to;
+    }
+}
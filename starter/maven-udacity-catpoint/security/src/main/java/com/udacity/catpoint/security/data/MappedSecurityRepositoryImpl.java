@@ -0,0 +1,425 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Repository implementation that keeps sensor state in a memory-mapped file of fixed-width
+ * slots. Updating a sensor rewrites only that sensor's slot, and reopening the repository
+ * only has to scan the slot table rather than parse a serialized sensor set.
+ *
+ * Each slot holds the sensor id as two longs, an index into a side table of interned sensor
+ * names, a single flags byte packing the {@link SensorType} ordinal and the active flag, and
+ * the sensor's zone in the last three bytes. Names and zones are appended to the same file the
+ * first time they are seen, so sensors sharing a name or zone share a single entry. A new entry is
+ * forced to the storage device before any slot refers to it, since the operating system may write
+ * the mapped slots back at any time.
+ *
+ * Slots are found by id through an open-addressing table of slot numbers, comparing against the
+ * ids stored in the slots themselves, and freed slots are kept on an int stack, so the in-memory
+ * index holds no per-sensor objects.
+ */
+public class MappedSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    private static final String SLOT_FILE = "catpoint-sensors.dat";
+    private static final String NAME_FILE = "catpoint-names.dat";
+    private static final int MAGIC = 0xCA7B0002;
+
+    //header layout
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 4;
+    private static final int ALARM_OFFSET = 8;
+    private static final int ARMING_OFFSET = 9;
+
+    //slot layout
+    private static final int SLOT_SIZE = 24;
+    private static final int MSB_OFFSET = 0;
+    private static final int LSB_OFFSET = 8;
+    private static final int NAME_OFFSET = 16;
+    private static final int FLAGS_OFFSET = 20;
+    //zone name index plus one, as a three byte number; zero, as in files from before zones, is the default zone
+    private static final int ZONE_OFFSET = 21;
+    private static final int MAX_ZONE = 0xFFFFFF;
+
+    //flags byte: bit 7 marks a used slot, bit 6 the active flag, low bits the sensor type
+    private static final int USED = 0x80;
+    private static final int ACTIVE = 0x40;
+    private static final int TYPE_MASK = 0x3F;
+
+    public static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+    private final FileChannel slotChannel;
+    private final FileChannel nameChannel;
+    private MappedByteBuffer slots;
+    private int capacity;
+
+    //hash table of slot + 1, zero marking an empty entry; at most half full
+    private int[] table = new int[16];
+    private int mask = table.length - 1;
+    private int sensorCount;
+
+    //stack of freed slots below the high water mark, lowest on top after loading
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int highWaterMark;
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    public MappedSecurityRepositoryImpl() {
+        this(Paths.get(System.getProperty("user.home"), ".catpoint"));
+    }
+
+    public MappedSecurityRepositoryImpl(Path directory) {
+        this(directory, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param directory Directory holding the slot and name files. Created if missing.
+     * @param initialCapacity Number of slots to allocate when creating a new file. The file doubles when full.
+     */
+    public MappedSecurityRepositoryImpl(Path directory, int initialCapacity) {
+        if(initialCapacity < 1) {
+            throw new IllegalArgumentException("initialCapacity must be positive");
+        }
+        try {
+            Files.createDirectories(directory);
+            slotChannel = FileChannel.open(directory.resolve(SLOT_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            nameChannel = FileChannel.open(directory.resolve(NAME_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            loadNames();
+            if(slotChannel.size() < HEADER_SIZE) {
+                capacity = initialCapacity;
+                map();
+                slots.putInt(MAGIC_OFFSET, MAGIC);
+                slots.putInt(CAPACITY_OFFSET, capacity);
+                slots.put(ALARM_OFFSET, (byte) AlarmStatus.NO_ALARM.ordinal());
+                slots.put(ARMING_OFFSET, (byte) ArmingStatus.DISARMED.ordinal());
+            } else {
+                MappedByteBuffer header = slotChannel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+                if(header.getInt(MAGIC_OFFSET) != MAGIC) {
+                    throw new IOException("Unrecognized sensor file in " + directory);
+                }
+                capacity = header.getInt(CAPACITY_OFFSET);
+                map();
+                loadSlots();
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open repository in " + directory, ioe);
+        }
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        writeSlot(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        UUID id = sensor.getSensorId();
+        int entry = find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if(entry >= 0) {
+            int slot = table[entry] - 1;
+            delete(entry);
+            sensorCount--;
+            slots.put(slotOffset(slot) + FLAGS_OFFSET, (byte) 0);
+            pushFreeSlot(slot);
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        writeSlot(sensor);
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        slots.put(ALARM_OFFSET, (byte) alarmStatus.ordinal());
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        slots.put(ARMING_OFFSET, (byte) armingStatus.ordinal());
+    }
+
+    /**
+     * Builds the sensor set from the slot table. Each call returns fresh {@link Sensor}
+     * instances; changes to them are only stored once passed back to {@link #updateSensor}.
+     */
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        Set<Sensor> sensors = new TreeSet<>();
+        for(int slot = 0; slot < highWaterMark; slot++) {
+            int flags = slots.get(slotOffset(slot) + FLAGS_OFFSET) & 0xFF;
+            if((flags & USED) != 0) {
+                sensors.add(readSlot(slot, flags));
+            }
+        }
+        return sensors;
+    }
+
+    /**
+     * Reads a single sensor straight from its slot.
+     * @return The stored sensor, or null if no sensor with this id exists
+     */
+    public synchronized Sensor getSensor(UUID sensorId) {
+        int entry = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        if(entry < 0) {
+            return null;
+        }
+        int slot = table[entry] - 1;
+        return readSlot(slot, slots.get(slotOffset(slot) + FLAGS_OFFSET) & 0xFF);
+    }
+
+    @Override
+    public synchronized AlarmStatus getAlarmStatus() {
+        return AlarmStatus.values()[slots.get(ALARM_OFFSET)];
+    }
+
+    @Override
+    public synchronized ArmingStatus getArmingStatus() {
+        return ArmingStatus.values()[slots.get(ARMING_OFFSET)];
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(slotChannel.isOpen()) {
+            slots.force();
+            slotChannel.close();
+            nameChannel.force(true);
+            nameChannel.close();
+        }
+    }
+
+    private void writeSlot(Sensor sensor) {
+        long msb = sensor.getSensorId().getMostSignificantBits();
+        long lsb = sensor.getSensorId().getLeastSignificantBits();
+        int entry = find(msb, lsb);
+        int slot;
+        if(entry < 0) {
+            slot = allocateSlot();
+            //the id goes in first, since the table compares against the ids stored in the slots
+            slots.putLong(slotOffset(slot) + MSB_OFFSET, msb);
+            slots.putLong(slotOffset(slot) + LSB_OFFSET, lsb);
+            addToTable(slot);
+        } else {
+            slot = table[entry] - 1;
+        }
+        int offset = slotOffset(slot);
+        int flags = USED | sensor.getSensorType().ordinal();
+        if(Boolean.TRUE.equals(sensor.getActive())) {
+            flags |= ACTIVE;
+        }
+        slots.putInt(offset + NAME_OFFSET, internName(sensor.getName()));
+        writeZone(offset, Sensor.DEFAULT_ZONE.equals(sensor.getZone()) ? 0 : internName(sensor.getZone()) + 1);
+        slots.put(offset + FLAGS_OFFSET, (byte) flags);
+    }
+
+    private Sensor readSlot(int slot, int flags) {
+        int offset = slotOffset(slot);
+        int zone = readZone(offset);
+        Sensor sensor = new Sensor(names.get(slots.getInt(offset + NAME_OFFSET)), SensorType.values()[flags & TYPE_MASK],
+                zone == 0 ? Sensor.DEFAULT_ZONE : names.get(zone - 1));
+        sensor.setSensorId(new UUID(slots.getLong(offset + MSB_OFFSET), slots.getLong(offset + LSB_OFFSET)));
+        sensor.setActive((flags & ACTIVE) != 0);
+        return sensor;
+    }
+
+    private void writeZone(int offset, int zone) {
+        if(zone > MAX_ZONE) {
+            throw new IllegalStateException("Too many distinct sensor names and zones to store");
+        }
+        slots.put(offset + ZONE_OFFSET, (byte) (zone >>> 16));
+        slots.putShort(offset + ZONE_OFFSET + 1, (short) zone);
+    }
+
+    private int readZone(int offset) {
+        return (slots.get(offset + ZONE_OFFSET) & 0xFF) << 16 | (slots.getShort(offset + ZONE_OFFSET + 1) & 0xFFFF);
+    }
+
+    private int allocateSlot() {
+        if(freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if(highWaterMark == capacity) {
+            grow();
+        }
+        return highWaterMark++;
+    }
+
+    private void pushFreeSlot(int slot) {
+        if(freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * @return The table entry pointing at the slot holding the id, or -1
+     */
+    private int find(long msb, long lsb) {
+        for(int entry = hash(msb, lsb) & mask; ; entry = (entry + 1) & mask) {
+            int slot = table[entry] - 1;
+            if(slot < 0) {
+                return -1;
+            }
+            int offset = slotOffset(slot);
+            if(slots.getLong(offset + MSB_OFFSET) == msb && slots.getLong(offset + LSB_OFFSET) == lsb) {
+                return entry;
+            }
+        }
+    }
+
+    private void addToTable(int slot) {
+        if((sensorCount + 1) * 2 > table.length) {
+            int[] old = table;
+            table = new int[old.length * 2];
+            mask = table.length - 1;
+            for(int value : old) {
+                if(value != 0) {
+                    insert(value - 1);
+                }
+            }
+        }
+        insert(slot);
+        sensorCount++;
+    }
+
+    private void insert(int slot) {
+        int offset = slotOffset(slot);
+        int entry = hash(slots.getLong(offset + MSB_OFFSET), slots.getLong(offset + LSB_OFFSET)) & mask;
+        while(table[entry] != 0) {
+            entry = (entry + 1) & mask;
+        }
+        table[entry] = slot + 1;
+    }
+
+    /**
+     * Empties a table entry, shifting later entries of the same probe run back so lookups still
+     * find them without having to skip over deleted markers.
+     */
+    private void delete(int entry) {
+        int gap = entry;
+        for(int next = (gap + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int offset = slotOffset(table[next] - 1);
+            int home = hash(slots.getLong(offset + MSB_OFFSET), slots.getLong(offset + LSB_OFFSET)) & mask;
+            //the entry may move into the gap if the gap lies on its probe run from home to next
+            if(((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    private void grow() {
+        capacity *= 2;
+        try {
+            map();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to grow sensor file", ioe);
+        }
+        slots.putInt(CAPACITY_OFFSET, capacity);
+    }
+
+    private void map() throws IOException {
+        slots = slotChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+    }
+
+    /**
+     * Rebuilds the id-to-slot table and free list. Slots past the last used one are left
+     * unclaimed so new sensors fill the table from the front.
+     * @throws IOException if a used slot refers to a name or zone the name file doesn't hold
+     */
+    private void loadSlots() throws IOException {
+        for(int slot = 0; slot < capacity; slot++) {
+            int offset = slotOffset(slot);
+            if((slots.get(offset + FLAGS_OFFSET) & USED) != 0) {
+                int name = slots.getInt(offset + NAME_OFFSET);
+                if(name < 0 || name >= names.size() || readZone(offset) > names.size()) {
+                    throw new IOException("Sensor slot " + slot + " refers to a name missing from the name file");
+                }
+                addToTable(slot);
+                highWaterMark = slot + 1;
+            }
+        }
+        for(int slot = highWaterMark - 1; slot >= 0; slot--) {
+            if((slots.get(slotOffset(slot) + FLAGS_OFFSET) & USED) == 0) {
+                pushFreeSlot(slot);
+            }
+        }
+    }
+
+    private int internName(String name) {
+        String key = name == null ? "" : name;
+        Integer id = nameIds.get(key);
+        if(id != null) {
+            return id;
+        }
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(4 + bytes.length).putInt(bytes.length).put(bytes);
+        entry.flip();
+        try {
+            while(entry.hasRemaining()) {
+                nameChannel.write(entry, nameChannel.size());
+            }
+            //a slot written back before its name would point past the end of the file after a crash
+            nameChannel.force(false);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to store sensor name", ioe);
+        }
+        id = names.size();
+        names.add(key);
+        nameIds.put(key, id);
+        return id;
+    }
+
+    private void loadNames() throws IOException {
+        ByteBuffer buffer = nameChannel.map(FileChannel.MapMode.READ_ONLY, 0, nameChannel.size());
+        int validLength = 0;
+        while(buffer.remaining() >= 4) {
+            int length = buffer.getInt();
+            if(length < 0 || length > buffer.remaining()) {
+                break; //partially written name at the tail, it was never referenced by a slot
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            nameIds.putIfAbsent(name, names.size());
+            names.add(name);
+            validLength = buffer.position();
+        }
+        if(validLength < nameChannel.size()) {
+            nameChannel.truncate(validLength);
+        }
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
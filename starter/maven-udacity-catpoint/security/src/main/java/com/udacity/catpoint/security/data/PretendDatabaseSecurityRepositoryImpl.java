@@ -2,30 +2,48 @@ package com.udacity.catpoint.security.data;
 
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
+import com.udacity.catpoint.security.metrics.LatencyHistogram;
+import com.udacity.catpoint.security.metrics.MetricRegistry;
 
 import java.lang.reflect.Type;
+import java.util.HashSet;
 import java.util.Set;
-import java.util.TreeSet;
 import java.util.prefs.Preferences;
 
 /**
  * Fake repository implementation for demo purposes. Stores state information in local
  * memory and writes it to user preferences between app loads. This implementation is
  * intentionally a little hard to use in unit tests, so watch out!
+ *
+ * The sensor set is stored as JSON split over as many preference values as it needs, since a single
+ * value holds at most {@link Preferences#MAX_VALUE_LENGTH} characters.
  */
 public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository{
 
-    private Set<Sensor> sensors;
+    //parsed from the stored JSON on first use, so constructing the repository doesn't wait for Gson;
+    //keeps the Sensor objects, so getSensors hands out the instances that were added
+    private SensorIndex sensors;
+    private String storedSensors;
     private AlarmStatus alarmStatus;
     private ArmingStatus armingStatus;
 
     //preference keys
     private static final String SENSORS = "SENSORS";
+    //further parts of the sensor JSON are stored under SENSORS_1, SENSORS_2 and so on
+    private static final String SENSORS_PART = "SENSORS_";
     private static final String ALARM_STATUS = "ALARM_STATUS";
     private static final String ARMING_STATUS = "ARMING_STATUS";
 
+    //while a batch is open, sensor changes are only written when it is committed; every method
+    //that touches the index or the batch fields holds the repository's lock
+    private int batchDepth;
+    private boolean sensorsChanged;
+
     private static final Preferences prefs = Preferences.userNodeForPackage(PretendDatabaseSecurityRepositoryImpl.class);
-    private static final Gson gson = new Gson(); //used to serialize objects into JSON
+
+    private static final LatencyHistogram SENSOR_WRITES = writeHistogram("sensors");
+    private static final LatencyHistogram ALARM_WRITES = writeHistogram("alarm_status");
+    private static final LatencyHistogram ARMING_WRITES = writeHistogram("arming_status");
 
     public PretendDatabaseSecurityRepositoryImpl() {
         //load system state from prefs, or else default
@@ -34,59 +52,137 @@ public class PretendDatabaseSecurityRepositoryImpl implements SecurityRepository
 
         //we've serialized our sensor objects for storage, which should be a good warning sign that
         // this is likely an impractical solution for a real system
-        String sensorString = prefs.get(SENSORS, null);
-        if(sensorString == null) {
-            sensors = new TreeSet<>();
-        } else {
-            Type type = new TypeToken<Set<Sensor>>() {
-            }.getType();
-            sensors = gson.fromJson(sensorString, type);
+        storedSensors = loadSensorJson();
+    }
+
+    private static String loadSensorJson() {
+        String json = prefs.get(SENSORS, null);
+        if(json == null) {
+            return null;
+        }
+        StringBuilder parts = new StringBuilder(json);
+        for(int i = 1; (json = prefs.get(partKey(i), null)) != null; i++) {
+            parts.append(json);
+        }
+        return parts.toString();
+    }
+
+    private static String partKey(int part) {
+        return part == 0 ? SENSORS : SENSORS_PART + part;
+    }
+
+    private synchronized SensorIndex sensors() {
+        if(sensors == null) {
+            Set<Sensor> stored = storedSensors == null ? Set.of() : Json.GSON.fromJson(storedSensors, Json.SENSOR_SET);
+            sensors = new SensorIndex(stored.size(), true);
+            stored.forEach(sensors::put);
+            storedSensors = null;
         }
+        return sensors;
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors().put(sensor);
+        saveSensors();
     }
 
     @Override
-    public void addSensor(Sensor sensor) {
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors().remove(sensor.getSensorId());
+        saveSensors();
     }
 
     @Override
-    public void removeSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors().put(sensor);
+        saveSensors();
     }
 
     @Override
-    public void updateSensor(Sensor sensor) {
-        sensors.remove(sensor);
-        sensors.add(sensor);
-        prefs.put(SENSORS, gson.toJson(sensors));
+    public synchronized void beginBatch() {
+        batchDepth++;
     }
 
     @Override
-    public void setAlarmStatus(AlarmStatus alarmStatus) {
+    public synchronized void commitBatch() {
+        if(batchDepth > 0 && --batchDepth == 0 && sensorsChanged) {
+            saveSensors();
+        }
+    }
+
+    private synchronized void saveSensors() {
+        if(batchDepth > 0) {
+            sensorsChanged = true;
+            return;
+        }
+        long start = System.nanoTime();
+        String json = Json.GSON.toJson(sensors().asSet(), Json.SENSOR_SET);
+        int part = 0;
+        int from = 0;
+        do {
+            int end = Math.min(json.length(), from + Preferences.MAX_VALUE_LENGTH);
+            //don't split a surrogate pair across two values
+            if(end < json.length() && Character.isHighSurrogate(json.charAt(end - 1))) {
+                end--;
+            }
+            prefs.put(partKey(part++), json.substring(from, end));
+            from = end;
+        } while(from < json.length());
+        //drop parts left over from a larger sensor set
+        for(; prefs.get(partKey(part), null) != null; part++) {
+            prefs.remove(partKey(part));
+        }
+        sensorsChanged = false;
+        SENSOR_WRITES.recordSince(start);
+    }
+
+    private static LatencyHistogram writeHistogram(String key) {
+        return MetricRegistry.global().histogram("catpoint_repository_write", "Time to store a value in the repository",
+                "repository", "pretend", "key", key);
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
         this.alarmStatus = alarmStatus;
+        long start = System.nanoTime();
         prefs.put(ALARM_STATUS, this.alarmStatus.toString());
+        ALARM_WRITES.recordSince(start);
     }
 
     @Override
-    public void setArmingStatus(ArmingStatus armingStatus) {
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
         this.armingStatus = armingStatus;
+        long start = System.nanoTime();
         prefs.put(ARMING_STATUS, this.armingStatus.toString());
+        ARMING_WRITES.recordSince(start);
     }
 
+    /**
+     * @return A copy of the sensors; the instances are the ones stored, but the set can be iterated
+     * while other threads change the repository
+     */
     @Override
-    public Set<Sensor> getSensors() {
-        return sensors;
+    public synchronized Set<Sensor> getSensors() {
+        return new HashSet<>(sensors().asSet());
     }
 
     @Override
-    public AlarmStatus getAlarmStatus() {
+    public synchronized AlarmStatus getAlarmStatus() {
         return alarmStatus;
     }
 
     @Override
-    public ArmingStatus getArmingStatus() {
+    public synchronized ArmingStatus getArmingStatus() {
         return armingStatus;
     }
+
+    /**
+     * Gson and the sensor set's type, created the first time sensors are read or written.
+     */
+    private static class Json {
+        private static final Gson GSON = new Gson(); //used to serialize objects into JSON
+        private static final Type SENSOR_SET = new TypeToken<Set<Sensor>>() {
+        }.getType();
+    }
 }
@@ -1,5 +1,6 @@
 package com.udacity.catpoint.security.data;
 
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -15,5 +16,29 @@ public interface SecurityRepository {
     AlarmStatus getAlarmStatus();
     ArmingStatus getArmingStatus();
 
+    /**
+     * Starts a batch of changes. Until the matching commitBatch, implementations may keep changes in
+     * memory and then persist them all in one write. Batches may be nested; only the outermost commit
+     * persists. Implementations that write cheaply anyway can ignore batches.
+     */
+    default void beginBatch() {
+    }
 
+    /**
+     * Ends the batch started by beginBatch and persists its changes.
+     */
+    default void commitBatch() {
+    }
+
+    /**
+     * Stores several changed sensors as one batch.
+     */
+    default void updateSensors(Collection<Sensor> sensors) {
+        beginBatch();
+        try {
+            sensors.forEach(this::updateSensor);
+        } finally {
+            commitBatch();
+        }
+    }
 }
@@ -10,14 +10,26 @@ import java.util.UUID;
  * Sensor POJO. Needs to know how to sort itself for display purposes.
  */
 public class Sensor implements Comparable<Sensor> {
+    /** Zone of sensors created without one, and of sensors stored before zones existed. */
+    public static final String DEFAULT_ZONE = "default";
+
     private UUID sensorId;
     private String name;
     private Boolean active;
     private SensorType sensorType;
+    private String zone;
 
     public Sensor(String name, SensorType sensorType) {
+        this(name, sensorType, DEFAULT_ZONE);
+    }
+
+    /**
+     * @param zone Part of the site the sensor belongs to. Each zone keeps its own alarm state.
+     */
+    public Sensor(String name, SensorType sensorType, String zone) {
         this.name = name;
         this.sensorType = sensorType;
+        this.zone = zone;
         this.sensorId = UUID.randomUUID();
         this.active = Boolean.FALSE;
     }
@@ -59,6 +71,17 @@ public class Sensor implements Comparable<Sensor> {
         this.sensorType = sensorType;
     }
 
+    public String getZone() {
+        return zone == null || zone.isEmpty() ? DEFAULT_ZONE : zone;
+    }
+
+    /**
+     * Moves the sensor to another zone. SecurityService only picks this up when the sensor is added again.
+     */
+    public void setZone(String zone) {
+        this.zone = zone;
+    }
+
     public UUID getSensorId() {
         return sensorId;
     }
@@ -0,0 +1,344 @@
+package com.udacity.catpoint.security.data;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Sensors keyed by id, stored column by column instead of as one object graph per sensor. Each
+ * sensor is a row in parallel arrays: the two halves of its id in two long arrays, its type as a
+ * byte, its active flag as a bit, and its name and zone as references, with equal zones sharing one
+ * String. Ids are found through an open-addressing hash table of row numbers with linear probing, so
+ * looking up, adding, updating and removing a sensor take constant time and no per-entry objects.
+ *
+ * Compared with a TreeSet ordered by name plus a HashMap from id to sensor, which cost a Sensor, a
+ * UUID, a tree entry and a map node per sensor, a row takes around 40 bytes plus the name.
+ *
+ * The {@link Sensor} objects are optional. An index that keeps them hands out the instances it was
+ * given, updating them as its rows change; one that doesn't creates a new Sensor from the row each
+ * time one is asked for, and changes to those only reach the index through {@link #put}.
+ *
+ * Rows are numbered from zero to size - 1 and renumbered when a sensor is removed, because the last
+ * row moves into the gap. Not thread-safe; the repositories using it synchronize.
+ */
+public class SensorIndex {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final SensorType[] TYPES = SensorType.values();
+
+    private final boolean keepSensors;
+
+    //row columns
+    private long[] mostSignificantBits;
+    private long[] leastSignificantBits;
+    private byte[] types;
+    private final BitSet active = new BitSet();
+    private String[] names;
+    private String[] zones;
+    private Sensor[] sensors;
+    private int size;
+
+    //hash table of row + 1, zero marking an empty slot; at most half full
+    private int[] table;
+    private int mask;
+
+    private final Map<String, String> zoneNames = new HashMap<>();
+
+    /**
+     * Creates an index that doesn't keep Sensor objects.
+     */
+    public SensorIndex() {
+        this(MIN_CAPACITY, false);
+    }
+
+    /**
+     * @param expectedSize Number of sensors to make room for; the index grows beyond it as needed
+     * @param keepSensors True to keep the Sensor objects passed to put and hand them out again
+     */
+    public SensorIndex(int expectedSize, boolean keepSensors) {
+        this.keepSensors = keepSensors;
+        int capacity = Math.max(MIN_CAPACITY, expectedSize);
+        mostSignificantBits = new long[capacity];
+        leastSignificantBits = new long[capacity];
+        types = new byte[capacity];
+        names = new String[capacity];
+        zones = new String[capacity];
+        sensors = keepSensors ? new Sensor[capacity] : null;
+        table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        mask = table.length - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(UUID sensorId) {
+        return rowOf(sensorId) >= 0;
+    }
+
+    /**
+     * @return The sensor's row, or -1 if the index doesn't hold it
+     */
+    public int rowOf(UUID sensorId) {
+        int slot = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        return slot < 0 ? -1 : table[slot] - 1;
+    }
+
+    /**
+     * Adds a sensor or, if one with the same id is held, overwrites its row.
+     * @return True if the sensor was added
+     */
+    public boolean put(Sensor sensor) {
+        long msb = sensor.getSensorId().getMostSignificantBits();
+        long lsb = sensor.getSensorId().getLeastSignificantBits();
+        int slot = find(msb, lsb);
+        int row;
+        boolean added = slot < 0;
+        if(added) {
+            if(size == mostSignificantBits.length) {
+                growRows();
+            }
+            if((size + 1) * 2 > table.length) {
+                rehash(table.length * 2);
+            }
+            row = size++;
+            mostSignificantBits[row] = msb;
+            leastSignificantBits[row] = lsb;
+            insert(hash(msb, lsb), row);
+        } else {
+            row = table[slot] - 1;
+        }
+        types[row] = (byte) sensor.getSensorType().ordinal();
+        active.set(row, Boolean.TRUE.equals(sensor.getActive()));
+        names[row] = sensor.getName();
+        zones[row] = zoneNames.computeIfAbsent(sensor.getZone(), zone -> zone);
+        if(keepSensors) {
+            sensors[row] = sensor;
+        }
+        return added;
+    }
+
+    /**
+     * @return True if the index held the sensor
+     */
+    public boolean remove(UUID sensorId) {
+        int slot = find(sensorId.getMostSignificantBits(), sensorId.getLeastSignificantBits());
+        if(slot < 0) {
+            return false;
+        }
+        int row = table[slot] - 1;
+        delete(slot);
+        int last = --size;
+        if(row != last) {
+            //move the last row into the gap and point its table slot at the new row
+            mostSignificantBits[row] = mostSignificantBits[last];
+            leastSignificantBits[row] = leastSignificantBits[last];
+            types[row] = types[last];
+            active.set(row, active.get(last));
+            names[row] = names[last];
+            zones[row] = zones[last];
+            if(keepSensors) {
+                sensors[row] = sensors[last];
+            }
+            table[find(mostSignificantBits[row], leastSignificantBits[row])] = row + 1;
+        }
+        active.clear(last);
+        names[last] = null;
+        zones[last] = null;
+        if(keepSensors) {
+            sensors[last] = null;
+        }
+        return true;
+    }
+
+    /**
+     * Changes only the active flag of a sensor, and of its kept Sensor object.
+     * @return False if the index doesn't hold the sensor
+     */
+    public boolean setActive(UUID sensorId, boolean isActive) {
+        int row = rowOf(sensorId);
+        if(row < 0) {
+            return false;
+        }
+        active.set(row, isActive);
+        if(keepSensors) {
+            sensors[row].setActive(isActive);
+        }
+        return true;
+    }
+
+    /**
+     * Marks every sensor inactive.
+     */
+    public void deactivateAll() {
+        active.clear();
+        if(keepSensors) {
+            for(int row = 0; row < size; row++) {
+                sensors[row].setActive(false);
+            }
+        }
+    }
+
+    public int getActiveCount() {
+        return active.cardinality();
+    }
+
+    public boolean isActive(int row) {
+        checkRow(row);
+        return active.get(row);
+    }
+
+    public SensorType getSensorType(int row) {
+        checkRow(row);
+        return TYPES[types[row]];
+    }
+
+    public UUID getSensorId(int row) {
+        checkRow(row);
+        return new UUID(mostSignificantBits[row], leastSignificantBits[row]);
+    }
+
+    /**
+     * @return The kept Sensor of the row, or a new one built from it
+     */
+    public Sensor sensorAt(int row) {
+        checkRow(row);
+        if(keepSensors) {
+            return sensors[row];
+        }
+        Sensor sensor = new Sensor(names[row], TYPES[types[row]], zones[row]);
+        sensor.setSensorId(new UUID(mostSignificantBits[row], leastSignificantBits[row]));
+        sensor.setActive(active.get(row));
+        return sensor;
+    }
+
+    /**
+     * @return The sensor, or null if the index doesn't hold it
+     */
+    public Sensor get(UUID sensorId) {
+        int row = rowOf(sensorId);
+        return row < 0 ? null : sensorAt(row);
+    }
+
+    /**
+     * @return A read-only view of the sensors, in row order. Iterating an index that doesn't keep
+     * Sensor objects creates one per row.
+     */
+    public Set<Sensor> asSet() {
+        return new SensorSet();
+    }
+
+    private void checkRow(int row) {
+        if(row < 0 || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + size);
+        }
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * @return The table slot holding the id, or -1
+     */
+    private int find(long msb, long lsb) {
+        for(int slot = hash(msb, lsb) & mask; ; slot = (slot + 1) & mask) {
+            int entry = table[slot];
+            if(entry == 0) {
+                return -1;
+            }
+            if(mostSignificantBits[entry - 1] == msb && leastSignificantBits[entry - 1] == lsb) {
+                return slot;
+            }
+        }
+    }
+
+    private void insert(int hash, int row) {
+        int slot = hash & mask;
+        while(table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row + 1;
+    }
+
+    /**
+     * Empties a slot, shifting later entries of the same probe run back so lookups still find them
+     * without having to skip over deleted markers.
+     */
+    private void delete(int slot) {
+        int gap = slot;
+        for(int next = (gap + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int row = table[next] - 1;
+            int home = hash(mostSignificantBits[row], leastSignificantBits[row]) & mask;
+            //the entry may move into the gap if the gap lies on its probe run from home to next
+            if(((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+        }
+        table[gap] = 0;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        mask = tableSize - 1;
+        for(int row = 0; row < size; row++) {
+            insert(hash(mostSignificantBits[row], leastSignificantBits[row]), row);
+        }
+    }
+
+    private void growRows() {
+        int capacity = mostSignificantBits.length * 2;
+        mostSignificantBits = Arrays.copyOf(mostSignificantBits, capacity);
+        leastSignificantBits = Arrays.copyOf(leastSignificantBits, capacity);
+        types = Arrays.copyOf(types, capacity);
+        names = Arrays.copyOf(names, capacity);
+        zones = Arrays.copyOf(zones, capacity);
+        if(keepSensors) {
+            sensors = Arrays.copyOf(sensors, capacity);
+        }
+    }
+
+    private class SensorSet extends AbstractSet<Sensor> {
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Sensor && ((Sensor) o).getSensorId() != null && SensorIndex.this.contains(((Sensor) o).getSensorId());
+        }
+
+        @Override
+        public Iterator<Sensor> iterator() {
+            return new Iterator<>() {
+                private int row;
+
+                @Override
+                public boolean hasNext() {
+                    return row < size;
+                }
+
+                @Override
+                public Sensor next() {
+                    if(row >= size) {
+                        throw new NoSuchElementException();
+                    }
+                    return sensorAt(row++);
+                }
+            };
+        }
+    }
+}
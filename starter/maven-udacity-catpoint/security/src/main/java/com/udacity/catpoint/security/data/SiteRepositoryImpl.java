@@ -0,0 +1,168 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Repository of one site hosted with many others in the same JVM. State is held in memory and
+ * never written by the thread that changes it: every change only marks the repository dirty, and
+ * the {@link SiteStore} it came from writes the latest state of all dirty sites on its own thread.
+ * A burst of changes to one site costs a single write.
+ *
+ * Sensors are kept as rows of a {@link SensorIndex} rather than as the Sensor objects the site's
+ * service works with, so the writer never reads an object the service is changing, and an idle site
+ * holds little more than those rows. Like the mapped repository, getSensors returns fresh instances
+ * whose changes are only stored once passed back to updateSensor. Instances are created through
+ * {@link SiteStore#open}.
+ */
+public class SiteRepositoryImpl implements SecurityRepository {
+
+    private static final int MAGIC = 0xCA7B0525;
+    private static final int VERSION = 1;
+
+    private final SiteStore store;
+    private final String siteId;
+    private final SensorIndex sensors = new SensorIndex(0, false);
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+    //set when a change is waiting for the store's writer; guarded by this
+    private boolean dirty;
+    //set once the site is closed, after which changes are no longer stored; guarded by this
+    private boolean closed;
+
+    SiteRepositoryImpl(SiteStore store, String siteId) {
+        this.store = store;
+        this.siteId = siteId;
+    }
+
+    public String getSiteId() {
+        return siteId;
+    }
+
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        sensors.put(sensor);
+        changed();
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        if(sensors.remove(sensor.getSensorId())) {
+            changed();
+        }
+    }
+
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        sensors.put(sensor);
+        changed();
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        changed();
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        changed();
+    }
+
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        return new HashSet<>(sensors.asSet());
+    }
+
+    @Override
+    public synchronized AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public synchronized ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Queues the repository with the store again after its state couldn't be written.
+     */
+    synchronized void retryLater() {
+        changed();
+    }
+
+    private void changed() {
+        if(!dirty && !closed) {
+            dirty = true;
+            store.markDirty(this);
+        }
+    }
+
+    /**
+     * Stops reporting changes to the store, so a service still holding the repository after its site
+     * was closed can't overwrite the file of the site opened again.
+     * @return The state to write if changes were still waiting, otherwise null
+     */
+    synchronized byte[] close() {
+        byte[] snapshot = dirty ? takeSnapshot() : null;
+        closed = true;
+        return snapshot;
+    }
+
+    /**
+     * Takes the current state for writing and clears the dirty flag, so changes made while the
+     * state is written mark the repository dirty again.
+     * @return The state, or null if the repository was closed and its state written already
+     */
+    synchronized byte[] takeSnapshot() {
+        if(closed) {
+            return null;
+        }
+        dirty = false;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + sensors.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeByte(alarmStatus.ordinal());
+            out.writeByte(armingStatus.ordinal());
+            out.writeInt(sensors.size());
+            for(int row = 0; row < sensors.size(); row++) {
+                Sensor sensor = sensors.sensorAt(row);
+                out.writeLong(sensor.getSensorId().getMostSignificantBits());
+                out.writeLong(sensor.getSensorId().getLeastSignificantBits());
+                out.writeByte(sensor.getSensorType().ordinal());
+                out.writeBoolean(sensor.getActive());
+                out.writeUTF(sensor.getName() == null ? "" : sensor.getName());
+                out.writeUTF(sensor.getZone());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to encode site " + siteId, e);
+        }
+        return bytes.toByteArray();
+    }
+
+    synchronized void load(DataInputStream in) throws IOException {
+        if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Unrecognized site file for " + siteId);
+        }
+        alarmStatus = AlarmStatus.values()[in.readByte()];
+        armingStatus = ArmingStatus.values()[in.readByte()];
+        int count = in.readInt();
+        for(int i = 0; i < count; i++) {
+            UUID id = new UUID(in.readLong(), in.readLong());
+            SensorType type = SensorType.values()[in.readByte()];
+            boolean active = in.readBoolean();
+            Sensor sensor = new Sensor(in.readUTF(), type, in.readUTF());
+            sensor.setSensorId(id);
+            sensor.setActive(active);
+            sensors.put(sensor);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.udacity.catpoint.security.data;
+
+import com.udacity.catpoint.security.metrics.MetricRegistration;
+import com.udacity.catpoint.security.metrics.MetricRegistry;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Persists the repositories of many sites with a single writer thread. Each site is stored in its
+ * own file, named after the site, holding the site's latest state; a file is replaced atomically,
+ * so a crash leaves either the old or the new state. Repositories report changes by queueing
+ * themselves, and the writer takes the queue every flush interval, so a site changing many times
+ * in between is written once and sites that don't change cost nothing.
+ *
+ * Changes made since the last flush are lost if the process dies; closing the store writes them.
+ */
+public class SiteStore implements AutoCloseable {
+
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+
+    private static final String SITE_FILE_SUFFIX = ".site";
+    private static final Pattern SITE_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    private final Path directory;
+    private final Queue<SiteRepositoryImpl> dirtySites = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+    private final ScheduledExecutorService writer;
+    //one flush at a time, whether from the writer or from flush and close
+    private final Object flushLock = new Object();
+
+    private final AtomicLong writeCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final List<MetricRegistration> metricRegistrations;
+
+    public SiteStore(Path directory) {
+        this(directory, DEFAULT_FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param directory Directory holding one file per site. Created if missing.
+     * @param flushInterval How long changes may wait before they are written
+     */
+    public SiteStore(Path directory, long flushInterval, TimeUnit unit) {
+        if(flushInterval < 1) {
+            throw new IllegalArgumentException("flushInterval must be positive");
+        }
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to create site directory " + directory, ioe);
+        }
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "site-store-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, unit);
+
+        MetricRegistry registry = MetricRegistry.global();
+        metricRegistrations = List.of(
+                registry.gauge("catpoint_site_store_dirty", "Sites with changes waiting to be written", dirtyCount::get),
+                registry.counter("catpoint_site_store_writes", "Site files written", writeCount::get),
+                registry.counter("catpoint_site_store_write_failures", "Site files that couldn't be written", failureCount::get));
+    }
+
+    /**
+     * @return True if the id can name a site: 1 to 64 letters, digits, dots, dashes and underscores
+     */
+    public static boolean isValidSiteId(String siteId) {
+        return siteId != null && SITE_ID.matcher(siteId).matches();
+    }
+
+    /**
+     * Creates the repository of a site, loaded from its file if the site was stored before. Each
+     * site must only be opened once at a time.
+     * @throws IllegalArgumentException if the site id is invalid
+     * @throws UncheckedIOException if the site's file can't be read
+     */
+    public SiteRepositoryImpl open(String siteId) {
+        if(!isValidSiteId(siteId)) {
+            throw new IllegalArgumentException("Invalid site id: " + siteId);
+        }
+        SiteRepositoryImpl repository = new SiteRepositoryImpl(this, siteId);
+        Path file = siteFile(siteId);
+        if(Files.exists(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                repository.load(in);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Unable to read site " + siteId, ioe);
+            }
+        }
+        return repository;
+    }
+
+    /**
+     * Writes every site with pending changes now.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            List<SiteRepositoryImpl> failed = new ArrayList<>();
+            SiteRepositoryImpl repository;
+            while((repository = dirtySites.poll()) != null) {
+                dirtyCount.decrementAndGet();
+                try {
+                    byte[] snapshot = repository.takeSnapshot();
+                    if(snapshot == null) {
+                        continue;
+                    }
+                    write(repository.getSiteId(), snapshot);
+                    writeCount.incrementAndGet();
+                } catch (IOException | UncheckedIOException e) {
+                    failureCount.incrementAndGet();
+                    failed.add(repository);
+                }
+            }
+            //queued again after the loop, so a failing site is tried once per flush rather than forever
+            failed.forEach(SiteRepositoryImpl::retryLater);
+        }
+    }
+
+    /**
+     * Writes a site's pending changes now and detaches its repository, which ignores any later
+     * change. Called when a site is closed, so the site can be opened again right away and a stale
+     * repository can't overwrite what the new one writes.
+     * @throws UncheckedIOException if the pending changes can't be written
+     */
+    public void release(SiteRepositoryImpl repository) {
+        synchronized (flushLock) {
+            byte[] snapshot = repository.close();
+            if(snapshot == null) {
+                return;
+            }
+            try {
+                write(repository.getSiteId(), snapshot);
+                writeCount.incrementAndGet();
+            } catch (IOException ioe) {
+                failureCount.incrementAndGet();
+                throw new UncheckedIOException("Unable to write site " + repository.getSiteId(), ioe);
+            }
+        }
+    }
+
+    public int getDirtyCount() {
+        return dirtyCount.get();
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Stops the writer and writes the remaining changes.
+     */
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        metricRegistrations.forEach(MetricRegistration::close);
+    }
+
+    void markDirty(SiteRepositoryImpl repository) {
+        dirtyCount.incrementAndGet();
+        dirtySites.add(repository);
+    }
+
+    private void write(String siteId, byte[] snapshot) throws IOException {
+        Path file = siteFile(siteId);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, snapshot);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path siteFile(String siteId) {
+        return directory.resolve(siteId + SITE_FILE_SUFFIX);
+    }
+}
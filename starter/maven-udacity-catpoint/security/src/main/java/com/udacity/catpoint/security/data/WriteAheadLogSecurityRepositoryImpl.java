@@ -0,0 +1,405 @@
+package com.udacity.catpoint.security.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Repository implementation that appends every change to a checksummed binary log instead of
+ * rewriting the whole sensor set. Each write costs a single small append, no matter how many
+ * sensors are stored. The log is periodically compacted into a snapshot file, and on startup
+ * the snapshot is loaded and the remaining log entries are replayed on top of it.
+ *
+ * A log entry is laid out as {@code [int length][byte type][payload][int crc32]}. Sensor entries
+ * end with the sensor's name and zone. A torn or corrupt entry at the tail of the log (for example
+ * after a crash mid-write) is discarded during replay and the log is truncated back to the last
+ * good entry.
+ */
+public class WriteAheadLogSecurityRepositoryImpl implements SecurityRepository, Closeable {
+
+    //entry types
+    private static final byte SENSOR_UPSERT = 1;
+    private static final byte SENSOR_REMOVE = 2;
+    private static final byte ALARM_STATUS = 3;
+    private static final byte ARMING_STATUS = 4;
+
+    private static final String LOG_FILE = "catpoint.log";
+    private static final String SNAPSHOT_FILE = "catpoint.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0xCA7B0117;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    //type + two longs + type ordinal + active flag + name length + the name + zone length + the zone
+    private static final int MAX_NAME_BYTES = 0xFFFF;
+    private static final int MAX_ENTRY_SIZE = 1 + 16 + 1 + 1 + 2 + MAX_NAME_BYTES + 2 + MAX_NAME_BYTES;
+    public static final int DEFAULT_COMPACTION_THRESHOLD = 10_000;
+
+    //sensors as rows of primitive columns; Sensor objects are only built when asked for
+    private final SensorIndex sensors = new SensorIndex();
+    private AlarmStatus alarmStatus = AlarmStatus.NO_ALARM;
+    private ArmingStatus armingStatus = ArmingStatus.DISARMED;
+
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final int compactionThreshold;
+    private final boolean syncOnWrite;
+    private final ByteBuffer entryBuffer = ByteBuffer.allocate(4 + MAX_ENTRY_SIZE + 4);
+    private final CRC32 crc = new CRC32();
+    private FileChannel log;
+    private int entriesSinceSnapshot;
+    //while a batch is open, syncing the log waits for the commit
+    private int batchDepth;
+    private boolean unsyncedEntries;
+
+    public WriteAheadLogSecurityRepositoryImpl() {
+        this(Paths.get(System.getProperty("user.home"), ".catpoint"));
+    }
+
+    public WriteAheadLogSecurityRepositoryImpl(Path directory) {
+        this(directory, DEFAULT_COMPACTION_THRESHOLD, false);
+    }
+
+    /**
+     * @param directory Directory holding the log and snapshot files. Created if missing.
+     * @param compactionThreshold Number of log entries after which the log is compacted into a snapshot
+     * @param syncOnWrite If true, every append is forced to the storage device before returning
+     */
+    public WriteAheadLogSecurityRepositoryImpl(Path directory, int compactionThreshold, boolean syncOnWrite) {
+        if(compactionThreshold < 1) {
+            throw new IllegalArgumentException("compactionThreshold must be positive");
+        }
+        this.logFile = directory.resolve(LOG_FILE);
+        this.snapshotFile = directory.resolve(SNAPSHOT_FILE);
+        this.compactionThreshold = compactionThreshold;
+        this.syncOnWrite = syncOnWrite;
+        try {
+            Files.createDirectories(directory);
+            loadSnapshot();
+            log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replayLog();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to open repository in " + directory, ioe);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the sensor's name or zone is null or too long to store;
+     * the sensor is not added in that case
+     */
+    @Override
+    public synchronized void addSensor(Sensor sensor) {
+        upsertSensor(sensor);
+    }
+
+    @Override
+    public synchronized void removeSensor(Sensor sensor) {
+        sensors.remove(sensor.getSensorId());
+        beginEntry(SENSOR_REMOVE);
+        entryBuffer.putLong(sensor.getSensorId().getMostSignificantBits());
+        entryBuffer.putLong(sensor.getSensorId().getLeastSignificantBits());
+        appendEntry();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the sensor's name or zone is null or too long to store;
+     * the stored sensor is left unchanged in that case
+     */
+    @Override
+    public synchronized void updateSensor(Sensor sensor) {
+        upsertSensor(sensor);
+    }
+
+    @Override
+    public synchronized void setAlarmStatus(AlarmStatus alarmStatus) {
+        this.alarmStatus = alarmStatus;
+        beginEntry(ALARM_STATUS);
+        entryBuffer.put((byte) alarmStatus.ordinal());
+        appendEntry();
+    }
+
+    @Override
+    public synchronized void setArmingStatus(ArmingStatus armingStatus) {
+        this.armingStatus = armingStatus;
+        beginEntry(ARMING_STATUS);
+        entryBuffer.put((byte) armingStatus.ordinal());
+        appendEntry();
+    }
+
+    /**
+     * Builds the sensor set from the index. Each call returns fresh {@link Sensor} instances;
+     * changes to them are only stored once passed back to {@link #updateSensor}.
+     */
+    @Override
+    public synchronized Set<Sensor> getSensors() {
+        return new HashSet<>(sensors.asSet());
+    }
+
+    @Override
+    public synchronized AlarmStatus getAlarmStatus() {
+        return alarmStatus;
+    }
+
+    @Override
+    public synchronized ArmingStatus getArmingStatus() {
+        return armingStatus;
+    }
+
+    /**
+     * Writes the current state into a new snapshot and empties the log. Called automatically
+     * once the log holds {@code compactionThreshold} entries.
+     */
+    public synchronized void compact() {
+        try {
+            writeSnapshot();
+            log.truncate(0);
+            log.position(0);
+            log.force(true);
+            entriesSinceSnapshot = 0;
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to compact repository log", ioe);
+        }
+    }
+
+    /**
+     * Entries are still appended one by one, but with syncOnWrite the log is forced to the storage
+     * device once at the commit instead of after every entry.
+     */
+    @Override
+    public synchronized void beginBatch() {
+        batchDepth++;
+    }
+
+    @Override
+    public synchronized void commitBatch() {
+        if(batchDepth > 0 && --batchDepth == 0 && unsyncedEntries) {
+            unsyncedEntries = false;
+            try {
+                log.force(false);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Unable to sync repository log", ioe);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(log.isOpen()) {
+            log.force(true);
+            log.close();
+        }
+    }
+
+    /**
+     * Replaces any stored sensor with the same id, overwriting its row in place.
+     */
+    private void putSensor(Sensor sensor) {
+        sensors.put(sensor);
+    }
+
+    private void upsertSensor(Sensor sensor) {
+        //encoded first, so a sensor that can't be stored doesn't reach the index either
+        byte[] name = encodeName(sensor.getName());
+        byte[] zone = encodeName(sensor.getZone());
+        putSensor(sensor);
+        beginEntry(SENSOR_UPSERT);
+        entryBuffer.putLong(sensor.getSensorId().getMostSignificantBits());
+        entryBuffer.putLong(sensor.getSensorId().getLeastSignificantBits());
+        entryBuffer.put((byte) sensor.getSensorType().ordinal());
+        entryBuffer.put((byte) (Boolean.TRUE.equals(sensor.getActive()) ? 1 : 0));
+        entryBuffer.putShort((short) name.length);
+        entryBuffer.put(name);
+        entryBuffer.putShort((short) zone.length);
+        entryBuffer.put(zone);
+        appendEntry();
+    }
+
+    private void beginEntry(byte type) {
+        entryBuffer.clear();
+        entryBuffer.putInt(0); //length, filled in by appendEntry
+        entryBuffer.put(type);
+    }
+
+    private void appendEntry() {
+        int length = entryBuffer.position() - 4;
+        entryBuffer.putInt(0, length);
+        crc.reset();
+        crc.update(entryBuffer.array(), 4, length);
+        entryBuffer.putInt((int) crc.getValue());
+        entryBuffer.flip();
+        try {
+            while(entryBuffer.hasRemaining()) {
+                log.write(entryBuffer);
+            }
+            if(syncOnWrite) {
+                if(batchDepth > 0) {
+                    unsyncedEntries = true;
+                } else {
+                    log.force(false);
+                }
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Unable to append to repository log", ioe);
+        }
+        if(++entriesSinceSnapshot >= compactionThreshold) {
+            compact();
+        }
+    }
+
+    private void replayLog() throws IOException {
+        long validLength = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log.position(0)), 1 << 16));
+        byte[] entry = new byte[MAX_ENTRY_SIZE];
+        while(true) {
+            int length;
+            try {
+                length = in.readInt();
+                if(length < 1 || length > MAX_ENTRY_SIZE) {
+                    break;
+                }
+                in.readFully(entry, 0, length);
+                int expected = in.readInt();
+                crc.reset();
+                crc.update(entry, 0, length);
+                if((int) crc.getValue() != expected) {
+                    break;
+                }
+            } catch (EOFException eof) {
+                break;
+            }
+            applyEntry(ByteBuffer.wrap(entry, 0, length));
+            validLength += 4 + length + 4;
+            entriesSinceSnapshot++;
+        }
+        //drop anything after the last complete entry so new appends follow good data
+        if(log.size() > validLength) {
+            log.truncate(validLength);
+        }
+        log.position(validLength);
+    }
+
+    private void applyEntry(ByteBuffer entry) {
+        byte type = entry.get();
+        switch(type) {
+            case SENSOR_UPSERT:
+                putSensor(readSensor(entry));
+                break;
+            case SENSOR_REMOVE:
+                sensors.remove(new UUID(entry.getLong(), entry.getLong()));
+                break;
+            case ALARM_STATUS:
+                alarmStatus = AlarmStatus.values()[entry.get()];
+                break;
+            case ARMING_STATUS:
+                armingStatus = ArmingStatus.values()[entry.get()];
+                break;
+            default:
+                throw new IllegalStateException("Unknown log entry type " + type);
+        }
+    }
+
+    private static Sensor readSensor(ByteBuffer entry) {
+        UUID id = new UUID(entry.getLong(), entry.getLong());
+        SensorType type = SensorType.values()[entry.get()];
+        boolean active = entry.get() != 0;
+        String name = readString(entry);
+        String zone = readString(entry);
+        Sensor sensor = new Sensor(name, type, zone);
+        sensor.setSensorId(id);
+        sensor.setActive(active);
+        return sensor;
+    }
+
+    private static String readString(ByteBuffer entry) {
+        byte[] bytes = new byte[entry.getShort() & 0xFFFF];
+        entry.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void writeSnapshot() throws IOException {
+        Path tmp = snapshotFile.resolveSibling(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            CRC32 snapshotCrc = new CRC32();
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            ByteBuffer record = ByteBuffer.allocate(MAX_ENTRY_SIZE);
+            writeSnapshotRecord(out, snapshotCrc, record.clear().put((byte) alarmStatus.ordinal()).put((byte) armingStatus.ordinal()).putInt(sensors.size()));
+            for(Sensor sensor : sensors.asSet()) {
+                byte[] name = encodeName(sensor.getName());
+                byte[] zone = encodeName(sensor.getZone());
+                record.clear()
+                        .putLong(sensor.getSensorId().getMostSignificantBits())
+                        .putLong(sensor.getSensorId().getLeastSignificantBits())
+                        .put((byte) sensor.getSensorType().ordinal())
+                        .put((byte) (Boolean.TRUE.equals(sensor.getActive()) ? 1 : 0))
+                        .putShort((short) name.length)
+                        .put(name)
+                        .putShort((short) zone.length)
+                        .put(zone);
+                writeSnapshotRecord(out, snapshotCrc, record);
+            }
+            out.writeInt((int) snapshotCrc.getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeSnapshotRecord(DataOutputStream out, CRC32 snapshotCrc, ByteBuffer record) throws IOException {
+        snapshotCrc.update(record.array(), 0, record.position());
+        out.write(record.array(), 0, record.position());
+    }
+
+    private void loadSnapshot() throws IOException {
+        if(!Files.exists(snapshotFile)) {
+            return;
+        }
+        ByteBuffer snapshot = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if(snapshot.remaining() < 16 || snapshot.getInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Unrecognized snapshot file " + snapshotFile);
+        }
+        int version = snapshot.getInt();
+        if(version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + version + " in " + snapshotFile);
+        }
+        CRC32 snapshotCrc = new CRC32();
+        snapshotCrc.update(snapshot.array(), 8, snapshot.limit() - 12);
+        if((int) snapshotCrc.getValue() != snapshot.getInt(snapshot.limit() - 4)) {
+            throw new IOException("Snapshot checksum mismatch in " + snapshotFile);
+        }
+        alarmStatus = AlarmStatus.values()[snapshot.get()];
+        armingStatus = ArmingStatus.values()[snapshot.get()];
+        int count = snapshot.getInt();
+        for(int i = 0; i < count; i++) {
+            putSensor(readSensor(snapshot));
+        }
+    }
+
+    private static byte[] encodeName(String name) {
+        if(name == null) {
+            throw new IllegalArgumentException("Sensor name and zone must not be null");
+        }
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > MAX_NAME_BYTES) {
+            throw new IllegalArgumentException("Sensor name or zone is too long to store");
+        }
+        return bytes;
+    }
+}
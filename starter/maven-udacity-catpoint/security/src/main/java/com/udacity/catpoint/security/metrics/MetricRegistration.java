@@ -0,0 +1,30 @@
+package com.udacity.catpoint.security.metrics;
+
+import java.util.Map;
+
+/**
+ * A metric registered with a supplier, as returned by the registry. Components close their
+ * registrations when they are closed themselves, so the registry neither keeps them reachable nor
+ * goes on reporting their last values.
+ */
+public final class MetricRegistration implements AutoCloseable {
+
+    private final Map<String, Object> series;
+    private final String labels;
+    private final Object value;
+
+    MetricRegistration(Map<String, Object> series, String labels, Object value) {
+        this.series = series;
+        this.labels = labels;
+        this.value = value;
+    }
+
+    /**
+     * Removes the metric, unless it was replaced by a later registration under the same name and
+     * labels, which then stays.
+     */
+    @Override
+    public void close() {
+        series.remove(labels, value);
+    }
+}
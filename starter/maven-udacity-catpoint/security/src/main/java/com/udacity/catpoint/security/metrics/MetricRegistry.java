@@ -0,0 +1,183 @@
+package com.udacity.catpoint.security.metrics;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Named metrics of the application. A metric is identified by its name and labels; asking for one
+ * that already exists returns it, so components can look their metrics up once when they are
+ * created and then record into them without going through the registry again.
+ *
+ * Labels are given as alternating names and values, for example ("from", "NO_ALARM", "to", "ALARM").
+ * Durations are exported in seconds and counters get a _total suffix, as Prometheus expects.
+ */
+public class MetricRegistry {
+
+    private static final MetricRegistry GLOBAL = new MetricRegistry();
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private enum Type {
+        COUNTER("counter"), GAUGE("gauge"), SUMMARY("summary");
+
+        private final String text;
+
+        Type(String text) {
+            this.text = text;
+        }
+    }
+
+    private final ConcurrentMap<String, Family> families = new ConcurrentHashMap<>();
+
+    /**
+     * @return The registry the application's components record into
+     */
+    public static MetricRegistry global() {
+        return GLOBAL;
+    }
+
+    /**
+     * @param name Name without the _total suffix
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).series.computeIfAbsent(labels(labels), l -> new Counter());
+    }
+
+    /**
+     * Registers a counter kept elsewhere, for example by a component that already counts an event.
+     * Replaces a counter registered earlier under the same name and labels.
+     * @param name Name without the _total suffix
+     * @return Registration to close when the component keeping the counter goes away
+     */
+    public MetricRegistration counter(String name, String help, LongSupplier value, String... labels) {
+        return register(family(name, help, Type.COUNTER), labels(labels), value);
+    }
+
+    /**
+     * @param name Name without a unit; _seconds is appended on export
+     */
+    public LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name + "_seconds", help, Type.SUMMARY).series
+                .computeIfAbsent(labels(labels), l -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a value read when the metrics are exported, such as a queue length. Replaces a gauge
+     * registered earlier under the same name and labels.
+     * @return Registration to close when the component owning the value goes away
+     */
+    public MetricRegistration gauge(String name, String help, DoubleSupplier value, String... labels) {
+        return register(family(name, help, Type.GAUGE), labels(labels), value);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format, version 0.0.4.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        for(Family family : new TreeMap<>(families).values()) {
+            Map<String, Object> series = new TreeMap<>(family.series);
+            String name = family.type == Type.COUNTER ? family.name + "_total" : family.name;
+            header(out, name, family.help, family.type);
+            for(Map.Entry<String, Object> entry : series.entrySet()) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                if(metric instanceof Counter) {
+                    sample(out, name, labels, ((Counter) metric).get());
+                } else if(metric instanceof LongSupplier) {
+                    sample(out, name, labels, ((LongSupplier) metric).getAsLong());
+                } else if(metric instanceof DoubleSupplier) {
+                    sample(out, name, labels, format(((DoubleSupplier) metric).getAsDouble()));
+                } else {
+                    LatencyHistogram.Snapshot snapshot = ((LatencyHistogram) metric).snapshot();
+                    for(double quantile : QUANTILES) {
+                        sample(out, name, withLabel(labels, "quantile", Double.toString(quantile)),
+                                seconds(snapshot.valueAtQuantile(quantile)));
+                    }
+                    sample(out, name + "_sum", labels, seconds(snapshot.getSumNanos()));
+                    sample(out, name + "_count", labels, snapshot.getCount());
+                }
+            }
+            if(family.type == Type.SUMMARY) {
+                //the maximum isn't part of a summary, so it is a gauge of its own
+                header(out, name + "_max", family.help + " (maximum)", Type.GAUGE);
+                for(Map.Entry<String, Object> entry : series.entrySet()) {
+                    sample(out, name + "_max", entry.getKey(), seconds(((LatencyHistogram) entry.getValue()).snapshot().getMaxNanos()));
+                }
+            }
+        }
+    }
+
+    private Family family(String name, String help, Type type) {
+        Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+        if(family.type != type) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type.text);
+        }
+        return family;
+    }
+
+    private static MetricRegistration register(Family family, String labels, Object value) {
+        family.series.put(labels, value);
+        return new MetricRegistration(family.series, labels, value);
+    }
+
+    private static void header(Appendable out, String name, String help, Type type) throws IOException {
+        out.append("# HELP ").append(name).append(' ').append(help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type.text).append('\n');
+    }
+
+    private static void sample(Appendable out, String name, String labels, Object value) throws IOException {
+        out.append(name).append(labels.isEmpty() ? "" : "{" + labels + "}").append(' ').append(String.valueOf(value)).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / NANOS_PER_SECOND);
+    }
+
+    private static String format(double value) {
+        if(Double.isNaN(value)) {
+            return "NaN";
+        }
+        if(Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * @return The labels rendered as they appear between the braces, e.g. from="NO_ALARM",to="ALARM"
+     */
+    private static String labels(String... labels) {
+        if(labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name and value pairs");
+        }
+        String rendered = "";
+        for(int i = 0; i < labels.length; i += 2) {
+            rendered = withLabel(rendered, labels[i], labels[i + 1]);
+        }
+        return rendered;
+    }
+
+    private static String withLabel(String labels, String name, String value) {
+        String escaped = value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+        return (labels.isEmpty() ? "" : labels + ",") + name + "=\"" + escaped + "\"";
+    }
+
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        //rendered labels to Counter, LatencyHistogram, LongSupplier or DoubleSupplier
+        private final ConcurrentMap<String, Object> series = new ConcurrentHashMap<>();
+
+        private Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
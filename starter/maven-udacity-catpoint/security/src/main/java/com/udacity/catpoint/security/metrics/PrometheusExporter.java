@@ -0,0 +1,96 @@
+package com.udacity.catpoint.security.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports a registry's metrics in the Prometheus text format, either on request, for example from
+ * an HTTP endpoint, or by rewriting a file at a fixed interval for node_exporter's textfile
+ * collector to pick up.
+ */
+public class PrometheusExporter implements AutoCloseable {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final MetricRegistry registry;
+    private final ThreadFactory threadFactory;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Creates an exporter whose file export runs on a daemon platform thread.
+     */
+    public PrometheusExporter(MetricRegistry registry) {
+        this(registry, task -> {
+            Thread thread = new Thread(task, "metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param threadFactory Creates the thread that rewrites the file, see startFileExport
+     */
+    public PrometheusExporter(MetricRegistry registry, ThreadFactory threadFactory) {
+        this.registry = registry;
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * @return The current value of every metric
+     */
+    public String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        try {
+            registry.writePrometheus(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); //a StringBuilder doesn't throw
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes the metrics to a file. The file is replaced in one step, so a reader never sees it
+     * half-written.
+     */
+    public void writeTo(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            registry.writePrometheus(writer);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Rewrites the file every period until the exporter is closed. A failed write is retried at the
+     * next period.
+     */
+    public synchronized void startFileExport(Path file, long period, TimeUnit unit) {
+        if(scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        }
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                writeTo(file);
+            } catch (IOException e) {
+                //the next run tries again
+            }
+        }, 0, period, unit);
+    }
+
+    @Override
+    public synchronized void close() {
+        if(scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.SensorType;
+
+/**
+ * The security service's metrics. Every counter is looked up once, when this is created, and kept
+ * in an array indexed by enum ordinals, so recording an event is an array read and an increment.
+ */
+public final class SecurityMetrics {
+
+    private static final AlarmStatus[] ALARM_STATUSES = AlarmStatus.values();
+    private static final SensorType[] SENSOR_TYPES = SensorType.values();
+
+    private final LatencyHistogram processImage;
+    private final LatencyHistogram sensorChange;
+    //indexed by from.ordinal() * number of statuses + to.ordinal(); null where from == to
+    private final Counter[] alarmTransitions = new Counter[ALARM_STATUSES.length * ALARM_STATUSES.length];
+    private final Counter[] sensorEvents = new Counter[SENSOR_TYPES.length];
+
+    public SecurityMetrics(MetricRegistry registry) {
+        processImage = registry.histogram("catpoint_process_image",
+                "Time from submitting a camera image until the alarm status reflects its scan");
+        sensorChange = registry.histogram("catpoint_sensor_change",
+                "Time to apply a sensor activation change, including the repository write");
+        for(AlarmStatus from : ALARM_STATUSES) {
+            for(AlarmStatus to : ALARM_STATUSES) {
+                if(from != to) {
+                    alarmTransitions[from.ordinal() * ALARM_STATUSES.length + to.ordinal()] = registry.counter(
+                            "catpoint_alarm_transitions", "Alarm status changes", "from", from.name(), "to", to.name());
+                }
+            }
+        }
+        for(SensorType type : SENSOR_TYPES) {
+            sensorEvents[type.ordinal()] = registry.counter("catpoint_sensor_events",
+                    "Sensor activation changes received", "type", type.name());
+        }
+    }
+
+    public LatencyHistogram processImage() {
+        return processImage;
+    }
+
+    public LatencyHistogram sensorChange() {
+        return sensorChange;
+    }
+
+    public void alarmTransition(AlarmStatus from, AlarmStatus to) {
+        if(from != null && to != null && from != to) {
+            alarmTransitions[from.ordinal() * ALARM_STATUSES.length + to.ordinal()].increment();
+        }
+    }
+
+    public void sensorEvent(SensorType type) {
+        if(type != null) {
+            sensorEvents[type.ordinal()].increment();
+        }
+    }
+}
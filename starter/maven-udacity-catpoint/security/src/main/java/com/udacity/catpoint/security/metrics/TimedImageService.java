@@ -0,0 +1,35 @@
+package com.udacity.catpoint.security.metrics;
+
+import com.udacity.catpoint.image.service.ImageService;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * Image service that records how long each scan of the wrapped service takes, labelled with the
+ * wrapped service's class, such as AwsImageService. Failed scans are recorded too.
+ */
+public class TimedImageService implements ImageService {
+
+    private final ImageService delegate;
+    private final LatencyHistogram scans;
+
+    public TimedImageService(ImageService delegate, MetricRegistry registry) {
+        this.delegate = delegate;
+        this.scans = registry.histogram("catpoint_image_scan", "Time the image service takes to scan one image",
+                "service", delegate.getClass().getSimpleName());
+    }
+
+    @Override
+    public boolean imageContainsCat(BufferedImage image, float confidenceThreshhold) {
+        long start = System.nanoTime();
+        try {
+            return delegate.imageContainsCat(image, confidenceThreshhold);
+        } finally {
+            scans.recordSince(start);
+        }
+    }
+
+    public ImageService getDelegate() {
+        return delegate;
+    }
+}
@@ -0,0 +1,540 @@
+package com.udacity.catpoint.security.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.udacity.catpoint.image.service.CachingImageService;
+import com.udacity.catpoint.image.service.ImageService;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.EventHistoryStore;
+import com.udacity.catpoint.security.data.HistoryEvent;
+import com.udacity.catpoint.security.data.HistoryQuery;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.metrics.MetricRegistration;
+import com.udacity.catpoint.security.metrics.MetricRegistry;
+import com.udacity.catpoint.security.metrics.PrometheusExporter;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SensorDebouncer;
+import com.udacity.catpoint.security.service.StartupReport;
+import com.udacity.catpoint.security.service.WorkerThreads;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the security system without a user interface. The service is controlled and observed over
+ * a small local HTTP interface instead of the Swing window, so nothing from Swing or MigLayout is
+ * loaded and the process starts in a fraction of the time the GUI needs.
+ *
+ * Parameters are passed in the query string or as a form-encoded request body. Responses are JSON.
+ *
+ * GET    /metrics                        every metric in the Prometheus text format
+ * GET    /status                         arming, alarm and cat status, alarm status per zone, and the sensors
+ * POST   /arming?status=ARMED_HOME       changes the arming status
+ * GET    /sensors                        the sensors
+ * POST   /sensors?name=&type=DOOR&zone=  adds a sensor; zone is optional
+ * POST   /sensors/{id}?active=true       activates or deactivates a sensor; with debouncing on, the change is
+ *                                        accepted with 202 and applied once it has lasted its hold time
+ * DELETE /sensors/{id}                   removes a sensor
+ * GET    /history?from=&to=&type=&sensor=&alarm=&limit=
+ *                                        recorded events, oldest first; from and to are epoch milliseconds,
+ *                                        by default the last hour; type is a HistoryEvent.Type, alarm an
+ *                                        AlarmStatus the alarm changed to; limit defaults to 1000
+ * POST   /camera?camera=default          scans the picture in the request body and returns whether it shows a cat;
+ *                                        cameras other than the default one must be registered with the service
+ *
+ * Requests are handled on virtual threads where the JVM has them, see {@link WorkerThreads}.
+ */
+public class CatpointServer implements AutoCloseable {
+
+    private static final long SCAN_TIMEOUT_SECONDS = 30;
+    //running requests still going after this long are interrupted on close
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5;
+
+    private final SecurityService securityService;
+    private final HttpServer httpServer;
+    private final ExecutorService executor = Executors.newCachedThreadPool(WorkerThreads.factory("http-"));
+    private final PrometheusExporter metricsExporter = new PrometheusExporter(MetricRegistry.global());
+    private volatile SensorDebouncer sensorDebouncer;
+    private volatile SecurityRepository repository;
+    private final List<MetricRegistration> metricRegistrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates the server, bound but not yet accepting requests.
+     * @throws IOException if the address can't be bound
+     */
+    public CatpointServer(SecurityService securityService, String host, int port) throws IOException {
+        this.securityService = securityService;
+        httpServer = HttpServer.create(new InetSocketAddress(host, port), 0);
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/status", handler(this::status));
+        httpServer.createContext("/arming", handler(this::arming));
+        httpServer.createContext("/sensors", handler(this::sensors));
+        httpServer.createContext("/camera", handler(this::camera));
+        httpServer.createContext("/metrics", handler(this::metrics));
+        httpServer.createContext("/history", handler(this::history));
+    }
+
+    public static void main(String[] args) throws IOException {
+        StartupReport report = new StartupReport();
+        ServerConfig config = ServerConfig.load();
+        ImageService imageService = report.time("image service", config::createImageService);
+        SecurityRepository repository = report.time("repository", config::createRepository);
+        SecurityService securityService = report.time("security service", () -> {
+            SecurityService service = new SecurityService(repository, imageService);
+            service.setEventHistory(config.createEventHistory());
+            service.getSensors();
+            return service;
+        });
+        CatpointServer server = new CatpointServer(securityService, config.getHost(), config.getPort());
+        server.setSensorDebouncer(config.createSensorDebouncer(securityService));
+        server.setRepository(repository);
+        if(imageService instanceof CachingImageService) {
+            server.registerImageCacheMetrics((CachingImageService) imageService);
+        }
+        if(config.getMetricsFile() != null) {
+            server.metricsExporter.startFileExport(config.getMetricsFile(), config.getMetricsPeriodMillis(), TimeUnit.MILLISECONDS);
+        }
+        server.start();
+        report.milestone("listening");
+        System.out.printf("Catpoint server listening on http://%s:%d (repository %s, image service %s)%n",
+                config.getHost(), server.getPort(), config.getRepositoryName(), config.getImageServiceName());
+        report.print();
+        if(StartupReport.exitAfterStartup()) {
+            System.exit(0);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close, "catpoint-server-shutdown"));
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * @return The port the server listens on, useful when it was started on port 0
+     */
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    public SecurityService getSecurityService() {
+        return securityService;
+    }
+
+    /**
+     * Passes sensor changes through the debouncer; null applies them directly.
+     */
+    public void setSensorDebouncer(SensorDebouncer sensorDebouncer) {
+        this.sensorDebouncer = sensorDebouncer;
+    }
+
+    /**
+     * Repository to close along with the server, if it is {@link Closeable}.
+     */
+    public void setRepository(SecurityRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Exports the statistics of an image cache until the server is closed.
+     */
+    public void registerImageCacheMetrics(CachingImageService cache) {
+        MetricRegistry registry = MetricRegistry.global();
+        metricRegistrations.add(registry.gauge("catpoint_image_cache_entries", "Scan results held by the image cache", cache::size));
+        metricRegistrations.add(registry.counter("catpoint_image_cache_lookups", "Image cache lookups", cache::getHitCount, "result", "hit"));
+        metricRegistrations.add(registry.counter("catpoint_image_cache_lookups", "Image cache lookups", cache::getMissCount, "result", "miss"));
+        metricRegistrations.add(registry.counter("catpoint_image_cache_evictions", "Scan results evicted from the image cache", cache::getEvictionCount));
+    }
+
+    /**
+     * Stops accepting requests and waits for running ones to finish, then closes the event history
+     * and the repository once nothing writes to them anymore.
+     */
+    @Override
+    public void close() {
+        httpServer.stop(1);
+        executor.shutdown();
+        try {
+            if(!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        metricsExporter.close();
+        metricRegistrations.forEach(MetricRegistration::close);
+        SensorDebouncer debouncer = sensorDebouncer;
+        if(debouncer != null) {
+            debouncer.close();
+        }
+        EventHistoryStore history = securityService.getEventHistory();
+        if(history != null) {
+            //detached first, so later changes to the service aren't recorded into a closed store
+            securityService.setEventHistory(null);
+            history.close();
+        }
+        SecurityRepository closing = repository;
+        if(closing instanceof Closeable) {
+            try {
+                ((Closeable) closing).close();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Unable to close repository", ioe);
+            }
+        }
+    }
+
+    private Response metrics(HttpExchange exchange, Map<String, String> params) {
+        if(!"GET".equals(exchange.getRequestMethod())) {
+            return Response.methodNotAllowed("GET");
+        }
+        return new Response(200, metricsExporter.scrape(), PrometheusExporter.CONTENT_TYPE);
+    }
+
+    private Response history(HttpExchange exchange, Map<String, String> params) {
+        if(!"GET".equals(exchange.getRequestMethod())) {
+            return Response.methodNotAllowed("GET");
+        }
+        EventHistoryStore history = securityService.getEventHistory();
+        if(history == null) {
+            return Response.notFound();
+        }
+        HistoryQuery query;
+        int limit;
+        try {
+            long to = params.containsKey("to") ? Long.parseLong(params.get("to")) * 1_000_000L : history.now() + 1;
+            long from = params.containsKey("from") ? Long.parseLong(params.get("from")) * 1_000_000L : to - TimeUnit.HOURS.toNanos(1);
+            limit = Integer.parseInt(params.getOrDefault("limit", "1000"));
+            query = HistoryQuery.between(from, to);
+        } catch (NumberFormatException e) {
+            return Response.badRequest("from, to and limit must be numbers");
+        }
+        if(params.containsKey("type")) {
+            HistoryEvent.Type type = parseEnum(HistoryEvent.Type.class, params.get("type"));
+            if(type == null) {
+                return Response.badRequest("unknown event type");
+            }
+            query = query.type(type);
+        }
+        if(params.containsKey("alarm")) {
+            AlarmStatus alarmStatus = parseEnum(AlarmStatus.class, params.get("alarm"));
+            if(alarmStatus == null) {
+                return Response.badRequest("unknown alarm status");
+            }
+            query = query.alarmStatus(alarmStatus);
+        }
+        if(params.containsKey("sensor")) {
+            try {
+                query = query.sensor(UUID.fromString(params.get("sensor")));
+            } catch (IllegalArgumentException e) {
+                return Response.badRequest("sensor must be a sensor id");
+            }
+        }
+        JsonArray events = new JsonArray();
+        for(HistoryEvent event : history.find(query, limit)) {
+            JsonObject json = new JsonObject();
+            json.addProperty("timestampNanos", event.getTimestampNanos());
+            json.addProperty("type", event.getType().name());
+            switch(event.getType()) {
+                case ALARM_CHANGED:
+                    json.addProperty("from", event.getPreviousAlarmStatus().name());
+                    json.addProperty("to", event.getAlarmStatus().name());
+                    break;
+                case ARMING_CHANGED:
+                    json.addProperty("from", event.getPreviousArmingStatus().name());
+                    json.addProperty("to", event.getArmingStatus().name());
+                    break;
+                case CAT_VERDICT:
+                    json.addProperty("catDetected", event.isCatDetected());
+                    break;
+                default:
+                    json.addProperty("sensor", event.getSensorId().toString());
+            }
+            events.add(json);
+        }
+        return Response.ok(events);
+    }
+
+    private Response status(HttpExchange exchange, Map<String, String> params) {
+        if(!"GET".equals(exchange.getRequestMethod())) {
+            return Response.methodNotAllowed("GET");
+        }
+        return Response.ok(statusJson());
+    }
+
+    private JsonObject statusJson() {
+        JsonObject status = new JsonObject();
+        status.addProperty("armingStatus", securityService.getArmingStatus().name());
+        status.addProperty("alarmStatus", securityService.getAlarmStatus().name());
+        status.addProperty("catDetected", securityService.getCatStatus());
+        JsonObject zones = new JsonObject();
+        securityService.getZoneAlarmStatuses().forEach((zone, alarmStatus) -> zones.addProperty(zone, alarmStatus.name()));
+        status.add("zones", zones);
+        status.add("sensors", sensorsJson());
+        return status;
+    }
+
+    private Response arming(HttpExchange exchange, Map<String, String> params) {
+        if(!"POST".equals(exchange.getRequestMethod())) {
+            return Response.methodNotAllowed("POST");
+        }
+        ArmingStatus armingStatus = parseEnum(ArmingStatus.class, params.get("status"));
+        if(armingStatus == null) {
+            return Response.badRequest("status must be one of DISARMED, ARMED_HOME, ARMED_AWAY");
+        }
+        securityService.setArmingStatus(armingStatus);
+        return Response.ok(statusJson());
+    }
+
+    private Response sensors(HttpExchange exchange, Map<String, String> params) {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if(path.equals("/sensors") || path.equals("/sensors/")) {
+            if("GET".equals(method)) {
+                return Response.ok(sensorsJson());
+            }
+            if(!"POST".equals(method)) {
+                return Response.methodNotAllowed("GET, POST");
+            }
+            String name = params.get("name");
+            SensorType type = parseEnum(SensorType.class, params.get("type"));
+            if(name == null || name.isBlank() || type == null) {
+                return Response.badRequest("name and type are required");
+            }
+            Sensor sensor = new Sensor(name, type, params.getOrDefault("zone", Sensor.DEFAULT_ZONE));
+            securityService.addSensor(sensor);
+            return new Response(201, sensorJson(sensor));
+        }
+
+        Sensor sensor = findSensor(path.substring("/sensors/".length()));
+        if(sensor == null) {
+            return Response.notFound();
+        }
+        SensorDebouncer debouncer = sensorDebouncer;
+        if("DELETE".equals(method)) {
+            if(debouncer != null) {
+                debouncer.forget(sensor);
+            }
+            securityService.removeSensor(sensor);
+            return new Response(204, null);
+        }
+        if(!"POST".equals(method)) {
+            return Response.methodNotAllowed("POST, DELETE");
+        }
+        String active = params.get("active");
+        if(!"true".equals(active) && !"false".equals(active)) {
+            return Response.badRequest("active must be true or false");
+        }
+        if(debouncer != null) {
+            debouncer.submit(sensor, Boolean.parseBoolean(active));
+            return new Response(202, sensorJson(sensor));
+        }
+        securityService.changeSensorActivationStatus(sensor, Boolean.valueOf(active));
+        return Response.ok(sensorJson(sensor));
+    }
+
+    private Response camera(HttpExchange exchange, Map<String, String> params) throws IOException {
+        if(!"POST".equals(exchange.getRequestMethod())) {
+            return Response.methodNotAllowed("POST");
+        }
+        BufferedImage image;
+        try (InputStream body = exchange.getRequestBody()) {
+            image = ImageIO.read(body);
+        }
+        if(image == null) {
+            return Response.badRequest("request body is not a readable picture");
+        }
+        String cameraId = params.getOrDefault("camera", SecurityService.DEFAULT_CAMERA_ID);
+        CompletableFuture<Boolean> scan;
+        try {
+            scan = securityService.submitFrame(cameraId, image);
+        } catch (IllegalArgumentException e) {
+            return Response.notFound();
+        }
+        try {
+            boolean cat = scan.get(SCAN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            JsonObject result = new JsonObject();
+            result.addProperty("catDetected", cat);
+            return Response.ok(result);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Response(503, error("interrupted"));
+        } catch (CancellationException e) {
+            return new Response(503, error("frame dropped, the image service is busy"));
+        } catch (ExecutionException | TimeoutException e) {
+            return new Response(502, error("image scan failed: " + e));
+        }
+    }
+
+    private JsonArray sensorsJson() {
+        JsonArray sensors = new JsonArray();
+        securityService.getSensors().forEach(sensor -> sensors.add(sensorJson(sensor)));
+        return sensors;
+    }
+
+    private static JsonObject sensorJson(Sensor sensor) {
+        JsonObject json = new JsonObject();
+        json.addProperty("id", sensor.getSensorId().toString());
+        json.addProperty("name", sensor.getName());
+        json.addProperty("type", sensor.getSensorType().name());
+        json.addProperty("zone", sensor.getZone());
+        json.addProperty("active", Boolean.TRUE.equals(sensor.getActive()));
+        return json;
+    }
+
+    private Sensor findSensor(String id) {
+        UUID sensorId;
+        try {
+            sensorId = UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        for(Sensor sensor : securityService.getSensors()) {
+            if(sensor.getSensorId().equals(sensorId)) {
+                return sensor;
+            }
+        }
+        return null;
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        if(value == null) {
+            return null;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static JsonObject error(String message) {
+        JsonObject json = new JsonObject();
+        json.addProperty("error", message);
+        return json;
+    }
+
+    /**
+     * Wraps a route in parameter parsing, JSON encoding and error handling.
+     */
+    private static HttpHandler handler(Route route) {
+        return exchange -> {
+            Response response;
+            try {
+                response = route.handle(exchange, parameters(exchange));
+            } catch (RuntimeException e) {
+                response = new Response(500, error(e.toString()));
+            }
+            try (exchange) {
+                if(response.allow != null) {
+                    exchange.getResponseHeaders().set("Allow", response.allow);
+                }
+                if(response.body == null) {
+                    exchange.sendResponseHeaders(response.code, -1);
+                    return;
+                }
+                byte[] bytes = response.body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", response.contentType);
+                exchange.sendResponseHeaders(response.code, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return Query parameters, plus the body's parameters if it is form-encoded
+     */
+    private static Map<String, String> parameters(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if(contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+            try (InputStream body = exchange.getRequestBody()) {
+                parseForm(new String(body.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseForm(String form, Map<String, String> params) {
+        if(form == null || form.isEmpty()) {
+            return;
+        }
+        for(String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    @FunctionalInterface
+    private interface Route {
+        Response handle(HttpExchange exchange, Map<String, String> params) throws IOException;
+    }
+
+    private static class Response {
+        private static final String JSON = "application/json; charset=utf-8";
+
+        private final int code;
+        private final String body;
+        private final String contentType;
+        private String allow;
+
+        private Response(int code, JsonElement body) {
+            this(code, body == null ? null : body.toString(), JSON);
+        }
+
+        private Response(int code, String body, String contentType) {
+            this.code = code;
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        private static Response ok(JsonElement body) {
+            return new Response(200, body);
+        }
+
+        private static Response badRequest(String message) {
+            return new Response(400, error(message));
+        }
+
+        private static Response notFound() {
+            return new Response(404, error("not found"));
+        }
+
+        private static Response methodNotAllowed(String allow) {
+            Response response = new Response(405, error("method not allowed"));
+            response.allow = allow;
+            return response;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.udacity.catpoint.security.server;
+
+import com.udacity.catpoint.image.service.AsyncAwsImageService;
+import com.udacity.catpoint.image.service.AwsImageService;
+import com.udacity.catpoint.image.service.CachingImageService;
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.LocalCatClassifierImageService;
+import com.udacity.catpoint.security.data.EventHistoryStore;
+import com.udacity.catpoint.security.data.MappedSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.PretendDatabaseSecurityRepositoryImpl;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.data.WriteAheadLogSecurityRepositoryImpl;
+import com.udacity.catpoint.security.service.SecurityService;
+import com.udacity.catpoint.security.service.SensorDebouncer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Settings of the headless server. Read from the properties file named by the catpoint.config
+ * system property, or catpoint-server.properties in the working directory if it exists; system
+ * properties with the same keys override the file.
+ *
+ * Keys:
+ * catpoint.server.host - address to listen on, default 127.0.0.1 so only local clients can connect
+ * catpoint.server.port - port to listen on, default 8080; 0 picks a free port
+ * catpoint.repository - pretend (the default), wal or mapped
+ * catpoint.repository.dir - directory of the wal and mapped repositories, default ~/.catpoint
+ * catpoint.imageService - fake (the default), local, aws or async-aws
+ * catpoint.imageService.model - model file of the local classifier; required when local is selected
+ * catpoint.imageService.cache - true to put a CachingImageService in front of the image service
+ * catpoint.imageService.fallback - cat (the default), fake or local; answers async-aws scans the remote can't
+ * catpoint.debounce - true to pass sensor changes through a SensorDebouncer
+ * catpoint.debounce.DOOR.ms, .WINDOW.ms, .MOTION.ms - hold time per sensor type
+ * catpoint.debounce.rate, catpoint.debounce.burst - sensor changes per second and burst size; rate 0 turns the limit off
+ * catpoint.history.dir - directory of the event history; no history is recorded if unset
+ * catpoint.metrics.file - file the metrics are written to in the Prometheus text format, if set
+ * catpoint.metrics.period.ms - how often the metrics file is rewritten, default 15000
+ *
+ * Implementations are only loaded when selected, so the AWS client isn't touched unless asked for.
+ */
+public class ServerConfig {
+
+    public static final String CONFIG_FILE_PROPERTY = "catpoint.config";
+    public static final String DEFAULT_CONFIG_FILE = "catpoint-server.properties";
+
+    public static final String HOST = "catpoint.server.host";
+    public static final String PORT = "catpoint.server.port";
+    public static final String REPOSITORY = "catpoint.repository";
+    public static final String REPOSITORY_DIR = "catpoint.repository.dir";
+    public static final String IMAGE_SERVICE = "catpoint.imageService";
+    public static final String IMAGE_SERVICE_MODEL = "catpoint.imageService.model";
+    public static final String IMAGE_SERVICE_CACHE = "catpoint.imageService.cache";
+    public static final String IMAGE_SERVICE_FALLBACK = "catpoint.imageService.fallback";
+    public static final String DEBOUNCE = "catpoint.debounce";
+    public static final String DEBOUNCE_RATE = "catpoint.debounce.rate";
+    public static final String DEBOUNCE_BURST = "catpoint.debounce.burst";
+    public static final String HISTORY_DIR = "catpoint.history.dir";
+    public static final String METRICS_FILE = "catpoint.metrics.file";
+    public static final String METRICS_PERIOD = "catpoint.metrics.period.ms";
+
+    private final Properties properties;
+
+    public ServerConfig(Properties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * @return The configuration file's settings, overridden by system properties
+     * @throws UncheckedIOException if a configuration file was named but can't be read
+     */
+    public static ServerConfig load() {
+        Properties properties = new Properties();
+        String configFile = System.getProperty(CONFIG_FILE_PROPERTY);
+        Path path = Paths.get(configFile != null ? configFile : DEFAULT_CONFIG_FILE);
+        if(configFile != null || Files.isRegularFile(path)) {
+            try (InputStream is = Files.newInputStream(path)) {
+                properties.load(is);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to read server configuration " + path, e);
+            }
+        }
+        System.getProperties().forEach((key, value) -> {
+            if(key.toString().startsWith("catpoint.")) {
+                properties.put(key, value);
+            }
+        });
+        return new ServerConfig(properties);
+    }
+
+    public String getHost() {
+        return properties.getProperty(HOST, "127.0.0.1");
+    }
+
+    public int getPort() {
+        return Integer.parseInt(properties.getProperty(PORT, "8080").trim());
+    }
+
+    public String getRepositoryName() {
+        return properties.getProperty(REPOSITORY, "pretend").trim();
+    }
+
+    public String getImageServiceName() {
+        return properties.getProperty(IMAGE_SERVICE, "fake").trim();
+    }
+
+    /**
+     * @return A debouncer passing changes to the service, or null if debouncing is off
+     */
+    public SensorDebouncer createSensorDebouncer(SecurityService securityService) {
+        if(!Boolean.parseBoolean(properties.getProperty(DEBOUNCE))) {
+            return null;
+        }
+        SensorDebouncer debouncer = new SensorDebouncer(securityService);
+        for(SensorType sensorType : SensorType.values()) {
+            String holdMillis = properties.getProperty(DEBOUNCE + "." + sensorType.name() + ".ms");
+            if(holdMillis != null) {
+                debouncer.setHoldTime(sensorType, Long.parseLong(holdMillis.trim()), TimeUnit.MILLISECONDS);
+            }
+        }
+        debouncer.setRateLimit(
+                Double.parseDouble(properties.getProperty(DEBOUNCE_RATE, String.valueOf(SensorDebouncer.DEFAULT_CHANGES_PER_SECOND)).trim()),
+                Integer.parseInt(properties.getProperty(DEBOUNCE_BURST, String.valueOf(SensorDebouncer.DEFAULT_BURST)).trim()));
+        return debouncer;
+    }
+
+    /**
+     * @return The event history, or null if none is configured
+     */
+    public EventHistoryStore createEventHistory() {
+        String dir = properties.getProperty(HISTORY_DIR);
+        return dir == null || dir.isBlank() ? null : new EventHistoryStore(Paths.get(dir.trim()));
+    }
+
+    /**
+     * @return File to export metrics to, or null to only serve them at /metrics
+     */
+    public Path getMetricsFile() {
+        String file = properties.getProperty(METRICS_FILE);
+        return file == null || file.isBlank() ? null : Paths.get(file.trim());
+    }
+
+    public long getMetricsPeriodMillis() {
+        return Long.parseLong(properties.getProperty(METRICS_PERIOD, "15000").trim());
+    }
+
+    /**
+     * @throws IllegalArgumentException if the configured repository is unknown
+     */
+    public SecurityRepository createRepository() {
+        String dir = properties.getProperty(REPOSITORY_DIR);
+        switch(getRepositoryName()) {
+            case "pretend":
+                return new PretendDatabaseSecurityRepositoryImpl();
+            case "wal":
+                return dir == null ? new WriteAheadLogSecurityRepositoryImpl() : new WriteAheadLogSecurityRepositoryImpl(Paths.get(dir));
+            case "mapped":
+                return dir == null ? new MappedSecurityRepositoryImpl() : new MappedSecurityRepositoryImpl(Paths.get(dir));
+            default:
+                throw new IllegalArgumentException("Unknown " + REPOSITORY + ": " + getRepositoryName());
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the configured image service is unknown
+     */
+    public ImageService createImageService() {
+        ImageService imageService;
+        switch(getImageServiceName()) {
+            case "fake":
+                imageService = new FakeImageService();
+                break;
+            case "local":
+                imageService = createLocalClassifier();
+                break;
+            case "aws":
+                imageService = new AwsImageService();
+                break;
+            case "async-aws":
+                imageService = new AsyncAwsImageService(createFallbackImageService());
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown " + IMAGE_SERVICE + ": " + getImageServiceName());
+        }
+        if(Boolean.parseBoolean(properties.getProperty(IMAGE_SERVICE_CACHE))) {
+            imageService = new CachingImageService(imageService);
+        }
+        return imageService;
+    }
+
+    /**
+     * The fallback defaults to failing closed: a frame the remote can't answer counts as showing a
+     * cat, so an outage never hides one from an armed system.
+     * @throws IllegalArgumentException if the configured fallback is unknown
+     */
+    private ImageService createFallbackImageService() {
+        String name = properties.getProperty(IMAGE_SERVICE_FALLBACK, "cat").trim();
+        switch(name) {
+            case "cat":
+                return (image, confidenceThreshhold) -> true;
+            case "local":
+                return createLocalClassifier();
+            case "fake":
+                return new FakeImageService();
+            default:
+                throw new IllegalArgumentException("Unknown " + IMAGE_SERVICE_FALLBACK + ": " + name);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if no model file is configured
+     * @throws UncheckedIOException if the model file can't be read
+     */
+    private ImageService createLocalClassifier() {
+        String model = properties.getProperty(IMAGE_SERVICE_MODEL);
+        if(model == null || model.isBlank()) {
+            throw new IllegalArgumentException("The local image service needs a model file in " + IMAGE_SERVICE_MODEL);
+        }
+        Path path = Paths.get(model.trim());
+        try {
+            return new LocalCatClassifierImageService(Files.newInputStream(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read image model " + path, e);
+        }
+    }
+}
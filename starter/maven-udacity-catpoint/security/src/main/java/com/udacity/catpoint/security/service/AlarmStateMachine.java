@@ -0,0 +1,221 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The arming and alarm state of the system, packed into one long and changed only by compare-and-set,
+ * so events from any number of threads are applied one after another without locks and none is lost.
+ *
+ * Layout of the packed state, from the lowest bit:
+ *      bits 0-1   arming status ordinal
+ *      bits 2-3   alarm status ordinal
+ *      bit  4     a camera currently sees a cat
+ *      bits 5-31  number of active sensors
+ *      bits 32-62 version, increased by every change
+ * The sign bit is never set, so a negative value can signal a rejected event.
+ *
+ * The alarm status an event leads to is looked up in a table built once from {@link #nextAlarm}.
+ */
+final class AlarmStateMachine {
+
+    enum Event {
+        /** A sensor reported itself active. Ignored while disarmed. */
+        SENSOR_ACTIVATED,
+        /** A sensor reported itself inactive. Ignored while disarmed. */
+        SENSOR_DEACTIVATED,
+        /** A sensor was reset to inactive by an arming change. Never ignored. */
+        SENSOR_RESET,
+        CAT_DETECTED,
+        CAT_CLEARED,
+        DISARM,
+        ARM_HOME,
+        ARM_AWAY
+    }
+
+    static final long REJECTED = -1;
+
+    private static final int ARMING_SHIFT = 0;
+    private static final int ALARM_SHIFT = 2;
+    private static final int CAT_SHIFT = 4;
+    private static final int COUNT_SHIFT = 5;
+    private static final int VERSION_SHIFT = 32;
+    private static final long TWO_BITS = 0b11;
+    private static final long COUNT_MASK = (1L << (VERSION_SHIFT - COUNT_SHIFT)) - 1;
+    private static final long VERSION_MASK = (1L << 31) - 1;
+
+    private static final ArmingStatus[] ARMING = ArmingStatus.values();
+    private static final AlarmStatus[] ALARM = AlarmStatus.values();
+    private static final Event[] EVENTS = Event.values();
+
+    private static final byte NO_CHANGE = -1;
+    private static final byte REJECT = -2;
+
+    //next alarm ordinal, NO_CHANGE or REJECT, indexed by event, arming, alarm, cat and any-sensor-active
+    private static final byte[] TRANSITIONS = new byte[EVENTS.length * ARMING.length * ALARM.length * 2 * 2];
+
+    static {
+        for(Event event : EVENTS) {
+            for(ArmingStatus arming : ARMING) {
+                for(AlarmStatus alarm : ALARM) {
+                    for(int cat = 0; cat < 2; cat++) {
+                        for(int anyActive = 0; anyActive < 2; anyActive++) {
+                            TRANSITIONS[index(event.ordinal(), arming.ordinal(), alarm.ordinal(), cat, anyActive)] =
+                                    nextAlarm(event, arming, alarm, cat == 1, anyActive == 1);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private final AtomicLong state;
+
+    AlarmStateMachine(ArmingStatus arming, AlarmStatus alarm, boolean cat, int activeSensors) {
+        state = new AtomicLong(pack(arming.ordinal(), alarm.ordinal(), cat, activeSensors, 0));
+    }
+
+    /**
+     * The rules of the system. Arming events and the cat flag are applied by {@link #fire} itself;
+     * this only decides the alarm status. Sensor rules see the arming status from before the event,
+     * cat and sensor-count rules the values after it.
+     */
+    private static byte nextAlarm(Event event, ArmingStatus arming, AlarmStatus alarm, boolean cat, boolean anyActive) {
+        switch(event) {
+            case SENSOR_ACTIVATED:
+            case SENSOR_DEACTIVATED:
+            case SENSOR_RESET:
+                if(arming == ArmingStatus.DISARMED) {
+                    return event == Event.SENSOR_RESET ? NO_CHANGE : REJECT;
+                }
+                if(alarm == AlarmStatus.ALARM) {
+                    //an alarm can only be wound down from away mode
+                    return arming == ArmingStatus.ARMED_AWAY ? ordinal(AlarmStatus.PENDING_ALARM) : NO_CHANGE;
+                }
+                if(event == Event.SENSOR_ACTIVATED) {
+                    return alarm == AlarmStatus.NO_ALARM ? ordinal(AlarmStatus.PENDING_ALARM) : ordinal(AlarmStatus.ALARM);
+                }
+                return alarm == AlarmStatus.PENDING_ALARM ? ordinal(AlarmStatus.NO_ALARM) : NO_CHANGE;
+            case CAT_DETECTED:
+                return arming == ArmingStatus.ARMED_HOME ? ordinal(AlarmStatus.ALARM) : NO_CHANGE;
+            case CAT_CLEARED:
+                return anyActive ? NO_CHANGE : ordinal(AlarmStatus.NO_ALARM);
+            case DISARM:
+                return ordinal(AlarmStatus.NO_ALARM);
+            case ARM_HOME:
+                return cat ? ordinal(AlarmStatus.ALARM) : NO_CHANGE;
+            default:
+                return NO_CHANGE;
+        }
+    }
+
+    /**
+     * Applies an event.
+     * @param event What happened
+     * @param activeDelta Change in the number of active sensors that comes with the event
+     * @return The new packed state, or REJECTED if the event doesn't apply in the current state
+     */
+    long fire(Event event, int activeDelta) {
+        while(true) {
+            long current = state.get();
+            int arming = (int) ((current >>> ARMING_SHIFT) & TWO_BITS);
+            int alarm = (int) ((current >>> ALARM_SHIFT) & TWO_BITS);
+            boolean cat = catDetected(current);
+            int count = Math.max(0, activeSensorCount(current) + activeDelta);
+
+            if(event == Event.CAT_DETECTED || event == Event.CAT_CLEARED) {
+                cat = event == Event.CAT_DETECTED;
+            }
+            byte next = TRANSITIONS[index(event.ordinal(), arming, alarm, cat ? 1 : 0, count > 0 ? 1 : 0)];
+            if(next == REJECT) {
+                return REJECTED;
+            }
+            if(next != NO_CHANGE) {
+                alarm = next;
+            }
+            if(event == Event.DISARM) {
+                arming = ArmingStatus.DISARMED.ordinal();
+            } else if(event == Event.ARM_HOME) {
+                arming = ArmingStatus.ARMED_HOME.ordinal();
+            } else if(event == Event.ARM_AWAY) {
+                arming = ArmingStatus.ARMED_AWAY.ordinal();
+            }
+            long updated = pack(arming, alarm, cat, count, version(current) + 1);
+            if(state.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Sets the alarm status directly, whatever the current state.
+     * @return The new packed state
+     */
+    long setAlarm(AlarmStatus alarmStatus) {
+        while(true) {
+            long current = state.get();
+            long updated = pack((int) ((current >>> ARMING_SHIFT) & TWO_BITS), alarmStatus.ordinal(),
+                    catDetected(current), activeSensorCount(current), version(current) + 1);
+            if(state.compareAndSet(current, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Changes the active sensor count without any event, for example when an active sensor is added
+     * or removed.
+     */
+    void adjustActiveSensorCount(int activeDelta) {
+        while(true) {
+            long current = state.get();
+            long updated = pack((int) ((current >>> ARMING_SHIFT) & TWO_BITS), (int) ((current >>> ALARM_SHIFT) & TWO_BITS),
+                    catDetected(current), Math.max(0, activeSensorCount(current) + activeDelta), version(current) + 1);
+            if(state.compareAndSet(current, updated)) {
+                return;
+            }
+        }
+    }
+
+    long get() {
+        return state.get();
+    }
+
+    static ArmingStatus armingStatus(long state) {
+        return ARMING[(int) ((state >>> ARMING_SHIFT) & TWO_BITS)];
+    }
+
+    static AlarmStatus alarmStatus(long state) {
+        return ALARM[(int) ((state >>> ALARM_SHIFT) & TWO_BITS)];
+    }
+
+    static boolean catDetected(long state) {
+        return ((state >>> CAT_SHIFT) & 1) != 0;
+    }
+
+    static int activeSensorCount(long state) {
+        return (int) ((state >>> COUNT_SHIFT) & COUNT_MASK);
+    }
+
+    static long version(long state) {
+        return (state >>> VERSION_SHIFT) & VERSION_MASK;
+    }
+
+    private static long pack(int arming, int alarm, boolean cat, int activeSensors, long version) {
+        return ((long) arming << ARMING_SHIFT)
+                | ((long) alarm << ALARM_SHIFT)
+                | ((cat ? 1L : 0L) << CAT_SHIFT)
+                | ((Math.min(activeSensors, COUNT_MASK) & COUNT_MASK) << COUNT_SHIFT)
+                | ((version & VERSION_MASK) << VERSION_SHIFT);
+    }
+
+    private static int index(int event, int arming, int alarm, int cat, int anyActive) {
+        return (((event * ARMING.length + arming) * ALARM.length + alarm) * 2 + cat) * 2 + anyActive;
+    }
+
+    private static byte ordinal(AlarmStatus alarmStatus) {
+        return (byte) alarmStatus.ordinal();
+    }
+}
@@ -0,0 +1,122 @@
+package com.udacity.catpoint.security.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the cameras feeding the system and whether each one currently sees a cat.
+ * The number of cameras seeing a cat is maintained as verdicts arrive, so asking whether any
+ * camera sees a cat doesn't depend on the number of cameras. A camera's verdict and its removal
+ * change that number under the camera's lock, so a verdict arriving while the camera is removed
+ * is either counted and taken back, or dropped.
+ */
+public class CameraRegistry {
+
+    private final ConcurrentMap<String, CameraState> cameras = new ConcurrentHashMap<>();
+    private final AtomicInteger camerasSeeingCat = new AtomicInteger();
+
+    /**
+     * Adds a camera. Registering a camera that is already known has no effect.
+     * @param cameraId
+     */
+    public void register(String cameraId) {
+        cameras.computeIfAbsent(cameraId, id -> new CameraState());
+    }
+
+    /**
+     * Removes a camera along with its cat state.
+     * @param cameraId
+     * @return True if the camera was registered
+     */
+    public boolean unregister(String cameraId) {
+        CameraState removed = cameras.remove(cameraId);
+        if(removed == null) {
+            return false;
+        }
+        synchronized (removed) {
+            removed.removed = true;
+            if(removed.catDetected) {
+                removed.catDetected = false;
+                camerasSeeingCat.decrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    public boolean isRegistered(String cameraId) {
+        return cameras.containsKey(cameraId);
+    }
+
+    public Set<String> getCameraIds() {
+        return Set.copyOf(cameras.keySet());
+    }
+
+    /**
+     * Counts a frame submitted by a camera.
+     * @throws IllegalArgumentException if the camera is not registered
+     */
+    public void frameSubmitted(String cameraId) {
+        state(cameraId).framesSubmitted.incrementAndGet();
+    }
+
+    /**
+     * Stores the latest scan result for a camera. Verdicts for cameras that aren't registered, such
+     * as a scan finishing after its camera was removed, are dropped.
+     * @param cameraId
+     * @param cat True if the camera's latest frame shows a cat
+     * @return True if the verdict was stored
+     */
+    public boolean recordVerdict(String cameraId, boolean cat) {
+        CameraState state = cameras.get(cameraId);
+        if(state == null) {
+            return false;
+        }
+        synchronized (state) {
+            if(state.removed) {
+                return false;
+            }
+            state.framesScanned.incrementAndGet();
+            if(state.catDetected != cat) {
+                state.catDetected = cat;
+                camerasSeeingCat.addAndGet(cat ? 1 : -1);
+            }
+        }
+        return true;
+    }
+
+    public boolean anyCatDetected() {
+        return camerasSeeingCat.get() > 0;
+    }
+
+    public boolean isCatDetected(String cameraId) {
+        CameraState state = cameras.get(cameraId);
+        return state != null && state.catDetected;
+    }
+
+    public long getFramesSubmitted(String cameraId) {
+        return state(cameraId).framesSubmitted.get();
+    }
+
+    public long getFramesScanned(String cameraId) {
+        return state(cameraId).framesScanned.get();
+    }
+
+    private CameraState state(String cameraId) {
+        CameraState state = cameras.get(cameraId);
+        if(state == null) {
+            throw new IllegalArgumentException("Unknown camera " + cameraId);
+        }
+        return state;
+    }
+
+    private static class CameraState {
+        //written under the state's lock
+        private volatile boolean catDetected;
+        private boolean removed;
+        private final AtomicLong framesSubmitted = new AtomicLong();
+        private final AtomicLong framesScanned = new AtomicLong();
+    }
+}
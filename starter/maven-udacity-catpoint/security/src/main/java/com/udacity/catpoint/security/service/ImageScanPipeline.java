@@ -0,0 +1,281 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Runs image scans on a pool of worker threads so callers never block on the {@link ImageService}.
+ * Submitted frames wait in a bounded queue; when a burst of frames arrives faster than the workers
+ * can scan them, the {@link OverflowPolicy} decides which frames are thrown away rather than letting
+ * work pile up.
+ */
+public class ImageScanPipeline implements AutoCloseable {
+
+    /**
+     * What to do with frames that arrive while the queue is full or while an earlier frame is still waiting.
+     */
+    public enum OverflowPolicy {
+        /** Every frame is queued. When the queue is full the oldest waiting frame is dropped. */
+        DROP_OLDEST,
+        /**
+         * Only the newest waiting frame per camera is kept; a new frame replaces the one already queued
+         * for its camera, and everyone waiting on either frame receives the newer frame's result.
+         * Each camera has at most one frame being scanned at a time, so results arrive in order and a
+         * slow camera can't occupy more than one worker. When the queue is full the oldest waiting
+         * frame is dropped.
+         */
+        COALESCE_LATEST
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+
+    private final ImageService imageService;
+    private final int queueCapacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Deque<ScanRequest> queue = new ArrayDeque<>();
+    private final Map<String, ScanRequest> waitingByCamera = new HashMap<>();
+    private final Set<String> scanningCameras = new HashSet<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private boolean closed;
+
+    private final AtomicLong scannedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Creates a pipeline with the default queue capacity, one worker per processor and
+     * coalescing of frames per camera.
+     */
+    public ImageScanPipeline(ImageService imageService) {
+        this(imageService, DEFAULT_QUEUE_CAPACITY, Runtime.getRuntime().availableProcessors(), OverflowPolicy.COALESCE_LATEST);
+    }
+
+    /**
+     * @param imageService Service used to scan each frame
+     * @param queueCapacity Maximum number of frames waiting to be scanned
+     * @param workerCount Number of frames scanned at the same time
+     * @param overflowPolicy How to shed frames that can't be scanned in time
+     */
+    public ImageScanPipeline(ImageService imageService, int queueCapacity, int workerCount, OverflowPolicy overflowPolicy) {
+        if(queueCapacity < 1 || workerCount < 1) {
+            throw new IllegalArgumentException("queueCapacity and workerCount must be positive");
+        }
+        this.imageService = imageService;
+        this.queueCapacity = queueCapacity;
+        this.overflowPolicy = overflowPolicy;
+
+        ThreadFactory threadFactory = WorkerThreads.factory("image-scan-");
+        for(int i = 0; i < workerCount; i++) {
+            Thread worker = threadFactory.newThread(this::runWorker);
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Queues a frame for scanning and returns immediately.
+     * @param cameraId Camera the frame came from. Used to coalesce frames from the same camera.
+     * @param image Frame to scan
+     * @param confidenceThreshhold Minimum confidence passed on to the image service
+     * @return Future completed with true if the frame contains a cat. Cancelled if the frame is dropped.
+     */
+    public CompletableFuture<Boolean> submit(String cameraId, BufferedImage image, float confidenceThreshhold) {
+        return submit(cameraId, image, confidenceThreshhold, imageService);
+    }
+
+    /**
+     * Queues a frame to be scanned by a specific image service instead of the pipeline's own, for
+     * example one that keeps state per camera.
+     * @param cameraId Camera the frame came from. Used to coalesce frames from the same camera.
+     * @param image Frame to scan
+     * @param confidenceThreshhold Minimum confidence passed on to the image service
+     * @param scanner Image service that scans this frame
+     * @return Future completed with true if the frame contains a cat. Cancelled if the frame is dropped.
+     */
+    public CompletableFuture<Boolean> submit(String cameraId, BufferedImage image, float confidenceThreshhold, ImageService scanner) {
+        lock.lock();
+        try {
+            if(closed) {
+                throw new IllegalStateException("Image scan pipeline is closed");
+            }
+            if(overflowPolicy == OverflowPolicy.COALESCE_LATEST) {
+                ScanRequest waiting = waitingByCamera.get(cameraId);
+                if(waiting != null) {
+                    waiting.image = image;
+                    waiting.confidenceThreshhold = confidenceThreshhold;
+                    waiting.scanner = scanner;
+                    coalescedCount.incrementAndGet();
+                    return waiting.result;
+                }
+            }
+            if(queue.size() >= queueCapacity) {
+                ScanRequest oldest = queue.pollFirst();
+                waitingByCamera.remove(oldest.cameraId, oldest);
+                oldest.result.cancel(false);
+                droppedCount.incrementAndGet();
+            }
+            ScanRequest request = new ScanRequest(cameraId, image, confidenceThreshhold, scanner);
+            queue.addLast(request);
+            if(overflowPolicy == OverflowPolicy.COALESCE_LATEST) {
+                waitingByCamera.put(cameraId, request);
+            }
+            notEmpty.signal();
+            return request.result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Cancels the waiting frames of every camera whose id starts with the prefix, such as all cameras
+     * of a service that stops using a shared pipeline. Frames already being scanned complete as usual.
+     * @return Number of frames cancelled
+     */
+    public int cancelWaiting(String cameraIdPrefix) {
+        lock.lock();
+        try {
+            int cancelled = 0;
+            for(Iterator<ScanRequest> it = queue.iterator(); it.hasNext(); ) {
+                ScanRequest request = it.next();
+                if(request.cameraId.startsWith(cameraIdPrefix)) {
+                    it.remove();
+                    waitingByCamera.remove(request.cameraId, request);
+                    request.result.cancel(false);
+                    cancelled++;
+                }
+            }
+            return cancelled;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedCount() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getScannedCount() {
+        return scannedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Stops the workers. Frames still waiting in the queue are cancelled.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            queue.forEach(r -> r.result.cancel(false));
+            queue.clear();
+            waitingByCamera.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void runWorker() {
+        while(true) {
+            ScanRequest request;
+            lock.lock();
+            try {
+                while((request = nextRequest()) == null && !closed) {
+                    notEmpty.awaitUninterruptibly();
+                }
+                if(request == null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            try {
+                request.result.complete(request.scanner.imageContainsCat(request.image, request.confidenceThreshhold));
+            } catch (Throwable t) {
+                //whatever the scanner throws, the caller's future must not be left waiting
+                request.result.completeExceptionally(t);
+            } finally {
+                scannedCount.incrementAndGet();
+                if(overflowPolicy == OverflowPolicy.COALESCE_LATEST) {
+                    lock.lock();
+                    try {
+                        scanningCameras.remove(request.cameraId);
+                        //a frame for this camera may have been skipped while it was busy
+                        notEmpty.signal();
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest frame that can be scanned right now. Must be called while holding the lock.
+     * @return The next frame, or null if nothing is eligible
+     */
+    private ScanRequest nextRequest() {
+        if(overflowPolicy != OverflowPolicy.COALESCE_LATEST) {
+            return queue.pollFirst();
+        }
+        for(Iterator<ScanRequest> it = queue.iterator(); it.hasNext(); ) {
+            ScanRequest request = it.next();
+            if(scanningCameras.add(request.cameraId)) {
+                it.remove();
+                waitingByCamera.remove(request.cameraId, request);
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A frame waiting to be scanned. The image, threshold and scanner are replaced in place when a newer
+     * frame from the same camera is coalesced into it, which only happens while it is still queued.
+     */
+    private static class ScanRequest {
+        private final String cameraId;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        private BufferedImage image;
+        private float confidenceThreshhold;
+        private ImageService scanner;
+
+        private ScanRequest(String cameraId, BufferedImage image, float confidenceThreshhold, ImageService scanner) {
+            this.cameraId = cameraId;
+            this.image = image;
+            this.confidenceThreshhold = confidenceThreshhold;
+            this.scanner = scanner;
+        }
+    }
+}
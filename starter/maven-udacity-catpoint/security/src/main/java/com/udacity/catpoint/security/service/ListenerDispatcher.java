@@ -0,0 +1,371 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.application.SensorStatusListener;
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.AlarmStatus;
+
+import javax.swing.SwingUtilities;
+import java.awt.Component;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Delivers status changes to listeners without making the thread that changed the state wait for them.
+ *
+ * Every listener has its own slots for the latest alarm status, the latest cat flag and whether the
+ * sensors changed. A new event overwrites the slot, and the listener is handed whatever the slots hold
+ * when it next runs, so a listener that falls behind skips intermediate states instead of replaying
+ * them one by one; a display only needs to show the latest. Each listener runs on one thread at a
+ * time and receives the alarm status before the cat flag, as the service produces them.
+ *
+ * Listeners that are Swing components run on the event dispatch thread. Other listeners run on the
+ * dispatcher's executor, a pool of background threads unless replaced.
+ */
+public class ListenerDispatcher {
+
+    //a lambda rather than a method reference, so Swing is only loaded once a component listener is notified
+    private static final Executor EVENT_DISPATCH_THREAD = task -> SwingUtilities.invokeLater(task);
+    private static final int NO_CAT = -1;
+    private static final Logger LOGGER = Logger.getLogger(ListenerDispatcher.class.getName());
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+    private volatile Registration sensorRegistration;
+    private volatile Executor executor;
+    private ExecutorService defaultExecutor;
+
+    /**
+     * Adds a listener, delivering on the event dispatch thread if it is a Swing component and on the
+     * dispatcher's executor otherwise.
+     */
+    public void addStatusListener(StatusListener statusListener) {
+        addStatusListener(statusListener, defaultExecutorFor(statusListener));
+    }
+
+    /**
+     * @param statusListener Listener to add; adding it again has no effect
+     * @param listenerExecutor Executor that runs this listener, or null for the dispatcher's executor
+     */
+    public void addStatusListener(StatusListener statusListener, Executor listenerExecutor) {
+        synchronized (registrations) {
+            if(find(statusListener) == null) {
+                registrations.add(new Registration(statusListener, listenerExecutor));
+            }
+        }
+    }
+
+    public void removeStatusListener(StatusListener statusListener) {
+        synchronized (registrations) {
+            registrations.remove(find(statusListener));
+        }
+    }
+
+    /**
+     * @return Read-only live view of the registered status listeners
+     */
+    public Set<StatusListener> getStatusListeners() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<StatusListener> iterator() {
+                Iterator<Registration> it = registrations.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public StatusListener next() {
+                        return (StatusListener) it.next().listener;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return registrations.size();
+            }
+        };
+    }
+
+    /**
+     * Replaces the sensor status listener. Delivered like status listeners.
+     */
+    public void setSensorStatusListener(SensorStatusListener sensorStatusListener) {
+        sensorRegistration = sensorStatusListener == null ? null
+                : new Registration(sensorStatusListener, defaultExecutorFor(sensorStatusListener));
+    }
+
+    /**
+     * Sets the executor for listeners that are neither Swing components nor registered with their own
+     * executor. Runnable::run delivers on the caller's thread, as a plain listener list would.
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public void alarmStatusChanged(AlarmStatus alarmStatus) {
+        for(Registration registration : registrations) {
+            registration.offerAlarm(alarmStatus);
+        }
+    }
+
+    public void catDetected(boolean catDetected) {
+        for(Registration registration : registrations) {
+            registration.offerCat(catDetected);
+        }
+    }
+
+    public void sensorStatusChanged() {
+        Registration registration = sensorRegistration;
+        if(registration != null) {
+            registration.offerSensorsChanged();
+        }
+    }
+
+    /**
+     * @return Delivery statistics for every registered listener, sensor status listener last
+     */
+    public List<ListenerStats> getListenerStats() {
+        List<ListenerStats> stats = new ArrayList<>();
+        registrations.forEach(registration -> stats.add(registration.stats()));
+        Registration registration = sensorRegistration;
+        if(registration != null) {
+            stats.add(registration.stats());
+        }
+        return stats;
+    }
+
+    private Registration find(Object listener) {
+        for(Registration registration : registrations) {
+            if(registration.listener.equals(listener)) {
+                return registration;
+            }
+        }
+        return null;
+    }
+
+    private static Executor defaultExecutorFor(Object listener) {
+        return listener instanceof Component ? EVENT_DISPATCH_THREAD : null;
+    }
+
+    private Executor executor() {
+        Executor current = executor;
+        if(current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if(defaultExecutor == null) {
+                defaultExecutor = Executors.newCachedThreadPool(WorkerThreads.factory("listener-dispatch-"));
+            }
+            return defaultExecutor;
+        }
+    }
+
+    /**
+     * One listener with its pending events.
+     */
+    private class Registration {
+        private final Object listener;
+        private final Executor listenerExecutor;
+
+        private final AtomicReference<AlarmStatus> pendingAlarm = new AtomicReference<>();
+        private final AtomicInteger pendingCat = new AtomicInteger(NO_CAT);
+        private final AtomicBoolean pendingSensorsChanged = new AtomicBoolean();
+        //when the oldest undelivered event arrived, or 0 if none is waiting
+        private final AtomicLong pendingSince = new AtomicLong();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private final AtomicLong deliveries = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong totalRunNanos = new AtomicLong();
+        private final AtomicLong maxRunNanos = new AtomicLong();
+        private final AtomicLong totalDelayNanos = new AtomicLong();
+        private final AtomicLong maxDelayNanos = new AtomicLong();
+
+        private Registration(Object listener, Executor listenerExecutor) {
+            this.listener = listener;
+            this.listenerExecutor = listenerExecutor;
+        }
+
+        private void offerAlarm(AlarmStatus alarmStatus) {
+            markPending();
+            if(pendingAlarm.getAndSet(alarmStatus) != null) {
+                coalesced.incrementAndGet();
+            }
+            schedule();
+        }
+
+        private void offerCat(boolean catDetected) {
+            markPending();
+            if(pendingCat.getAndSet(catDetected ? 1 : 0) != NO_CAT) {
+                coalesced.incrementAndGet();
+            }
+            schedule();
+        }
+
+        private void offerSensorsChanged() {
+            markPending();
+            if(pendingSensorsChanged.getAndSet(true)) {
+                coalesced.incrementAndGet();
+            }
+            schedule();
+        }
+
+        private void markPending() {
+            if(pendingSince.get() == 0) {
+                pendingSince.compareAndSet(0, System.nanoTime());
+            }
+        }
+
+        private void schedule() {
+            if(!scheduled.compareAndSet(false, true)) {
+                return; //a delivery is queued or running and will pick the event up
+            }
+            try {
+                (listenerExecutor != null ? listenerExecutor : executor()).execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                scheduled.set(false);
+            }
+        }
+
+        private void drain() {
+            do {
+                long since = pendingSince.getAndSet(0);
+                AlarmStatus alarmStatus = pendingAlarm.getAndSet(null);
+                int cat = pendingCat.getAndSet(NO_CAT);
+                boolean sensorsChanged = pendingSensorsChanged.getAndSet(false);
+                long start = System.nanoTime();
+                //each callback on its own, so one that throws doesn't cost the listener the others
+                if(alarmStatus != null) {
+                    deliver("alarm status", alarmStatus, () -> ((StatusListener) listener).notify(alarmStatus));
+                }
+                if(cat != NO_CAT) {
+                    deliver("cat detected", cat == 1, () -> ((StatusListener) listener).catDetected(cat == 1));
+                }
+                if(sensorsChanged) {
+                    deliver("sensor change", true, () -> ((SensorStatusListener) listener).sensorStatusChanged());
+                }
+                long end = System.nanoTime();
+                if(alarmStatus != null || cat != NO_CAT || sensorsChanged) {
+                    deliveries.incrementAndGet();
+                    record(totalRunNanos, maxRunNanos, end - start);
+                    if(since != 0) {
+                        record(totalDelayNanos, maxDelayNanos, start - since);
+                    }
+                }
+                scheduled.set(false);
+            } while(hasPending() && scheduled.compareAndSet(false, true));
+        }
+
+        private void deliver(String event, Object value, Runnable callback) {
+            try {
+                callback.run();
+            } catch (Throwable e) {
+                //one failing listener must not stop delivery to it or to the others; an Error is caught
+                //too, as letting it escape drain would leave the listener scheduled and never called again
+                failures.incrementAndGet();
+                LOGGER.log(Level.WARNING, "Listener " + listener.getClass().getName() + " failed to handle " + event + " " + value, e);
+            }
+        }
+
+        private boolean hasPending() {
+            return pendingAlarm.get() != null || pendingCat.get() != NO_CAT || pendingSensorsChanged.get();
+        }
+
+        private void record(AtomicLong total, AtomicLong max, long nanos) {
+            total.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        private ListenerStats stats() {
+            long count = deliveries.get();
+            return new ListenerStats(listener.getClass().getName(), count, coalesced.get(), failures.get(),
+                    count == 0 ? 0 : totalRunNanos.get() / count, maxRunNanos.get(),
+                    count == 0 ? 0 : totalDelayNanos.get() / count, maxDelayNanos.get());
+        }
+    }
+
+    /**
+     * Delivery statistics of one listener. Run time is spent inside the listener; delay is the time an
+     * event waited before the listener started handling it.
+     */
+    public static class ListenerStats {
+        private final String listener;
+        private final long deliveries;
+        private final long coalesced;
+        private final long failures;
+        private final long averageRunNanos;
+        private final long maxRunNanos;
+        private final long averageDelayNanos;
+        private final long maxDelayNanos;
+
+        ListenerStats(String listener, long deliveries, long coalesced, long failures,
+                      long averageRunNanos, long maxRunNanos, long averageDelayNanos, long maxDelayNanos) {
+            this.listener = listener;
+            this.deliveries = deliveries;
+            this.coalesced = coalesced;
+            this.failures = failures;
+            this.averageRunNanos = averageRunNanos;
+            this.maxRunNanos = maxRunNanos;
+            this.averageDelayNanos = averageDelayNanos;
+            this.maxDelayNanos = maxDelayNanos;
+        }
+
+        public String getListener() {
+            return listener;
+        }
+
+        public long getDeliveries() {
+            return deliveries;
+        }
+
+        /**
+         * @return Events replaced by a newer one before the listener saw them
+         */
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getAverageRunNanos() {
+            return averageRunNanos;
+        }
+
+        public long getMaxRunNanos() {
+            return maxRunNanos;
+        }
+
+        public long getAverageDelayNanos() {
+            return averageDelayNanos;
+        }
+
+        public long getMaxDelayNanos() {
+            return maxDelayNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d deliveries, %d coalesced, %d failed, run avg %dus max %dus, delay avg %dus max %dus",
+                    listener, deliveries, coalesced, failures, averageRunNanos / 1000, maxRunNanos / 1000,
+                    averageDelayNanos / 1000, maxDelayNanos / 1000);
+        }
+    }
+}
@@ -1,18 +1,34 @@
 package com.udacity.catpoint.security.service;
 
 import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.image.service.MotionGatedImageService;
 import com.udacity.catpoint.security.application.SensorStatusListener;
 import com.udacity.catpoint.security.application.StatusListener;
 import com.udacity.catpoint.security.data.AlarmStatus;
 import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.EventHistoryStore;
 import com.udacity.catpoint.security.data.SecurityRepository;
 import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.metrics.MetricRegistration;
+import com.udacity.catpoint.security.metrics.MetricRegistry;
+import com.udacity.catpoint.security.metrics.SecurityMetrics;
+import com.udacity.catpoint.security.metrics.TimedImageService;
 
 import java.awt.image.BufferedImage;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service that receives information about changes to the security system. Responsible for
@@ -23,15 +39,47 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class SecurityService {
 
+    public static final String DEFAULT_CAMERA_ID = "default";
+    private static final float CAT_CONFIDENCE_THRESHOLD = 50.0f;
+
     private ImageService imageService;
     private SecurityRepository securityRepository;
-    private Set<StatusListener> statusListeners = new HashSet<>();
-    private SensorStatusListener sensorStatusListener;
-    private AtomicBoolean isCatDetected = new AtomicBoolean(false);
+    //listeners are called off the thread that changed the state, see ListenerDispatcher
+    private final ListenerDispatcher listenerDispatcher = new ListenerDispatcher();
+
+    //arming, alarm, cat and active sensor state per zone; created from the repository on first use
+    private volatile ZonedAlarmState alarmState;
+    //only one thread at a time copies the state machine to the repository and listeners
+    private final AtomicInteger publishRequests = new AtomicInteger();
+    private AlarmStatus publishedAlarmStatus;
+    private ArmingStatus publishedArmingStatus;
+
+    //sorted, read-only copy of the repository's sensors; null until first read or after add/remove
+    private volatile Set<Sensor> sensorSnapshot;
+    private final AtomicLong sensorVersion = new AtomicLong();
+
+    private final CameraRegistry cameraRegistry = new CameraRegistry();
+    private ImageScanPipeline imageScanPipeline;
+    //set once the service stops using its pipeline, so it doesn't quietly start one of its own
+    private boolean pipelineDetached;
+    //metrics of the pipeline this service registered, closed when it stops using that pipeline
+    private List<MetricRegistration> pipelineMetrics = List.of();
+    //prepended to camera ids in a pipeline shared with other services
+    private volatile String scanKeyPrefix = "";
+    private Executor verdictExecutor = Runnable::run;
+
+    //per-camera motion gates; null ratio means every frame is scanned
+    private final ConcurrentMap<String, MotionGatedImageService> motionGates = new ConcurrentHashMap<>();
+    private volatile Double motionChangedRatio;
+
+    private final SecurityMetrics metrics = new SecurityMetrics(MetricRegistry.global());
+    //records every state change when set
+    private volatile EventHistoryStore eventHistory;
 
     public SecurityService(SecurityRepository securityRepository, ImageService imageService) {
         this.securityRepository = securityRepository;
-        this.imageService = imageService;
+        this.imageService = new TimedImageService(imageService, MetricRegistry.global());
+        cameraRegistry.register(DEFAULT_CAMERA_ID);
     }
 
     /**
@@ -42,50 +90,72 @@ public class SecurityService {
     public void setArmingStatus(ArmingStatus armingStatus) {
         switch(armingStatus){
             case DISARMED:
-                setAlarmStatus(AlarmStatus.NO_ALARM);// satisfies the requirement
+                fireAll(AlarmStateMachine.Event.DISARM);// satisfies the requirement
                 break;
             case ARMED_HOME:
             /* this covers the scenario:
             Put the system as disarmed, scan a picture until it detects a cat, 
             after that make it armed, it should make system in ALARM state
             */
-                if(getCatStatus()){
-                    setAlarmStatus(AlarmStatus.ALARM);
-                }
-                getSensors().stream()
-                            .forEach(s -> {
-                                s.setActive(false);
-                                changeSensorActivationStatus(s, false);
-                            });
+                armWithSensorsReset(AlarmStateMachine.Event.ARM_HOME);
                 break;
             default:
                 //reset all sensors to inactive
-                getSensors().stream()
-                            .forEach(s -> {
-                                s.setActive(false);
-                                changeSensorActivationStatus(s, false);
-                            });
+                armWithSensorsReset(AlarmStateMachine.Event.ARM_AWAY);
                 break;
         }
-        securityRepository.setArmingStatus(armingStatus);
-        sensorStatusListener.sensorStatusChanged();
+        listenerDispatcher.sensorStatusChanged();
+    }
+
+    /**
+     * Internal method that deactivates every sensor and then arms the system. Everything is stored in
+     * one repository batch, and only the sensors that were active are written at all.
+     */
+    private void armWithSensorsReset(AlarmStateMachine.Event armEvent) {
+        securityRepository.beginBatch();
+        try {
+            List<Sensor> reset = new ArrayList<>();
+            for(Sensor sensor : getSensors()) {
+                if(resetSensor(sensor)) {
+                    reset.add(sensor);
+                }
+            }
+            if(!reset.isEmpty()) {
+                securityRepository.updateSensors(reset);
+            }
+            fireAll(armEvent);
+        } finally {
+            securityRepository.commitBatch();
+        }
+    }
+
+    /**
+     * Internal method that records the latest result for one camera and then updates the alarm
+     * status based on whether any camera currently shows a cat. Results for cameras removed while
+     * their frame was scanned are ignored.
+     * @param cameraId Camera the scanned frame came from
+     * @param cat True if the frame shows a cat, otherwise false.
+     */
+    private void catDetected(String cameraId, Boolean cat) {
+        if(cameraRegistry.recordVerdict(cameraId, cat)) {
+            catDetected(cameraRegistry.anyCatDetected());
+        }
     }
 
     /**
      * Internal method that handles alarm status changes based on whether
-     * the camera currently shows a cat.
+     * the cameras currently show a cat.
      * @param cat True if a cat is detected, otherwise false.
      */
     private void catDetected(Boolean cat) {
-        //setting cat detected flag
-        isCatDetected.set(cat);
-        if(cat && getArmingStatus() == ArmingStatus.ARMED_HOME) {
-            setAlarmStatus(AlarmStatus.ALARM);
-        } else if(!cat && areSensorsDeactivated()) {
-            setAlarmStatus(AlarmStatus.NO_ALARM);
+        EventHistoryStore history = eventHistory;
+        if(history != null) {
+            history.recordCatVerdict(cat);
         }
+        //raises the alarm if armed-home, or clears it if no sensor is active
+        fireAll(cat ? AlarmStateMachine.Event.CAT_DETECTED : AlarmStateMachine.Event.CAT_CLEARED);
 
-        statusListeners.forEach(sl -> sl.catDetected(cat));
+        listenerDispatcher.catDetected(cat);
     }
 
     /**
@@ -93,7 +163,7 @@ public class SecurityService {
      * @param statusListener
      */
     public void addStatusListener(StatusListener statusListener) {
-        statusListeners.add(statusListener);
+        listenerDispatcher.addStatusListener(statusListener);
     }
 
     /**
@@ -101,15 +171,44 @@ public class SecurityService {
      * @param statusListener
      */
     public void setSensorStatusListener(SensorStatusListener sensorStatusListener) {
-        this.sensorStatusListener = sensorStatusListener;
+        listenerDispatcher.setSensorStatusListener(sensorStatusListener);
     }
 
     public void removeStatusListener(StatusListener statusListener) {
-        statusListeners.remove(statusListener);
+        listenerDispatcher.removeStatusListener(statusListener);
     }
 
     public Set<StatusListener> getStatusListeners(){
-        return statusListeners;
+        return listenerDispatcher.getStatusListeners();
+    }
+
+    /**
+     * Sets the executor that calls listeners which aren't Swing components. Defaults to a pool of
+     * background threads; Runnable::run calls them on the thread that changed the state.
+     * @param listenerExecutor
+     */
+    public void setListenerExecutor(Executor listenerExecutor) {
+        listenerDispatcher.setExecutor(listenerExecutor);
+    }
+
+    /**
+     * Records sensor activations, arming and alarm changes and cat verdicts in the given history from
+     * now on. Null stops recording.
+     * @param eventHistory
+     */
+    public void setEventHistory(EventHistoryStore eventHistory) {
+        this.eventHistory = eventHistory;
+    }
+
+    public EventHistoryStore getEventHistory() {
+        return eventHistory;
+    }
+
+    /**
+     * @return Delivery statistics of each listener, including how long it takes to handle an update
+     */
+    public List<ListenerDispatcher.ListenerStats> getListenerStats() {
+        return listenerDispatcher.getListenerStats();
     }
 
     /**
@@ -117,58 +216,188 @@ public class SecurityService {
      * @param status
      */
     public void setAlarmStatus(AlarmStatus status) {
-        securityRepository.setAlarmStatus(status);
-        statusListeners.forEach(sl -> sl.notify(status));
+        alarmState().setAlarm(status);
+        publish();
+    }
+
+    /**
+     * Change the activation status for the specified sensor and update alarm status if necessary.
+     * @param sensor
+     * @param active
+     */
+    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
+        long start = System.nanoTime();
+        try {
+            if(!applySensorActivation(sensor, active)) {
+                return; //no problem if the system is disarmed
+            }
+            publish();
+            securityRepository.updateSensor(sensor);
+        } finally {
+            metrics.sensorChange().recordSince(start);
+        }
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been activated.
+     * Applies a sensor event to the alarm state without writing anything to the repository or telling
+     * the listeners; {@link #flushSensorUpdates} does that afterwards, once for many events.
+     * @return False if the event was ignored because the system is disarmed
      */
-    private void handleSensorActivated() {
-        if(securityRepository.getAlarmStatus().equals(AlarmStatus.NO_ALARM)) {
-            setAlarmStatus(AlarmStatus.PENDING_ALARM);
-        } else if(securityRepository.getAlarmStatus().equals(AlarmStatus.PENDING_ALARM)){
-            setAlarmStatus(AlarmStatus.ALARM);
+    boolean applySensorActivation(Sensor sensor, boolean active) {
+        metrics.sensorEvent(sensor.getSensorType());
+        AlarmStateMachine.Event event = active ? AlarmStateMachine.Event.SENSOR_ACTIVATED : AlarmStateMachine.Event.SENSOR_DEACTIVATED;
+        //the sensor's flag and the active count change together; the lock is per sensor, so only
+        //events for the same sensor ever wait on each other
+        synchronized (sensor) {
+            boolean wasActive = Boolean.TRUE.equals(sensor.getActive());
+            if(alarmState().fire(sensor.getZone(), event, activeDelta(wasActive, active)) == AlarmStateMachine.REJECTED) {
+                return false;
+            }
+            sensor.setActive(active);
+            if(wasActive != active) {
+                recordSensor(sensor, active);
+            }
         }
+        return true;
     }
 
     /**
-     * Internal method for updating the alarm status when a sensor has been deactivated
+     * Writes sensors changed by {@link #applySensorActivation} and the resulting alarm state to the
+     * repository, and notifies the listeners.
      */
-    private void handleSensorDeactivated() {
-        if(securityRepository.getAlarmStatus().equals(AlarmStatus.PENDING_ALARM)){
-            setAlarmStatus(AlarmStatus.NO_ALARM);
-        } else if(securityRepository.getAlarmStatus().equals(AlarmStatus.ALARM)){
-            setAlarmStatus(AlarmStatus.PENDING_ALARM);
+    void flushSensorUpdates(Collection<Sensor> sensors) {
+        publish();
+        securityRepository.updateSensors(sensors);
+    }
+
+    /**
+     * Internal method that deactivates a sensor because the system is being armed. Unlike a sensor
+     * event this also applies while disarmed. Doesn't write the sensor to the repository.
+     * @return True if the sensor was active
+     */
+    private boolean resetSensor(Sensor sensor) {
+        boolean wasActive;
+        synchronized (sensor) {
+            wasActive = Boolean.TRUE.equals(sensor.getActive());
+            alarmState().fire(sensor.getZone(), AlarmStateMachine.Event.SENSOR_RESET, activeDelta(wasActive, false));
+            sensor.setActive(false);
+            if(wasActive) {
+                recordSensor(sensor, false);
+            }
         }
+        publish();
+        return wasActive;
     }
 
-    public void handleAlarmStatusBySensorState(Boolean sensorStatus){
-        if(sensorStatus){
-            handleSensorActivated();
-        } else {
-            handleSensorDeactivated();
+    private void recordSensor(Sensor sensor, boolean active) {
+        EventHistoryStore history = eventHistory;
+        if(history != null) {
+            history.recordSensor(sensor.getSensorId(), active);
         }
     }
 
+    private static int activeDelta(boolean wasActive, boolean active) {
+        return wasActive == active ? 0 : (active ? 1 : -1);
+    }
+
     /**
-     * Change the activation status for the specified sensor and update alarm status if necessary.
-     * @param sensor
-     * @param active
+     * Applies an event that concerns every zone.
      */
-    public void changeSensorActivationStatus(Sensor sensor, Boolean active) {
-        if(securityRepository.getArmingStatus() == ArmingStatus.DISARMED) {
-            return; //no problem if the system is disarmed
+    private void fireAll(AlarmStateMachine.Event event) {
+        alarmState().fireAll(event);
+        publish();
+    }
+
+    /**
+     * Writes the latest state to the repository and tells the listeners about alarm changes. Threads
+     * that change the state concurrently all call this, but only one of them does the work at a time;
+     * the others leave it to that thread, which loops until it has caught up with every change. The
+     * repository therefore always ends up with the latest state, never an older one written late. If
+     * the repository or a listener throws, the publisher still catches up with the changes other
+     * threads left to it, retrying the status that failed, and then passes the first exception to its
+     * caller.
+     */
+    private void publish() {
+        if(publishRequests.getAndIncrement() != 0) {
+            return;
         }
-        if(securityRepository.getAlarmStatus().equals(AlarmStatus.ALARM)) {
-            if(securityRepository.getArmingStatus() == ArmingStatus.ARMED_AWAY){
-                handleSensorDeactivated();
+        Throwable failure = null;
+        int missed = 1;
+        do {
+            try {
+                publishLatest();
+            } catch (RuntimeException | Error e) {
+                //the status that failed stays unpublished, so the next pass writes it again
+                if(failure == null) {
+                    failure = e;
+                } else if(failure != e) {
+                    failure.addSuppressed(e);
+                }
             }
-        } else {
-            handleAlarmStatusBySensorState(active);
+            missed = publishRequests.addAndGet(-missed);
+        } while(missed != 0);
+        if(failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if(failure != null) {
+            throw (Error) failure;
+        }
+    }
+
+    private void publishLatest() {
+        AlarmStatus alarmStatus = alarmState().alarmStatus();
+        ArmingStatus armingStatus = alarmState().armingStatus();
+        EventHistoryStore history = eventHistory;
+        //the repository is written first, so a failed write that is retried isn't counted twice
+        if(alarmStatus != publishedAlarmStatus) {
+            securityRepository.setAlarmStatus(alarmStatus);
+            metrics.alarmTransition(publishedAlarmStatus, alarmStatus);
+            if(history != null) {
+                history.recordAlarmChange(publishedAlarmStatus, alarmStatus);
+            }
+            publishedAlarmStatus = alarmStatus;
+            listenerDispatcher.alarmStatusChanged(alarmStatus);
+        }
+        if(armingStatus != publishedArmingStatus) {
+            securityRepository.setArmingStatus(armingStatus);
+            if(history != null) {
+                history.recordArmingChange(publishedArmingStatus, armingStatus);
+            }
+            publishedArmingStatus = armingStatus;
         }
-        sensor.setActive(active);
-        securityRepository.updateSensor(sensor);
+    }
+
+    /**
+     * Returns the alarm state, loading the initial state from the repository on first use.
+     */
+    private ZonedAlarmState alarmState() {
+        ZonedAlarmState state = alarmState;
+        if(state == null) {
+            synchronized (this) {
+                state = alarmState;
+                if(state == null) {
+                    ArmingStatus armingStatus = securityRepository.getArmingStatus();
+                    AlarmStatus alarmStatus = securityRepository.getAlarmStatus();
+                    armingStatus = armingStatus == null ? ArmingStatus.DISARMED : armingStatus;
+                    alarmStatus = alarmStatus == null ? AlarmStatus.NO_ALARM : alarmStatus;
+                    //the repository is only written once the state moves away from what it holds
+                    publishedArmingStatus = armingStatus;
+                    publishedAlarmStatus = alarmStatus;
+                    //the repository only holds the site's alarm status, so every zone starts from it
+                    state = new ZonedAlarmState(armingStatus, alarmStatus, activeSensorsByZone(getSensors()));
+                    alarmState = state;
+                }
+            }
+        }
+        return state;
+    }
+
+    private static Map<String, Integer> activeSensorsByZone(Set<Sensor> sensors) {
+        Map<String, Integer> counts = new HashMap<>();
+        for(Sensor sensor : sensors) {
+            counts.merge(sensor.getZone(), Boolean.TRUE.equals(sensor.getActive()) ? 1 : 0, Integer::sum);
+        }
+        return counts;
     }
 
     /**
@@ -177,35 +406,302 @@ public class SecurityService {
      * @param currentCameraImage
      */
     public void processImage(BufferedImage currentCameraImage) {
-        catDetected(imageService.imageContainsCat(currentCameraImage, 50.0f));
+        long start = System.nanoTime();
+        try {
+            catDetected(DEFAULT_CAMERA_ID, imageService.imageContainsCat(currentCameraImage, CAT_CONFIDENCE_THRESHOLD));
+        } finally {
+            metrics.processImage().recordSince(start);
+        }
+    }
+
+    /**
+     * Queues an image for scanning on the image scan pipeline and returns without waiting for the
+     * ImageService. Once the scan finishes the alarm status is updated on the verdict executor.
+     * @param currentCameraImage
+     * @return Future completed with the scan result, or cancelled if the frame was dropped under load
+     * @throws IllegalStateException if the image scan pipeline was detached
+     */
+    public CompletableFuture<Boolean> processImageAsync(BufferedImage currentCameraImage) {
+        return processImageAsync(DEFAULT_CAMERA_ID, currentCameraImage);
+    }
+
+    /**
+     * Queues an image from a specific camera for scanning. Frames from the same camera may be coalesced,
+     * depending on the pipeline's overflow policy.
+     * @param cameraId
+     * @param cameraImage
+     * @throws IllegalStateException if the image scan pipeline was detached
+     */
+    public CompletableFuture<Boolean> processImageAsync(String cameraId, BufferedImage cameraImage) {
+        long start = System.nanoTime();
+        String prefix = scanKeyPrefix;
+        String scanKey = prefix.isEmpty() ? cameraId : prefix + cameraId;
+        CompletableFuture<Boolean> scan = getImageScanPipeline().submit(scanKey, cameraImage, CAT_CONFIDENCE_THRESHOLD, scannerFor(cameraId));
+        //completed by hand rather than with thenApplyAsync, which would turn a dropped frame's cancellation into a failure
+        CompletableFuture<Boolean> verdict = new CompletableFuture<>();
+        scan.whenComplete((cat, error) -> {
+            if(scan.isCancelled()) {
+                verdict.cancel(false);
+            } else if(error != null) {
+                verdict.completeExceptionally(error);
+            } else {
+                verdictExecutor.execute(() -> {
+                    try {
+                        catDetected(cameraId, cat);
+                        metrics.processImage().recordSince(start);
+                        verdict.complete(cat);
+                    } catch (Throwable t) {
+                        verdict.completeExceptionally(t);
+                    }
+                });
+            }
+        });
+        return verdict;
+    }
+
+    /**
+     * Registers a camera so it can stream frames through submitFrame.
+     * @param cameraId
+     */
+    public void registerCamera(String cameraId) {
+        cameraRegistry.register(cameraId);
+    }
+
+    /**
+     * Removes a camera. If it was the only camera seeing a cat, the alarm status is re-evaluated as
+     * if a frame without a cat had arrived.
+     * @param cameraId
+     */
+    public void unregisterCamera(String cameraId) {
+        boolean catBefore = cameraRegistry.anyCatDetected();
+        motionGates.remove(cameraId);
+        if(cameraRegistry.unregister(cameraId) && catBefore && !cameraRegistry.anyCatDetected()) {
+            verdictExecutor.execute(() -> catDetected(false));
+        }
+    }
+
+    /**
+     * Accepts the next frame of a registered camera's stream. Frames that arrive while an older frame from
+     * the same camera is still waiting replace that frame, so each camera only ever has its newest frame
+     * waiting to be scanned.
+     * @param cameraId
+     * @param frame
+     * @return Future completed with the scan result for this frame or a newer one from the same camera
+     * @throws IllegalArgumentException if the camera is not registered
+     */
+    public CompletableFuture<Boolean> submitFrame(String cameraId, BufferedImage frame) {
+        cameraRegistry.frameSubmitted(cameraId);
+        return processImageAsync(cameraId, frame);
+    }
+
+    public CameraRegistry getCameraRegistry() {
+        return cameraRegistry;
+    }
+
+    /**
+     * Skips frames that barely differ from the last frame scanned for the same camera; such frames keep
+     * that camera's previous verdict instead of being sent to the ImageService.
+     * @param changedRatio Share (0-1) of the picture that must have changed for a frame to be scanned
+     */
+    public void enableMotionGating(double changedRatio) {
+        if(changedRatio < 0 || changedRatio > 1) {
+            throw new IllegalArgumentException("changedRatio must be within 0-1");
+        }
+        motionChangedRatio = changedRatio;
+        motionGates.clear();
+    }
+
+    /**
+     * Sends every frame passed to processImageAsync or submitFrame to the ImageService again.
+     */
+    public void disableMotionGating() {
+        motionChangedRatio = null;
+        motionGates.clear();
+    }
+
+    /**
+     * @param cameraId
+     * @return The motion gate of a camera, or null if motion gating is off or the camera hasn't sent a frame yet
+     */
+    public MotionGatedImageService getMotionGate(String cameraId) {
+        return motionGates.get(cameraId);
+    }
+
+    /**
+     * Replaces the pipeline used by processImageAsync. By default a pipeline with one worker per
+     * processor is created on first use.
+     * @param imageScanPipeline
+     */
+    public synchronized void setImageScanPipeline(ImageScanPipeline imageScanPipeline) {
+        this.imageScanPipeline = imageScanPipeline;
+        pipelineDetached = false;
+        registerPipelineMetrics(imageScanPipeline);
+    }
+
+    /**
+     * Uses a pipeline shared with other services, such as the other sites of a {@link SiteHost}.
+     * Frames are queued under the key followed by the camera id, so cameras of different services
+     * that happen to have the same id aren't coalesced with each other. The owner of the pipeline
+     * registers its metrics.
+     * @param imageScanPipeline
+     * @param scanKey Key unique to this service
+     */
+    public synchronized void setImageScanPipeline(ImageScanPipeline imageScanPipeline, String scanKey) {
+        this.imageScanPipeline = imageScanPipeline;
+        this.scanKeyPrefix = scanKey + "/";
+        pipelineDetached = false;
+        unregisterPipelineMetrics();
+    }
+
+    /**
+     * Stops using the image scan pipeline, for a service that is being shut down while the pipeline
+     * lives on. Frames of this service still waiting are cancelled, and its cameras are removed so the
+     * verdicts of frames being scanned are dropped instead of changing the state. Later asynchronous
+     * scans are rejected until a pipeline is set again.
+     */
+    public synchronized void detachImageScanPipeline() {
+        if(imageScanPipeline != null && !scanKeyPrefix.isEmpty()) {
+            imageScanPipeline.cancelWaiting(scanKeyPrefix);
+        }
+        imageScanPipeline = null;
+        pipelineDetached = true;
+        unregisterPipelineMetrics();
+        scanKeyPrefix = "";
+        cameraRegistry.getCameraIds().forEach(cameraRegistry::unregister);
+        motionGates.clear();
+    }
+
+    /**
+     * Sets the executor that applies scan results to the system state. Defaults to running on the
+     * scanning thread; a GUI can pass its event dispatch thread so state changes and listener
+     * callbacks stay on one thread.
+     * @param verdictExecutor
+     */
+    public void setVerdictExecutor(Executor verdictExecutor) {
+        this.verdictExecutor = verdictExecutor;
+    }
+
+    private ImageService scannerFor(String cameraId) {
+        Double changedRatio = motionChangedRatio;
+        if(changedRatio == null) {
+            return imageService;
+        }
+        return motionGates.computeIfAbsent(cameraId,
+                id -> new MotionGatedImageService(imageService, MotionGatedImageService.DEFAULT_PIXEL_DELTA, changedRatio));
+    }
+
+    /**
+     * Registers the pipeline's metrics in place of those of the pipeline used before.
+     */
+    private void registerPipelineMetrics(ImageScanPipeline pipeline) {
+        unregisterPipelineMetrics();
+        MetricRegistry registry = MetricRegistry.global();
+        pipelineMetrics = List.of(
+                registry.gauge("catpoint_image_scan_queue_depth", "Frames waiting to be scanned", pipeline::getQueuedCount),
+                registry.counter("catpoint_image_scan_frames", "Frames scanned", pipeline::getScannedCount, "outcome", "scanned"),
+                registry.counter("catpoint_image_scan_frames", "Frames scanned", pipeline::getDroppedCount, "outcome", "dropped"),
+                registry.counter("catpoint_image_scan_frames", "Frames scanned", pipeline::getCoalescedCount, "outcome", "coalesced"));
+    }
+
+    private void unregisterPipelineMetrics() {
+        pipelineMetrics.forEach(MetricRegistration::close);
+        pipelineMetrics = List.of();
     }
 
+    private synchronized ImageScanPipeline getImageScanPipeline() {
+        if(pipelineDetached) {
+            throw new IllegalStateException("The image scan pipeline was detached from this service");
+        }
+        if(imageScanPipeline == null) {
+            imageScanPipeline = new ImageScanPipeline(imageService);
+            registerPipelineMetrics(imageScanPipeline);
+        }
+        return imageScanPipeline;
+    }
+
+    /**
+     * @return The most severe alarm status of any zone
+     */
     public AlarmStatus getAlarmStatus() {
-        return securityRepository.getAlarmStatus();
+        return alarmState().alarmStatus();
     }
 
+    /**
+     * @return Alarm status of each zone that has had sensors, sorted by zone name
+     */
+    public Map<String, AlarmStatus> getZoneAlarmStatuses() {
+        return alarmState().zoneAlarmStatuses();
+    }
+
+    /**
+     * Returns a sorted, read-only snapshot of the sensors. The snapshot is only rebuilt after a sensor
+     * is added or removed through this service, so repeated reads don't copy or re-sort the set.
+     * Sensors added to or removed from the repository directly, bypassing this service, are not picked
+     * up, neither here nor in the zones' active sensor counts.
+     */
     public Set<Sensor> getSensors() {
-        return (new ConcurrentSkipListSet<Sensor>(securityRepository.getSensors()));
+        Set<Sensor> snapshot = sensorSnapshot;
+        return snapshot != null ? snapshot : rebuildSensorSnapshot();
     }
 
+    /**
+     * Version number of the sensor snapshot. Increases whenever a sensor is added or removed,
+     * so callers can cheaply tell whether the set they hold is still current.
+     */
+    public long getSensorVersion() {
+        getSensors();
+        return sensorVersion.get();
+    }
+
+    /**
+     * Adds a sensor that isn't in the system yet; an active one counts towards its zone's active
+     * sensors straight away.
+     */
     public void addSensor(Sensor sensor) {
-        securityRepository.addSensor(sensor);
+        changeSensorMembership(sensor, true);
     }
 
+    /**
+     * Removes a sensor that is in the system; an active one stops counting towards its zone.
+     */
     public void removeSensor(Sensor sensor) {
-        securityRepository.removeSensor(sensor);
+        changeSensorMembership(sensor, false);
+    }
+
+    private void changeSensorMembership(Sensor sensor, boolean add) {
+        //loaded first, so a state first loaded from the repository doesn't count this sensor as well
+        ZonedAlarmState state = alarmState();
+        //the sensor's lock keeps an activation of the same sensor from running between the write and the count
+        synchronized (sensor) {
+            if(add) {
+                securityRepository.addSensor(sensor);
+            } else {
+                securityRepository.removeSensor(sensor);
+            }
+            if(Boolean.TRUE.equals(sensor.getActive())) {
+                state.adjustActiveSensorCount(sensor.getZone(), add ? 1 : -1);
+            }
+        }
+        invalidateSensorSnapshot();
+    }
+
+    private synchronized Set<Sensor> rebuildSensorSnapshot() {
+        if(sensorSnapshot == null) {
+            sensorSnapshot = Collections.unmodifiableSet(new TreeSet<>(securityRepository.getSensors()));
+        }
+        return sensorSnapshot;
     }
 
-    private boolean areSensorsDeactivated(){
-        return getSensors().stream()
-                        .allMatch(s -> s.getActive() == false);
+    private synchronized void invalidateSensorSnapshot() {
+        sensorSnapshot = null;
+        sensorVersion.incrementAndGet();
     }
 
     public ArmingStatus getArmingStatus() {
-        return securityRepository.getArmingStatus();
+        return alarmState().armingStatus();
     }
 
     public boolean getCatStatus(){
-        return isCatDetected.get();
+        return alarmState().catDetected();
     }
 }
@@ -0,0 +1,410 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.metrics.MetricRegistration;
+import com.udacity.catpoint.security.metrics.MetricRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * Smooths out chattering sensors before their events reach the alarm logic. A motion sensor that
+ * flickers between active and inactive would otherwise move the alarm between NO_ALARM and
+ * PENDING_ALARM, write the repository and notify every listener on each flicker.
+ *
+ * A change of a sensor is held for the hold time of its {@link SensorType} and only passed on if the
+ * sensor doesn't change back in the meantime; a change that is reverted within the hold time is
+ * dropped. On top of that each sensor has a token bucket, so however long its changes are held, at
+ * most the configured number of changes per second reach the service, after an initial burst. A
+ * change that finds the bucket empty waits for the next token rather than being dropped, so the
+ * latest state of a sensor always gets through. Events that repeat the state a sensor is already in
+ * are passed on at once if a token is left, because activating an active sensor can still raise the
+ * alarm, and dropped otherwise.
+ *
+ * Held changes are kept in a hashed timer wheel: one slot per tick, each a linked list of the sensors
+ * due in that tick, walked by a single thread. Scheduling a sensor links its state into a slot, so a
+ * hundred thousand sensors cost a hundred thousand small objects and no scheduled tasks, and the
+ * thread sleeps while nothing is held.
+ */
+public class SensorDebouncer implements AutoCloseable {
+
+    public static final long DEFAULT_TICK_MILLIS = 10;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+    public static final double DEFAULT_CHANGES_PER_SECOND = 2;
+    public static final int DEFAULT_BURST = 5;
+
+    private static final long UNLINKED = -1;
+
+    private final BiConsumer<Sensor, Boolean> target;
+    private final ConcurrentMap<UUID, SensorState> states = new ConcurrentHashMap<>();
+    private final AtomicLongArray holdNanos = new AtomicLongArray(SensorType.values().length);
+    private volatile double changesPerSecond = DEFAULT_CHANGES_PER_SECOND;
+    private volatile int burst = DEFAULT_BURST;
+
+    //the wheel; guarded by wheelLock, as are the links of every SensorState
+    private final Object wheelLock = new Object();
+    private final SensorState[] wheel;
+    private final int wheelMask;
+    private final long tickNanos;
+    private final long startNanos = System.nanoTime();
+    private long currentTick;
+    private volatile int scheduledCount;
+
+    private final Thread ticker;
+    private volatile boolean closed;
+
+    private final LongAdder appliedCount = new LongAdder();
+    private final LongAdder suppressedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private final LongAdder rateLimitedCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final List<MetricRegistration> metricRegistrations;
+
+    /**
+     * Passes debounced changes to {@link SecurityService#changeSensorActivationStatus}.
+     */
+    public SensorDebouncer(SecurityService securityService) {
+        this(securityService::changeSensorActivationStatus, TimeUnit.MILLISECONDS.toNanos(DEFAULT_TICK_MILLIS), DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Passes debounced changes to a {@link SensorEventRing}, which applies them in batches.
+     */
+    public SensorDebouncer(SensorEventRing sensorEventRing) {
+        this(sensorEventRing::publish, TimeUnit.MILLISECONDS.toNanos(DEFAULT_TICK_MILLIS), DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param target Receives the changes that get through
+     * @param tickNanos Resolution of the hold times
+     * @param wheelSize Number of slots; a power of two
+     */
+    SensorDebouncer(BiConsumer<Sensor, Boolean> target, long tickNanos, int wheelSize) {
+        if(wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two");
+        }
+        if(tickNanos < 1) {
+            throw new IllegalArgumentException("tickNanos must be positive");
+        }
+        this.target = target;
+        this.tickNanos = tickNanos;
+        this.wheel = new SensorState[wheelSize];
+        this.wheelMask = wheelSize - 1;
+        setHoldTime(SensorType.DOOR, 50, TimeUnit.MILLISECONDS);
+        setHoldTime(SensorType.WINDOW, 50, TimeUnit.MILLISECONDS);
+        setHoldTime(SensorType.MOTION, 250, TimeUnit.MILLISECONDS);
+
+        MetricRegistry registry = MetricRegistry.global();
+        String help = "Sensor events by what the debouncer did with them";
+        metricRegistrations = List.of(
+                registry.counter("catpoint_sensor_debounce_events", help, appliedCount::sum, "outcome", "applied"),
+                registry.counter("catpoint_sensor_debounce_events", help, suppressedCount::sum, "outcome", "suppressed"),
+                registry.counter("catpoint_sensor_debounce_events", help, coalescedCount::sum, "outcome", "coalesced"),
+                registry.counter("catpoint_sensor_debounce_events", help, rateLimitedCount::sum, "outcome", "rate_limited"),
+                registry.gauge("catpoint_sensor_debounce_held", "Sensors with a change waiting in the debouncer", () -> scheduledCount));
+
+        //a platform thread, because it wakes up every tick while changes are held
+        ticker = new Thread(this::runTicker, "sensor-debouncer");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    /**
+     * How long a change of a sensor of the given type must last before it is passed on. Zero passes
+     * changes on at once, subject only to the rate limit. Applies to changes submitted from now on.
+     */
+    public void setHoldTime(SensorType sensorType, long duration, TimeUnit unit) {
+        if(duration < 0) {
+            throw new IllegalArgumentException("duration must not be negative");
+        }
+        holdNanos.set(sensorType.ordinal(), unit.toNanos(duration));
+    }
+
+    public long getHoldTime(SensorType sensorType, TimeUnit unit) {
+        return unit.convert(holdNanos.get(sensorType.ordinal()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param changesPerSecond Changes per sensor the token bucket refills with; zero turns rate limiting off
+     * @param burst Changes a sensor that was quiet for a while may make in a row
+     */
+    public void setRateLimit(double changesPerSecond, int burst) {
+        if(changesPerSecond < 0 || burst < 1) {
+            throw new IllegalArgumentException("changesPerSecond must not be negative and burst must be positive");
+        }
+        this.changesPerSecond = changesPerSecond;
+        this.burst = burst;
+    }
+
+    /**
+     * Takes a sensor event. Changes are passed on later, on the debouncer's thread; events that
+     * get through at once are passed on by the calling thread.
+     * @throws IllegalStateException if the debouncer is closed
+     */
+    public void submit(Sensor sensor, boolean active) {
+        if(closed) {
+            throw new IllegalStateException("Sensor debouncer is closed");
+        }
+        long now = System.nanoTime();
+        SensorState state = states.get(sensor.getSensorId());
+        if(state == null) {
+            state = states.computeIfAbsent(sensor.getSensorId(), id -> new SensorState(burst, now));
+        }
+        synchronized (state) {
+            state.sensor = sensor;
+            if(active == isActive(sensor)) {
+                if(state.hasPending) {
+                    //the sensor changed back within the hold time
+                    state.hasPending = false;
+                    suppressedCount.increment();
+                } else if(tryAcquire(state, now)) {
+                    passOn(sensor, active);
+                } else {
+                    rateLimitedCount.increment();
+                }
+                return;
+            }
+            if(state.hasPending) {
+                //already waiting for the same change; the hold time keeps running from the first event
+                coalescedCount.increment();
+                return;
+            }
+            state.hasPending = true;
+            state.pending = active;
+            long hold = holdNanos.get(sensor.getSensorType().ordinal());
+            if(hold == 0) {
+                if(tryAcquire(state, now)) {
+                    state.hasPending = false;
+                    passOn(sensor, active);
+                    return;
+                }
+                rateLimitedCount.increment();
+                state.dueNanos = nextTokenNanos(state, now);
+            } else {
+                state.dueNanos = now + hold;
+            }
+            schedule(state);
+        }
+    }
+
+    /**
+     * Drops the state kept for a sensor, such as when it is removed; a held change is discarded.
+     */
+    public void forget(Sensor sensor) {
+        SensorState state = states.remove(sensor.getSensorId());
+        if(state != null) {
+            synchronized (state) {
+                state.hasPending = false;
+            }
+        }
+    }
+
+    /**
+     * @return Number of sensors with a change waiting for its hold time or a token
+     */
+    public int getHeldCount() {
+        return scheduledCount;
+    }
+
+    public long getAppliedCount() {
+        return appliedCount.sum();
+    }
+
+    public long getSuppressedCount() {
+        return suppressedCount.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimitedCount.sum();
+    }
+
+    /**
+     * @return Number of changes the target threw on, when passed on from the debouncer's thread
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * Stops the debouncer's thread. Changes still held are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(ticker);
+        try {
+            ticker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metricRegistrations.forEach(MetricRegistration::close);
+    }
+
+    private static boolean isActive(Sensor sensor) {
+        synchronized (sensor) {
+            return Boolean.TRUE.equals(sensor.getActive());
+        }
+    }
+
+    private void passOn(Sensor sensor, boolean active) {
+        appliedCount.increment();
+        target.accept(sensor, active);
+    }
+
+    /**
+     * Takes a token from the sensor's bucket, refilling it for the time since the last call first.
+     * Called with the state locked.
+     */
+    private boolean tryAcquire(SensorState state, long now) {
+        double rate = changesPerSecond;
+        if(rate == 0) {
+            return true;
+        }
+        state.tokens = Math.min(burst, state.tokens + (now - state.refilledNanos) * rate / TimeUnit.SECONDS.toNanos(1));
+        state.refilledNanos = now;
+        if(state.tokens >= 1) {
+            state.tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private long nextTokenNanos(SensorState state, long now) {
+        double rate = changesPerSecond;
+        return rate == 0 ? now : now + (long) Math.ceil((1 - state.tokens) * TimeUnit.SECONDS.toNanos(1) / rate);
+    }
+
+    /**
+     * Links the state into the slot of its due time. A state already linked into an earlier slot is
+     * left there; it is looked at then and moved on. Called with the state locked.
+     */
+    private void schedule(SensorState state) {
+        synchronized (wheelLock) {
+            long tick = Math.max(Math.floorDiv(state.dueNanos - startNanos + tickNanos - 1, tickNanos), currentTick + 1);
+            if(state.deadlineTick != UNLINKED) {
+                if(state.deadlineTick <= tick) {
+                    return;
+                }
+                unlink(state);
+            }
+            int slot = (int) (tick & wheelMask);
+            state.deadlineTick = tick;
+            state.next = wheel[slot];
+            state.previous = null;
+            if(state.next != null) {
+                state.next.previous = state;
+            }
+            wheel[slot] = state;
+            if(scheduledCount++ == 0) {
+                LockSupport.unpark(ticker);
+            }
+        }
+    }
+
+    private void unlink(SensorState state) {
+        int slot = (int) (state.deadlineTick & wheelMask);
+        if(state.previous != null) {
+            state.previous.next = state.next;
+        } else {
+            wheel[slot] = state.next;
+        }
+        if(state.next != null) {
+            state.next.previous = state.previous;
+        }
+        state.next = null;
+        state.previous = null;
+        state.deadlineTick = UNLINKED;
+        scheduledCount--;
+    }
+
+    private void runTicker() {
+        List<SensorState> expired = new ArrayList<>();
+        while(!closed) {
+            long nowTick = (System.nanoTime() - startNanos) / tickNanos;
+            boolean idle;
+            synchronized (wheelLock) {
+                //after a long pause every slot is walked once, which finds everything that is due
+                long from = Math.max(currentTick + 1, nowTick - wheelMask);
+                for(long tick = from; tick <= nowTick && scheduledCount > 0; tick++) {
+                    SensorState state = wheel[(int) (tick & wheelMask)];
+                    while(state != null) {
+                        SensorState next = state.next;
+                        if(state.deadlineTick <= nowTick) {
+                            unlink(state);
+                            expired.add(state);
+                        }
+                        state = next;
+                    }
+                }
+                currentTick = Math.max(currentTick, nowTick);
+                idle = scheduledCount == 0;
+            }
+            for(SensorState state : expired) {
+                fire(state);
+            }
+            expired.clear();
+            if(idle) {
+                //schedule() unparks this thread when the wheel stops being empty
+                LockSupport.park(this);
+            } else {
+                LockSupport.parkNanos(this, startNanos + (nowTick + 1) * tickNanos - System.nanoTime());
+            }
+        }
+    }
+
+    private void fire(SensorState state) {
+        synchronized (state) {
+            if(!state.hasPending || state.deadlineTick != UNLINKED) {
+                return; //changed back, or already scheduled again by submit
+            }
+            long now = System.nanoTime();
+            if(state.dueNanos - now > 0) {
+                schedule(state);
+                return;
+            }
+            if(!tryAcquire(state, now)) {
+                rateLimitedCount.increment();
+                state.dueNanos = nextTokenNanos(state, now);
+                schedule(state);
+                return;
+            }
+            state.hasPending = false;
+            try {
+                passOn(state.sensor, state.pending);
+            } catch (RuntimeException e) {
+                failureCount.increment();
+            }
+        }
+    }
+
+    /**
+     * What the debouncer knows about one sensor. Locked on itself; the wheel links are guarded by
+     * the wheel lock instead.
+     */
+    private static final class SensorState {
+        Sensor sensor;
+        boolean hasPending;
+        boolean pending;
+        long dueNanos;
+        double tokens;
+        long refilledNanos;
+
+        long deadlineTick = UNLINKED;
+        SensorState next;
+        SensorState previous;
+
+        SensorState(int burst, long now) {
+            this.tokens = burst;
+            this.refilledNanos = now;
+        }
+    }
+}
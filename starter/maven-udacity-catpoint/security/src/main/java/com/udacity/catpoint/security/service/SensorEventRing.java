@@ -0,0 +1,343 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.metrics.MetricRegistration;
+import com.udacity.catpoint.security.metrics.MetricRegistry;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Takes sensor activation events from any number of threads, such as hardware gateways, and applies
+ * them to a {@link SecurityService} on one consumer thread, in the order they were published.
+ *
+ * Events are written into a ring of preallocated slots, so publishing allocates nothing and never
+ * waits for the repository or the listeners. The consumer takes every event that is ready as one
+ * batch, applies each to the alarm state, and only then writes the changed sensors and the resulting
+ * alarm status to the repository once, so a burst of events costs one round of I/O instead of one
+ * per event. When the ring is full, publish waits for the consumer and tryPublish gives up.
+ *
+ * Failures don't stop the consumer: an event that throws is counted and skipped, and sensors whose
+ * write failed are written again with the next batch.
+ */
+public class SensorEventRing implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+    public static final int DEFAULT_MAX_BATCH = 4096;
+
+    private static final int SPINS_BEFORE_PARK = 200;
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final SecurityService securityService;
+    private final int capacity;
+    private final int mask;
+    private final int maxBatch;
+
+    //the slots; slot i holds every event whose sequence modulo capacity is i
+    private final UUID[] sensorIds;
+    private final boolean[] activeFlags;
+    private final long[] timestamps;
+    //sequence last written to each slot; a slot is ready once it holds the sequence the consumer wants next
+    private final AtomicLongArray published;
+
+    //last sequence handed to a producer, and last sequence the consumer is done with
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private volatile long consumed = -1;
+
+    private final Thread consumer;
+    private final List<MetricRegistration> metricRegistrations;
+    private volatile boolean consumerParked;
+    private volatile boolean closed;
+
+    //consumer-thread state
+    private final Map<UUID, Sensor> sensorsById = new HashMap<>();
+    private long sensorsVersion = -1;
+    private final Set<Sensor> changedSensors = Collections.newSetFromMap(new IdentityHashMap<>());
+    private long batchApplied;
+    private long batchUnknown;
+    private long batchFailed;
+
+    //written by the consumer once per batch
+    private volatile long appliedCount;
+    private volatile long unknownSensorCount;
+    private volatile long failedCount;
+    private volatile long batchCount;
+    private volatile long flushFailureCount;
+    private volatile long lastAppliedTimestamp;
+
+    /**
+     * Creates a ring with the default capacity and batch size.
+     */
+    public SensorEventRing(SecurityService securityService) {
+        this(securityService, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    /**
+     * @param securityService Service the events are applied to
+     * @param capacity Number of slots; a power of two
+     * @param maxBatch Most events applied before the repository is written
+     */
+    public SensorEventRing(SecurityService securityService, int capacity, int maxBatch) {
+        if(capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        if(maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be positive");
+        }
+        this.securityService = securityService;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.maxBatch = maxBatch;
+        sensorIds = new UUID[capacity];
+        activeFlags = new boolean[capacity];
+        timestamps = new long[capacity];
+        published = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++) {
+            published.set(i, -1);
+        }
+
+        MetricRegistry registry = MetricRegistry.global();
+        metricRegistrations = List.of(
+                registry.gauge("catpoint_sensor_event_ring_backlog", "Sensor events queued but not yet applied", this::getBacklog),
+                registry.counter("catpoint_sensor_event_ring_applied", "Sensor events applied from the ring", this::getAppliedCount),
+                registry.counter("catpoint_sensor_event_ring_batches", "Batches of sensor events written to the repository", this::getBatchCount),
+                registry.counter("catpoint_sensor_event_ring_failed", "Sensor events that failed to apply", this::getFailedCount));
+
+        //a platform thread, because the consumer spins briefly while waiting for events
+        consumer = new Thread(this::runConsumer, "sensor-event-ring");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public void publish(Sensor sensor, boolean active) {
+        publish(sensor.getSensorId(), active, System.nanoTime());
+    }
+
+    /**
+     * Queues a sensor event, waiting for a free slot if the ring is full.
+     * @param sensorId Sensor that changed. Events for sensors the service doesn't know are counted and skipped.
+     * @param active New activation status
+     * @param timestampNanos When the event happened, in System.nanoTime() terms
+     * @throws IllegalStateException if the ring is closed
+     */
+    public void publish(UUID sensorId, boolean active, long timestampNanos) {
+        if(closed) {
+            throw new IllegalStateException("Sensor event ring is closed");
+        }
+        long sequence = claimed.incrementAndGet();
+        int spins = 0;
+        while(sequence - capacity > consumed) {
+            backOff(spins++);
+        }
+        write(sequence, sensorId, active, timestampNanos);
+    }
+
+    /**
+     * Queues a sensor event if a slot is free.
+     * @return False if the ring is full or closed and the event was not queued
+     */
+    public boolean tryPublish(UUID sensorId, boolean active, long timestampNanos) {
+        long sequence;
+        do {
+            if(closed) {
+                return false;
+            }
+            long current = claimed.get();
+            sequence = current + 1;
+            if(sequence - capacity > consumed) {
+                return false;
+            }
+            if(claimed.compareAndSet(current, sequence)) {
+                break;
+            }
+        } while(true);
+        write(sequence, sensorId, active, timestampNanos);
+        return true;
+    }
+
+    private void write(long sequence, UUID sensorId, boolean active, long timestampNanos) {
+        int index = (int) sequence & mask;
+        sensorIds[index] = sensorId;
+        activeFlags[index] = active;
+        timestamps[index] = timestampNanos;
+        //volatile write: makes the slot visible to the consumer, and orders it before the check below
+        published.set(index, sequence);
+        if(consumerParked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private static void backOff(int spins) {
+        if(spins < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+        } else {
+            Thread.yield();
+        }
+    }
+
+    private void runConsumer() {
+        long next = 0;
+        int idleSpins = 0;
+        while(true) {
+            long last = next - 1;
+            while(last - next + 1 < maxBatch && published.get((int) (last + 1) & mask) == last + 1) {
+                last++;
+            }
+            if(last < next) {
+                if(closed && claimed.get() < next) {
+                    return;
+                }
+                idle(next, idleSpins++);
+                continue;
+            }
+            idleSpins = 0;
+
+            try {
+                refreshSensors();
+            } catch (RuntimeException e) {
+                //keep the sensors known so far; the next batch loads them again
+                batchFailed++;
+            }
+            for(long sequence = next; sequence <= last; sequence++) {
+                int index = (int) sequence & mask;
+                try {
+                    apply(index);
+                } catch (RuntimeException e) {
+                    //one bad event, such as a history write failing, mustn't stop the ones behind it
+                    sensorIds[index] = null;
+                    batchFailed++;
+                }
+            }
+            lastAppliedTimestamp = timestamps[(int) last & mask];
+            //the events are applied, so producers may reuse the slots while the repository is written
+            consumed = last;
+            next = last + 1;
+            appliedCount += batchApplied;
+            unknownSensorCount += batchUnknown;
+            failedCount += batchFailed;
+            batchApplied = 0;
+            batchUnknown = 0;
+            batchFailed = 0;
+            batchCount++;
+            flush();
+        }
+    }
+
+    private void apply(int index) {
+        Sensor sensor = sensorsById.get(sensorIds[index]);
+        sensorIds[index] = null;
+        if(sensor == null) {
+            batchUnknown++;
+            return;
+        }
+        if(securityService.applySensorActivation(sensor, activeFlags[index])) {
+            changedSensors.add(sensor);
+        }
+        batchApplied++;
+    }
+
+    private void flush() {
+        if(changedSensors.isEmpty()) {
+            return;
+        }
+        try {
+            securityService.flushSensorUpdates(changedSensors);
+        } catch (RuntimeException e) {
+            //keep the sensors, so the next batch writes them along with its own
+            flushFailureCount++;
+            return;
+        }
+        changedSensors.clear();
+    }
+
+    private void idle(long next, int spins) {
+        if(spins < SPINS_BEFORE_PARK) {
+            Thread.onSpinWait();
+            return;
+        }
+        consumerParked = true;
+        //check again after announcing the park, so an event published in between isn't missed
+        if(published.get((int) next & mask) != next && !closed) {
+            LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        consumerParked = false;
+    }
+
+    private void refreshSensors() {
+        long version = securityService.getSensorVersion();
+        if(version != sensorsVersion) {
+            sensorsById.clear();
+            for(Sensor sensor : securityService.getSensors()) {
+                sensorsById.put(sensor.getSensorId(), sensor);
+            }
+            //sensors waiting from a failed flush that were removed since mustn't be written back
+            changedSensors.removeIf(sensor -> sensorsById.get(sensor.getSensorId()) != sensor);
+            sensorsVersion = version;
+        }
+    }
+
+    /**
+     * Stops accepting events, waits for the consumer to apply the ones already queued and stops it.
+     * Events published at the same moment as close may be dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        metricRegistrations.forEach(MetricRegistration::close);
+    }
+
+    /**
+     * @return Number of events applied to the service, including events that didn't change anything
+     */
+    public long getAppliedCount() {
+        return appliedCount;
+    }
+
+    public long getUnknownSensorCount() {
+        return unknownSensorCount;
+    }
+
+    /**
+     * @return Number of events that threw while being applied, plus batches whose sensors couldn't be loaded
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    public long getFlushFailureCount() {
+        return flushFailureCount;
+    }
+
+    /**
+     * @return Timestamp of the latest applied event, to compare with System.nanoTime() for the ingestion lag
+     */
+    public long getLastAppliedTimestamp() {
+        return lastAppliedTimestamp;
+    }
+
+    /**
+     * @return Events published but not yet applied
+     */
+    public long getBacklog() {
+        return Math.max(0, claimed.get() - consumed);
+    }
+}
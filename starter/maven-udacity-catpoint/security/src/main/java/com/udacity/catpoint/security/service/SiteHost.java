@@ -0,0 +1,225 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.SiteRepositoryImpl;
+import com.udacity.catpoint.security.data.SiteStore;
+import com.udacity.catpoint.security.metrics.MetricRegistration;
+import com.udacity.catpoint.security.metrics.MetricRegistry;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs the security systems of many sites in one JVM, one {@link SecurityService} per site, each with
+ * its own repository, alarm state and listeners.
+ *
+ * Sites are spread by id over a fixed number of shards, each an event loop on its own thread. Every
+ * call for a site, the scan verdicts for its cameras and the callbacks of its listeners run on its
+ * shard's thread, one after the other, so a site's state is only ever touched by one thread and the
+ * service's own synchronization is never contended. A slow call holds up the other sites of its
+ * shard, so calls should not block; picture scanning happens on the image scan workers shared by all
+ * sites, and persistence on the writer thread of the shared {@link SiteStore}.
+ *
+ * A site is loaded from the store the first time it is called and stays in memory until closed. An
+ * idle site owns no threads and takes a few kilobytes.
+ */
+public class SiteHost implements AutoCloseable {
+
+    public static final int DEFAULT_SCAN_QUEUE_CAPACITY = 1024;
+
+    private final SiteStore siteStore;
+    private final ImageService imageService;
+    private final ImageScanPipeline imageScanPipeline;
+    private final Shard[] shards;
+    private final AtomicInteger siteCount = new AtomicInteger();
+    private final List<MetricRegistration> metricRegistrations = new ArrayList<>();
+
+    /**
+     * Creates a host with one shard and one image scan worker per processor.
+     */
+    public SiteHost(SiteStore siteStore, ImageService imageService) {
+        this(siteStore, imageService, Runtime.getRuntime().availableProcessors(),
+                new ImageScanPipeline(imageService, DEFAULT_SCAN_QUEUE_CAPACITY, Runtime.getRuntime().availableProcessors(),
+                        ImageScanPipeline.OverflowPolicy.COALESCE_LATEST));
+    }
+
+    /**
+     * @param siteStore Store the sites are loaded from and written to
+     * @param imageService Image service shared by all sites
+     * @param shardCount Number of event loop threads
+     * @param imageScanPipeline Pipeline scanning the frames of all sites; closed with the host
+     */
+    public SiteHost(SiteStore siteStore, ImageService imageService, int shardCount, ImageScanPipeline imageScanPipeline) {
+        if(shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive");
+        }
+        this.siteStore = siteStore;
+        this.imageService = imageService;
+        this.imageScanPipeline = imageScanPipeline;
+        shards = new Shard[shardCount];
+        MetricRegistry registry = MetricRegistry.global();
+        for(int i = 0; i < shardCount; i++) {
+            Shard shard = new Shard(i);
+            shards[i] = shard;
+            metricRegistrations.add(registry.gauge("catpoint_site_host_queue_depth", "Calls waiting for a shard's event loop",
+                    () -> shard.getQueue().size(), "shard", String.valueOf(i)));
+        }
+        metricRegistrations.add(registry.gauge("catpoint_site_host_sites", "Sites loaded by the site host", siteCount::get));
+        metricRegistrations.add(registry.gauge("catpoint_image_scan_queue_depth", "Frames waiting to be scanned", imageScanPipeline::getQueuedCount));
+        metricRegistrations.add(registry.counter("catpoint_image_scan_frames", "Frames scanned", imageScanPipeline::getScannedCount, "outcome", "scanned"));
+        metricRegistrations.add(registry.counter("catpoint_image_scan_frames", "Frames scanned", imageScanPipeline::getDroppedCount, "outcome", "dropped"));
+        metricRegistrations.add(registry.counter("catpoint_image_scan_frames", "Frames scanned", imageScanPipeline::getCoalescedCount, "outcome", "coalesced"));
+    }
+
+    /**
+     * Runs an action against a site's service on the site's shard, loading the site first if needed.
+     * @return Future completed with the action's result, or exceptionally if it threw
+     * @throws IllegalArgumentException if the site id is invalid, see {@link SiteStore#isValidSiteId}
+     * @throws RejectedExecutionException if the host is closed
+     */
+    public <T> CompletableFuture<T> call(String siteId, Function<SecurityService, T> action) {
+        Shard shard = shardOf(siteId);
+        return CompletableFuture.supplyAsync(() -> action.apply(shard.site(siteId)), shard);
+    }
+
+    /**
+     * Like call, for actions without a result.
+     */
+    public CompletableFuture<Void> run(String siteId, Consumer<SecurityService> action) {
+        Shard shard = shardOf(siteId);
+        return CompletableFuture.runAsync(() -> action.accept(shard.site(siteId)), shard);
+    }
+
+    /**
+     * Queues a frame from one of a site's cameras on the shared scan workers. The verdict is applied
+     * to the site on its shard.
+     * @return Future completed with the scan result, or cancelled if the frame was dropped under load
+     */
+    public CompletableFuture<Boolean> submitFrame(String siteId, String cameraId, BufferedImage frame) {
+        return call(siteId, service -> service.submitFrame(cameraId, frame)).thenCompose(scan -> scan);
+    }
+
+    /**
+     * @return The executor of the site's shard, for work that must run in line with the site's calls
+     */
+    public Executor executorFor(String siteId) {
+        return shardOf(siteId);
+    }
+
+    /**
+     * Removes a site from memory. Its pending changes are written and its frames still waiting to be
+     * scanned are cancelled; the stored state is loaded again by the next call. A service of the site
+     * held on to by a caller no longer changes the stored state.
+     * @return Future completed with true if the site was loaded
+     */
+    public CompletableFuture<Boolean> closeSite(String siteId) {
+        Shard shard = shardOf(siteId);
+        return CompletableFuture.supplyAsync(() -> shard.closeSite(siteId), shard);
+    }
+
+    public int getSiteCount() {
+        return siteCount.get();
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Lets the shards finish the calls already queued, stops the scan workers and writes all pending
+     * changes to the store. The store itself stays open.
+     */
+    @Override
+    public void close() {
+        for(Shard shard : shards) {
+            shard.shutdown();
+        }
+        for(Shard shard : shards) {
+            try {
+                shard.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        imageScanPipeline.close();
+        siteStore.flush();
+        metricRegistrations.forEach(MetricRegistration::close);
+    }
+
+    private Shard shardOf(String siteId) {
+        if(!SiteStore.isValidSiteId(siteId)) {
+            throw new IllegalArgumentException("Invalid site id: " + siteId);
+        }
+        int hash = siteId.hashCode() * 0x9E3779B9;
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    /**
+     * One event loop: a single thread working through a queue of calls. The sites of the shard are
+     * only touched from that thread, so their map needs no synchronization.
+     */
+    private final class Shard extends ThreadPoolExecutor {
+
+        private final Map<String, Site> sites = new HashMap<>();
+
+        Shard(int index) {
+            super(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, "site-shard-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        SecurityService site(String siteId) {
+            Site site = sites.get(siteId);
+            if(site == null) {
+                site = openSite(siteId);
+                sites.put(siteId, site);
+                siteCount.incrementAndGet();
+            }
+            return site.service;
+        }
+
+        boolean closeSite(String siteId) {
+            Site site = sites.remove(siteId);
+            if(site == null) {
+                return false;
+            }
+            siteCount.decrementAndGet();
+            site.service.detachImageScanPipeline();
+            siteStore.release(site.repository);
+            return true;
+        }
+
+        private Site openSite(String siteId) {
+            SiteRepositoryImpl repository = siteStore.open(siteId);
+            SecurityService service = new SecurityService(repository, imageService);
+            service.setListenerExecutor(this);
+            service.setVerdictExecutor(this);
+            service.setImageScanPipeline(imageScanPipeline, siteId);
+            return new Site(service, repository);
+        }
+    }
+
+    private static final class Site {
+        private final SecurityService service;
+        private final SiteRepositoryImpl repository;
+
+        private Site(SecurityService service, SiteRepositoryImpl repository) {
+            this.service = service;
+            this.repository = repository;
+        }
+    }
+}
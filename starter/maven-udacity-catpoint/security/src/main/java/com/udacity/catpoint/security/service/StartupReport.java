@@ -0,0 +1,68 @@
+package com.udacity.catpoint.security.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Collects how long the steps of starting the application took, to be printed once it is up.
+ * Steps may run on different threads at the same time; milestones are measured from the moment
+ * the report was created, normally first thing in main.
+ *
+ * Printed when the catpoint.startupReport system property is true.
+ */
+public final class StartupReport {
+
+    public static final String ENABLED_PROPERTY = "catpoint.startupReport";
+    /** Makes the application exit as soon as it has started, for example to record a class data archive. */
+    public static final String EXIT_PROPERTY = "catpoint.exitAfterStartup";
+
+    private final long createdNanos = System.nanoTime();
+    private final List<String> entries = new ArrayList<>();
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    public static boolean exitAfterStartup() {
+        return Boolean.getBoolean(EXIT_PROPERTY);
+    }
+
+    /**
+     * Runs a step and records how long it took.
+     */
+    public <T> T time(String step, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            add(String.format("%s %d ms", step, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
+    }
+
+    /**
+     * Records the time since the report was created.
+     */
+    public void milestone(String name) {
+        add(String.format("%s at %d ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - createdNanos)));
+    }
+
+    private synchronized void add(String entry) {
+        entries.add(entry);
+    }
+
+    /**
+     * Prints the report if it is enabled.
+     */
+    public void print() {
+        if(isEnabled()) {
+            System.out.println(this);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Startup: " + String.join(", ", entries);
+    }
+}
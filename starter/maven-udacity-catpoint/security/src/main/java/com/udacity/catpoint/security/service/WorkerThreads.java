@@ -0,0 +1,58 @@
+package com.udacity.catpoint.security.service;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the threads used for background work. Uses virtual threads when the running JVM
+ * supports them and falls back to daemon platform threads otherwise. The lookup is done
+ * reflectively so the project still compiles for older releases.
+ */
+public final class WorkerThreads {
+
+    //Thread.ofVirtual(), Thread.Builder.name(String, long) and Thread.Builder.factory(), if present
+    private static final Method[] VIRTUAL_BUILDER = findVirtualBuilder();
+
+    private WorkerThreads() {
+    }
+
+    /**
+     * @param namePrefix Prefix for thread names, followed by a sequence number
+     * @return A factory producing virtual threads if available, otherwise daemon platform threads
+     */
+    public static ThreadFactory factory(String namePrefix) {
+        if(VIRTUAL_BUILDER != null) {
+            try {
+                Object builder = VIRTUAL_BUILDER[0].invoke(null);
+                builder = VIRTUAL_BUILDER[1].invoke(builder, namePrefix, 0L);
+                return (ThreadFactory) VIRTUAL_BUILDER[2].invoke(builder);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                //fall through to platform threads
+            }
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, namePrefix + counter.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public static boolean virtualThreadsAvailable() {
+        return VIRTUAL_BUILDER != null;
+    }
+
+    private static Method[] findVirtualBuilder() {
+        try {
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            return new Method[] {
+                    Thread.class.getMethod("ofVirtual"),
+                    builder.getMethod("name", String.class, long.class),
+                    builder.getMethod("factory")
+            };
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Alarm state split by zone. Each zone has its own {@link AlarmStateMachine} holding its active
+ * sensor count and its own pending or alarm state, so sensor events in different zones update
+ * different atomics and never contend. The system's alarm status is the most severe one of any zone.
+ *
+ * Arming changes, cat detection and setting the alarm directly concern the whole site; they are
+ * applied to every zone, one zone after another, under a lock that also covers creating zones, so
+ * no zone misses one. A sensor event may run between two zones being updated, which is the same
+ * as it happening just before or after the change in its own zone.
+ */
+final class ZonedAlarmState {
+
+    private final ConcurrentMap<String, AlarmStateMachine> zones = new ConcurrentHashMap<>();
+    //always present; its arming status and cat flag are the system's
+    private final AlarmStateMachine defaultZone;
+
+    /**
+     * @param activeSensorsByZone Number of active sensors in each zone known so far
+     */
+    ZonedAlarmState(ArmingStatus armingStatus, AlarmStatus alarmStatus, Map<String, Integer> activeSensorsByZone) {
+        defaultZone = new AlarmStateMachine(armingStatus, alarmStatus, false, activeSensorsByZone.getOrDefault(Sensor.DEFAULT_ZONE, 0));
+        zones.put(Sensor.DEFAULT_ZONE, defaultZone);
+        activeSensorsByZone.forEach((zone, active) ->
+                zones.computeIfAbsent(zone, z -> new AlarmStateMachine(armingStatus, alarmStatus, false, active)));
+    }
+
+    /**
+     * Applies an event to one zone.
+     * @return The zone's new packed state, or REJECTED if the event doesn't apply
+     */
+    long fire(String zone, AlarmStateMachine.Event event, int activeDelta) {
+        return zone(zone).fire(event, activeDelta);
+    }
+
+    /**
+     * Applies a site-wide event to every zone.
+     */
+    synchronized void fireAll(AlarmStateMachine.Event event) {
+        zones.values().forEach(machine -> machine.fire(event, 0));
+    }
+
+    synchronized void setAlarm(AlarmStatus alarmStatus) {
+        zones.values().forEach(machine -> machine.setAlarm(alarmStatus));
+    }
+
+    /**
+     * Changes one zone's active sensor count without any event, for example when an active sensor
+     * is added or removed.
+     */
+    void adjustActiveSensorCount(String zone, int activeDelta) {
+        zone(zone).adjustActiveSensorCount(activeDelta);
+    }
+
+    /**
+     * @return The most severe alarm status of any zone
+     */
+    AlarmStatus alarmStatus() {
+        AlarmStatus worst = AlarmStatus.NO_ALARM;
+        for(AlarmStateMachine machine : zones.values()) {
+            AlarmStatus alarmStatus = AlarmStateMachine.alarmStatus(machine.get());
+            if(alarmStatus == AlarmStatus.ALARM) {
+                return alarmStatus;
+            }
+            if(alarmStatus == AlarmStatus.PENDING_ALARM) {
+                worst = alarmStatus;
+            }
+        }
+        return worst;
+    }
+
+    ArmingStatus armingStatus() {
+        return AlarmStateMachine.armingStatus(defaultZone.get());
+    }
+
+    boolean catDetected() {
+        return AlarmStateMachine.catDetected(defaultZone.get());
+    }
+
+    /**
+     * @return Alarm status of each zone, sorted by zone name
+     */
+    Map<String, AlarmStatus> zoneAlarmStatuses() {
+        Map<String, AlarmStatus> statuses = new TreeMap<>();
+        zones.forEach((zone, machine) -> statuses.put(zone, AlarmStateMachine.alarmStatus(machine.get())));
+        return statuses;
+    }
+
+    private AlarmStateMachine zone(String zone) {
+        AlarmStateMachine machine = zones.get(zone);
+        return machine != null ? machine : createZone(zone);
+    }
+
+    /**
+     * Adds a zone that has had no sensors yet. It starts with the site's arming status and cat flag
+     * and no alarm of its own.
+     */
+    private synchronized AlarmStateMachine createZone(String zone) {
+        return zones.computeIfAbsent(zone, z -> {
+            long site = defaultZone.get();
+            return new AlarmStateMachine(AlarmStateMachine.armingStatus(site), AlarmStatus.NO_ALARM,
+                    AlarmStateMachine.catDetected(site), 0);
+        });
+    }
+}
@@ -3,8 +3,10 @@ module com.udacity.catpoint.security {
     requires miglayout;
     requires transitive java.desktop;
     requires java.prefs;
+    requires java.logging;
     requires com.google.common;
     requires com.google.gson;
+    requires jdk.httpserver;
     
     opens com.udacity.catpoint.security.data to com.google.gson;
 
@@ -0,0 +1,105 @@
+package com.udacity.catpoint.security.application;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.service.SecurityService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.event.TableModelEvent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class SensorTableModelTest {
+
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private SecurityRepository securityRepository;
+
+    private final Sensor backDoor = new Sensor("Back Door", SensorType.DOOR);
+    private final Sensor kitchenWindow = new Sensor("Kitchen Window", SensorType.WINDOW);
+    private final Set<Sensor> stored = new HashSet<>(Set.of(backDoor, kitchenWindow));
+    private final List<TableModelEvent> events = new ArrayList<>();
+
+    private SecurityService securityService;
+    private SensorTableModel model;
+
+    @BeforeEach
+    void init() {
+        when(securityRepository.getSensors()).thenAnswer(invocation -> new HashSet<>(stored));
+        securityService = new SecurityService(securityRepository, imageService);
+        model = new SensorTableModel(securityService);
+        model.addTableModelListener(events::add);
+    }
+
+    @Test
+    @DisplayName("Sensors added or removed through the panel insert or delete just their row, in sorted position")
+    public void whenSensorAddedOrRemoved_insertOrDeleteItsRow() {
+        doAnswer(invocation -> stored.add(invocation.getArgument(0))).when(securityRepository).addSensor(any(Sensor.class));
+        doAnswer(invocation -> stored.remove(invocation.getArgument(0))).when(securityRepository).removeSensor(any(Sensor.class));
+
+        Sensor frontDoor = new Sensor("Front Door", SensorType.DOOR);
+        securityService.addSensor(frontDoor);
+        model.sensorAdded(frontDoor);
+        assertEquals(3, model.getRowCount());
+        assertSame(frontDoor, model.getSensorAt(1));
+        assertEvent(TableModelEvent.INSERT, 1, events.get(0));
+
+        securityService.removeSensor(backDoor);
+        model.sensorRemoved(backDoor);
+        assertEquals(2, model.getRowCount());
+        assertSame(frontDoor, model.getSensorAt(0));
+        assertEvent(TableModelEvent.DELETE, 0, events.get(1));
+        assertEquals(2, events.size());
+    }
+
+    @Test
+    @DisplayName("A refresh only updates rows whose status changed, and reloads every row after sensors were added elsewhere")
+    public void whenRefreshed_updateChangedRowsOrReload() {
+        kitchenWindow.setActive(true);
+        model.refresh();
+        assertEquals(1, events.size());
+        assertEvent(TableModelEvent.UPDATE, 1, events.get(0));
+        assertEquals("Active", model.getValueAt(1, SensorTableModel.STATUS_COLUMN));
+        assertEquals("Deactivate", model.getValueAt(1, SensorTableModel.TOGGLE_COLUMN));
+
+        //nothing changed since the last refresh
+        model.refresh();
+        assertEquals(1, events.size());
+
+        //added without telling the model, as another panel would
+        doAnswer(invocation -> stored.add(invocation.getArgument(0))).when(securityRepository).addSensor(any(Sensor.class));
+        securityService.addSensor(new Sensor("Attic Motion", SensorType.MOTION));
+        model.refresh();
+        assertEquals(2, events.size());
+        assertEquals(Integer.MAX_VALUE, events.get(1).getLastRow());
+        assertEquals(3, model.getRowCount());
+        assertEquals("Attic Motion", model.getSensorAt(0).getName());
+    }
+
+    private static void assertEvent(int type, int row, TableModelEvent event) {
+        assertEquals(type, event.getType());
+        assertEquals(row, event.getFirstRow());
+        assertEquals(row, event.getLastRow());
+        assertEquals(TableModelEvent.ALL_COLUMNS, event.getColumn());
+    }
+}
@@ -0,0 +1,91 @@
+package com.udacity.catpoint.security.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class EventHistoryStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+
+    private EventHistoryStore open(int segmentCapacity) {
+        return new EventHistoryStore(directory, segmentCapacity, () -> clock.getAndAdd(10));
+    }
+
+    @Test
+    @DisplayName("Queries return the events of a time range, narrowed by type, status and sensor")
+    public void find_filtersByTimeTypeAndSensor() {
+        UUID door = UUID.randomUUID();
+        UUID window = UUID.randomUUID();
+        try (EventHistoryStore history = open(EventHistoryStore.DEFAULT_SEGMENT_CAPACITY)) {
+            history.recordArmingChange(ArmingStatus.DISARMED, ArmingStatus.ARMED_HOME); //1000
+            history.recordSensor(door, true); //1010
+            history.recordAlarmChange(AlarmStatus.NO_ALARM, AlarmStatus.PENDING_ALARM); //1020
+            history.recordSensor(window, true); //1030
+            history.recordAlarmChange(AlarmStatus.PENDING_ALARM, AlarmStatus.ALARM); //1040
+            history.recordSensor(door, false); //1050
+            history.recordCatVerdict(true); //1060
+
+            assertEquals(7, history.count(HistoryQuery.between(0, Long.MAX_VALUE)));
+            assertEquals(3, history.count(HistoryQuery.between(1010, 1040)));
+
+            List<HistoryEvent> alarms = history.find(HistoryQuery.between(0, Long.MAX_VALUE).alarmStatus(AlarmStatus.ALARM), 10);
+            assertEquals(1, alarms.size());
+            assertEquals(1040, alarms.get(0).getTimestampNanos());
+            assertEquals(AlarmStatus.PENDING_ALARM, alarms.get(0).getPreviousAlarmStatus());
+
+            List<HistoryEvent> doorEvents = history.find(HistoryQuery.between(0, Long.MAX_VALUE).sensor(door), 10);
+            assertEquals(2, doorEvents.size());
+            assertEquals(HistoryEvent.Type.SENSOR_ACTIVATED, doorEvents.get(0).getType());
+            assertEquals(HistoryEvent.Type.SENSOR_DEACTIVATED, doorEvents.get(1).getType());
+            assertEquals(door, doorEvents.get(1).getSensorId());
+
+            List<HistoryEvent> verdicts = history.find(HistoryQuery.between(0, Long.MAX_VALUE).type(HistoryEvent.Type.CAT_VERDICT), 10);
+            assertEquals(1, verdicts.size());
+            assertTrue(verdicts.get(0).isCatDetected());
+
+            assertEquals(2, history.find(HistoryQuery.between(0, Long.MAX_VALUE), 2).size());
+        }
+    }
+
+    @Test
+    @DisplayName("Events are kept across segments and restored when the store is reopened")
+    public void whenReopened_eventsAcrossSegmentsAreRestored() throws IOException {
+        UUID motion = UUID.randomUUID();
+        try (EventHistoryStore history = open(16)) {
+            for(int i = 0; i < 50; i++) {
+                history.recordSensor(motion, i % 2 == 0);
+            }
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(4, files.filter(file -> file.getFileName().toString().endsWith(".seg")).count());
+        }
+
+        try (EventHistoryStore history = open(16)) {
+            assertEquals(50, history.getEventCount());
+            history.recordAlarmChange(AlarmStatus.NO_ALARM, AlarmStatus.ALARM);
+            assertEquals(25, history.count(HistoryQuery.between(0, Long.MAX_VALUE).type(HistoryEvent.Type.SENSOR_ACTIVATED)));
+            assertEquals(50, history.count(HistoryQuery.between(0, Long.MAX_VALUE).sensor(motion)));
+            //events 10 to 29 span the first three segments
+            List<HistoryEvent> range = history.find(HistoryQuery.between(1_100, 1_300), 100);
+            assertEquals(20, range.size());
+            assertEquals(1_100, range.get(0).getTimestampNanos());
+            assertEquals(1_290, range.get(19).getTimestampNanos());
+            assertEquals(1, history.count(HistoryQuery.between(0, Long.MAX_VALUE).alarmStatus(AlarmStatus.ALARM)));
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.udacity.catpoint.security.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedSecurityRepositoryImplTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("Added, updated and removed sensors read back as stored")
+    public void whenSensorsChanged_readBackLatestState() throws IOException {
+        Sensor door = new Sensor("Front Door", SensorType.DOOR, "Ground Floor");
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            repository.updateSensor(door);
+
+            Sensor stored = repository.getSensor(door.getSensorId());
+            assertEquals("Front Door", stored.getName());
+            assertEquals(SensorType.DOOR, stored.getSensorType());
+            assertEquals("Ground Floor", stored.getZone());
+            assertTrue(stored.getActive());
+            assertEquals(Sensor.DEFAULT_ZONE, repository.getSensor(window.getSensorId()).getZone());
+            assertEquals(2, repository.getSensors().size());
+
+            repository.removeSensor(window);
+            assertNull(repository.getSensor(window.getSensorId()));
+            assertEquals(1, repository.getSensors().size());
+            //removing a sensor that isn't stored changes nothing
+            repository.removeSensor(window);
+            assertEquals(1, repository.getSensors().size());
+        }
+    }
+
+    @Test
+    @DisplayName("Sensors and statuses are restored when the repository is reopened")
+    public void whenReopened_stateIsReadFromFile() throws IOException {
+        Sensor door = new Sensor("Front Door", SensorType.DOOR, "Ground Floor");
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            repository.updateSensor(door);
+            repository.removeSensor(window);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        }
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            assertEquals(1, repository.getSensors().size());
+            Sensor restored = repository.getSensor(door.getSensorId());
+            assertEquals("Front Door", restored.getName());
+            assertEquals("Ground Floor", restored.getZone());
+            assertTrue(restored.getActive());
+            assertNull(repository.getSensor(window.getSensorId()));
+            assertEquals(ArmingStatus.ARMED_AWAY, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+
+            //the reopened index must find the sensor to update it in place
+            door.setActive(false);
+            repository.updateSensor(door);
+            assertEquals(1, repository.getSensors().size());
+            assertFalse(repository.getSensor(door.getSensorId()).getActive());
+        }
+    }
+
+    @Test
+    @DisplayName("The file grows past its initial capacity and keeps every sensor")
+    public void whenMoreSensorsThanCapacity_growAndKeepAll() throws IOException {
+        List<Sensor> sensors = new ArrayList<>();
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory, 4)) {
+            for(int i = 0; i < 100; i++) {
+                Sensor sensor = new Sensor("Sensor " + i, SensorType.values()[i % SensorType.values().length], "Zone " + i % 3);
+                sensors.add(sensor);
+                repository.addSensor(sensor);
+            }
+            for(int i = 0; i < 100; i += 2) {
+                repository.removeSensor(sensors.get(i));
+            }
+        }
+        //header plus 128 slots after doubling from 4
+        assertEquals(64 + 128 * 24, Files.size(directory.resolve("catpoint-sensors.dat")));
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory, 4)) {
+            Map<UUID, Sensor> restored = repository.getSensors().stream()
+                    .collect(Collectors.toMap(Sensor::getSensorId, Function.identity()));
+            assertEquals(50, restored.size());
+            for(int i = 0; i < 100; i++) {
+                Sensor sensor = sensors.get(i);
+                if(i % 2 == 0) {
+                    assertNull(repository.getSensor(sensor.getSensorId()));
+                } else {
+                    assertEquals(sensor.getName(), restored.get(sensor.getSensorId()).getName());
+                    assertEquals(sensor.getZone(), repository.getSensor(sensor.getSensorId()).getZone());
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Slots freed by removed sensors are reused before the file grows, also after reopening")
+    public void whenSensorRemoved_reuseItsSlot() throws IOException {
+        List<Sensor> sensors = new ArrayList<>();
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory, 4)) {
+            for(int i = 0; i < 4; i++) {
+                Sensor sensor = new Sensor("Sensor " + i, SensorType.MOTION);
+                sensors.add(sensor);
+                repository.addSensor(sensor);
+            }
+            repository.removeSensor(sensors.get(1));
+            repository.addSensor(new Sensor("Replacement", SensorType.DOOR));
+            assertEquals(4, repository.getSensors().size());
+            repository.removeSensor(sensors.get(2));
+        }
+        Path file = directory.resolve("catpoint-sensors.dat");
+        assertEquals(64 + 4 * 24, Files.size(file));
+
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory, 4)) {
+            Sensor replacement = new Sensor("Second Replacement", SensorType.WINDOW);
+            repository.addSensor(replacement);
+            assertEquals(4, repository.getSensors().size());
+            assertEquals("Second Replacement", repository.getSensor(replacement.getSensorId()).getName());
+            assertEquals("Sensor 3", repository.getSensor(sensors.get(3).getSensorId()).getName());
+        }
+        assertEquals(64 + 4 * 24, Files.size(file));
+    }
+
+    @Test
+    @DisplayName("A sensor file referring to names the name file lost is rejected on open")
+    public void whenNameFileLostEntries_refuseToOpen() throws IOException {
+        try (MappedSecurityRepositoryImpl repository = new MappedSecurityRepositoryImpl(directory)) {
+            repository.addSensor(new Sensor("Front Door", SensorType.DOOR, "Ground Floor"));
+        }
+        Files.write(directory.resolve("catpoint-names.dat"), new byte[0], StandardOpenOption.TRUNCATE_EXISTING);
+
+        assertThrows(UncheckedIOException.class, () -> new MappedSecurityRepositoryImpl(directory));
+    }
+}
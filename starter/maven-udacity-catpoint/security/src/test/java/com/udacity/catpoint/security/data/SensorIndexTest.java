@@ -0,0 +1,88 @@
+package com.udacity.catpoint.security.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SensorIndexTest {
+
+    @Test
+    @DisplayName("Random adds, updates and removes agree with a HashMap")
+    public void randomOperations_matchHashMap() {
+        Random random = new Random(42);
+        SensorIndex index = new SensorIndex();
+        Map<UUID, Sensor> expected = new HashMap<>();
+        List<UUID> ids = new ArrayList<>();
+        SensorType[] types = SensorType.values();
+        for(int i = 0; i < 20_000; i++) {
+            int operation = random.nextInt(10);
+            if(operation < 5 || ids.isEmpty()) {
+                Sensor sensor = new Sensor("Sensor " + i, types[random.nextInt(types.length)], "Zone " + random.nextInt(4));
+                sensor.setActive(random.nextBoolean());
+                assertTrue(index.put(sensor));
+                expected.put(sensor.getSensorId(), sensor);
+                ids.add(sensor.getSensorId());
+            } else if(operation < 8) {
+                UUID id = ids.get(random.nextInt(ids.size()));
+                boolean active = random.nextBoolean();
+                assertTrue(index.setActive(id, active));
+                expected.get(id).setActive(active);
+            } else {
+                UUID id = ids.remove(random.nextInt(ids.size()));
+                assertTrue(index.remove(id));
+                assertFalse(index.remove(id));
+                expected.remove(id);
+            }
+        }
+
+        assertEquals(expected.size(), index.size());
+        int activeCount = 0;
+        for(Sensor sensor : expected.values()) {
+            Sensor stored = index.get(sensor.getSensorId());
+            assertEquals(sensor.getName(), stored.getName());
+            assertEquals(sensor.getSensorType(), stored.getSensorType());
+            assertEquals(sensor.getZone(), stored.getZone());
+            assertEquals(sensor.getActive(), stored.getActive());
+            activeCount += sensor.getActive() ? 1 : 0;
+        }
+        assertEquals(activeCount, index.getActiveCount());
+        assertEquals(expected.keySet().size(), index.asSet().size());
+        assertTrue(index.asSet().containsAll(expected.values()));
+        assertNull(index.get(UUID.randomUUID()));
+    }
+
+    @Test
+    @DisplayName("An index that keeps sensors hands out and updates the instances it was given")
+    public void keepSensors_handsOutSameInstances() {
+        SensorIndex kept = new SensorIndex(4, true);
+        SensorIndex compact = new SensorIndex(4, false);
+        Sensor door = new Sensor("Front Door", SensorType.DOOR, "Ground Floor");
+        kept.put(door);
+        compact.put(door);
+
+        assertSame(door, kept.get(door.getSensorId()));
+        assertNotSame(door, compact.get(door.getSensorId()));
+        assertEquals(door, compact.get(door.getSensorId()));
+
+        kept.setActive(door.getSensorId(), true);
+        assertTrue(door.getActive());
+        compact.deactivateAll();
+        door.setActive(true);
+        assertFalse(compact.get(door.getSensorId()).getActive());
+        compact.put(door);
+        assertTrue(compact.isActive(compact.rowOf(door.getSensorId())));
+    }
+}
@@ -0,0 +1,122 @@
+package com.udacity.catpoint.security.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WriteAheadLogSecurityRepositoryImplTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("State written to the log is restored when the repository is reopened")
+    public void whenReopened_stateIsReplayedFromLog() throws IOException {
+        Sensor door = new Sensor("Front Door", SensorType.DOOR, "Ground Floor");
+        Sensor window = new Sensor("Kitchen Window", SensorType.WINDOW);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+            door.setActive(true);
+            repository.updateSensor(door);
+            repository.removeSensor(window);
+            repository.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            repository.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertEquals(1, repository.getSensors().size());
+            Sensor restored = repository.getSensors().iterator().next();
+            assertEquals(door.getSensorId(), restored.getSensorId());
+            assertEquals("Front Door", restored.getName());
+            assertEquals(SensorType.DOOR, restored.getSensorType());
+            assertEquals("Ground Floor", restored.getZone());
+            assertTrue(restored.getActive());
+            assertEquals(ArmingStatus.ARMED_AWAY, repository.getArmingStatus());
+            assertEquals(AlarmStatus.PENDING_ALARM, repository.getAlarmStatus());
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction into a snapshot keeps the latest state and empties the log")
+    public void whenCompactionThresholdReached_snapshotHoldsLatestState() throws IOException {
+        Sensor motion = new Sensor("Hallway", SensorType.MOTION, "Upstairs");
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory, 10, false)) {
+            repository.addSensor(motion);
+            for(int i = 0; i < 25; i++) {
+                motion.setActive(i % 2 == 0);
+                repository.updateSensor(motion);
+            }
+            repository.setArmingStatus(ArmingStatus.ARMED_HOME);
+        }
+        //26 sensor writes + 1 arming write with compaction every 10 leaves 7 entries in the log
+        assertTrue(Files.size(directory.resolve("catpoint.log")) > 0);
+        assertTrue(Files.exists(directory.resolve("catpoint.snapshot")));
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory, 10, false)) {
+            Sensor restored = repository.getSensors().iterator().next();
+            assertTrue(restored.getActive());
+            assertEquals("Upstairs", restored.getZone());
+            assertEquals(ArmingStatus.ARMED_HOME, repository.getArmingStatus());
+        }
+    }
+
+    @Test
+    @DisplayName("A torn entry at the end of the log is discarded during replay")
+    public void whenLogTailIsCorrupt_replayStopsAtLastGoodEntry() throws IOException {
+        Sensor door = new Sensor("Back Door", SensorType.DOOR);
+        Sensor window = new Sensor("Bedroom Window", SensorType.WINDOW);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            repository.addSensor(door);
+            repository.addSensor(window);
+        }
+        //chop the last few bytes off the second entry to simulate a crash mid-write
+        Path log = directory.resolve("catpoint.log");
+        long size = Files.size(log);
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            Map<UUID, Sensor> sensors = repository.getSensors().stream()
+                    .collect(Collectors.toMap(Sensor::getSensorId, Function.identity()));
+            assertEquals(1, sensors.size());
+            assertTrue(sensors.containsKey(door.getSensorId()));
+            assertFalse(sensors.containsKey(window.getSensorId()));
+
+            //appends after recovery must land after the last good entry
+            repository.addSensor(window);
+        }
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertEquals(2, repository.getSensors().size());
+        }
+    }
+
+    @Test
+    @DisplayName("A sensor without a name is rejected rather than stored with an empty one")
+    public void whenSensorNameNull_rejectAndStoreNothing() throws IOException {
+        Sensor unnamed = new Sensor(null, SensorType.MOTION);
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertThrows(IllegalArgumentException.class, () -> repository.addSensor(unnamed));
+            assertTrue(repository.getSensors().isEmpty());
+        }
+        try (WriteAheadLogSecurityRepositoryImpl repository = new WriteAheadLogSecurityRepositoryImpl(directory)) {
+            assertTrue(repository.getSensors().isEmpty());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.udacity.catpoint.security.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import com.udacity.catpoint.security.data.AlarmStatus;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class MetricRegistryTest {
+
+    @Test
+    @DisplayName("Histogram quantiles stay within the bucket precision across several orders of magnitude")
+    public void histogramQuantiles_withinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long nanos = 1; nanos <= 1_000_000; nanos++) {
+            histogram.record(nanos * 1000);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1_000_000, snapshot.getCount());
+        assertEquals(1_000_000_000L, snapshot.getMaxNanos());
+        for(double quantile : new double[] {0.5, 0.9, 0.99, 0.999}) {
+            double expected = quantile * 1_000_000_000L;
+            double actual = snapshot.valueAtQuantile(quantile);
+            assertTrue(actual >= expected && actual <= expected * 1.04, quantile + ": " + actual);
+        }
+    }
+
+    @Test
+    @DisplayName("Every value maps to a bucket whose range contains it")
+    public void bucketRanges_containTheirValues() {
+        long previousHighest = -1;
+        for(int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT; bucket++) {
+            long highest = LatencyHistogram.highestValueIn(bucket);
+            assertEquals(bucket, LatencyHistogram.bucketOf(previousHighest + 1));
+            assertEquals(bucket, LatencyHistogram.bucketOf(highest));
+            previousHighest = highest;
+        }
+        assertEquals(LatencyHistogram.MAX_TRACKABLE_NANOS, previousHighest);
+    }
+
+    @Test
+    @DisplayName("Metrics are written in the Prometheus text format")
+    public void writePrometheus_textFormat() throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        SecurityMetrics metrics = new SecurityMetrics(registry);
+        metrics.alarmTransition(AlarmStatus.NO_ALARM, AlarmStatus.PENDING_ALARM);
+        metrics.alarmTransition(AlarmStatus.NO_ALARM, AlarmStatus.PENDING_ALARM);
+        metrics.sensorChange().record(2_000_000);
+        registry.gauge("catpoint_queue_depth", "Queued", () -> 3);
+
+        StringBuilder text = new StringBuilder();
+        registry.writePrometheus(text);
+        String output = text.toString();
+
+        assertTrue(output.contains("# TYPE catpoint_alarm_transitions_total counter\n"));
+        assertTrue(output.contains("catpoint_alarm_transitions_total{from=\"NO_ALARM\",to=\"PENDING_ALARM\"} 2\n"));
+        assertTrue(output.contains("catpoint_alarm_transitions_total{from=\"ALARM\",to=\"NO_ALARM\"} 0\n"));
+        assertTrue(output.contains("# TYPE catpoint_sensor_change_seconds summary\n"));
+        assertTrue(output.contains("catpoint_sensor_change_seconds_count 1\n"));
+        assertTrue(output.contains("catpoint_sensor_change_seconds_sum 0.002\n"));
+        assertTrue(output.contains("catpoint_sensor_change_seconds_max 0.002\n"));
+        assertTrue(output.contains("catpoint_queue_depth 3.0\n"));
+    }
+
+    @Test
+    @DisplayName("Closing a registration removes its metric but not one that replaced it")
+    public void closeRegistration_removesOnlyItsOwnMetric() throws IOException {
+        MetricRegistry registry = new MetricRegistry();
+        MetricRegistration first = registry.gauge("catpoint_queue_depth", "Queued", () -> 1);
+        MetricRegistration second = registry.gauge("catpoint_queue_depth", "Queued", () -> 2);
+        first.close();
+
+        StringBuilder text = new StringBuilder();
+        registry.writePrometheus(text);
+        assertTrue(text.toString().contains("catpoint_queue_depth 2.0\n"));
+
+        second.close();
+        text.setLength(0);
+        registry.writePrometheus(text);
+        assertFalse(text.toString().contains("catpoint_queue_depth 2.0"));
+    }
+}
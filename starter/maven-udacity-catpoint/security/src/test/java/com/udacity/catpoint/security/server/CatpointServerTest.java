@@ -0,0 +1,116 @@
+package com.udacity.catpoint.security.server;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.EventHistoryStore;
+import com.udacity.catpoint.security.data.WriteAheadLogSecurityRepositoryImpl;
+import com.udacity.catpoint.security.service.SecurityService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.UUID;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CatpointServerTest {
+
+    @TempDir
+    Path directory;
+
+    private WriteAheadLogSecurityRepositoryImpl repository;
+    private CatpointServer server;
+
+    @BeforeEach
+    void init() throws IOException {
+        repository = new WriteAheadLogSecurityRepositoryImpl(directory);
+        server = new CatpointServer(new SecurityService(repository, new FakeImageService()), "127.0.0.1", 0);
+        server.start();
+    }
+
+    @AfterEach
+    void close() throws IOException {
+        server.close();
+        repository.close();
+    }
+
+    @Test
+    @DisplayName("Sensors added and armed over HTTP show up in the status")
+    public void whenSensorAddedAndSystemArmed_statusReflectsIt() throws IOException {
+        JsonObject status = JsonParser.parseString(request("GET", "/status", 200)).getAsJsonObject();
+        assertEquals("DISARMED", status.get("armingStatus").getAsString());
+        assertEquals("NO_ALARM", status.get("alarmStatus").getAsString());
+
+        JsonObject sensor = JsonParser.parseString(request("POST", "/sensors?name=Front+Door&type=DOOR", 201)).getAsJsonObject();
+        assertEquals("Front Door", sensor.get("name").getAsString());
+        JsonArray sensors = JsonParser.parseString(request("GET", "/sensors", 200)).getAsJsonArray();
+        assertEquals(1, sensors.size());
+
+        status = JsonParser.parseString(request("POST", "/arming?status=ARMED_HOME", 200)).getAsJsonObject();
+        assertEquals("ARMED_HOME", status.get("armingStatus").getAsString());
+        String id = sensors.get(0).getAsJsonObject().get("id").getAsString();
+        request("POST", "/sensors/" + id + "?active=true", 200);
+        status = JsonParser.parseString(request("GET", "/status", 200)).getAsJsonObject();
+        assertEquals("PENDING_ALARM", status.get("alarmStatus").getAsString());
+
+        request("DELETE", "/sensors/" + id, 204);
+        assertEquals(0, JsonParser.parseString(request("GET", "/sensors", 200)).getAsJsonArray().size());
+    }
+
+    @Test
+    @DisplayName("Bad parameters, unknown resources and wrong methods get 400, 404 and 405")
+    public void whenRequestIsWrong_answerWithErrorStatus() throws IOException {
+        assertTrue(request("POST", "/arming?status=ARMED_SOMEWHAT", 400).contains("error"));
+        request("POST", "/sensors?name=Window", 400);
+        request("POST", "/sensors/" + UUID.randomUUID() + "?active=true", 404);
+        request("GET", "/history", 404);
+        request("GET", "/arming", 405);
+        request("DELETE", "/status", 405);
+        request("PUT", "/sensors", 405);
+    }
+
+    @Test
+    @DisplayName("Closing the server detaches and closes the event history, then closes the repository")
+    public void whenClosed_historyAndRepositoryAreClosed() {
+        SecurityService securityService = server.getSecurityService();
+        securityService.setEventHistory(new EventHistoryStore(directory.resolve("history")));
+        server.setRepository(repository);
+
+        server.close();
+        assertNull(securityService.getEventHistory());
+        assertThrows(UncheckedIOException.class, () -> repository.setAlarmStatus(AlarmStatus.ALARM));
+    }
+
+    private String request(String method, String path, int expectedStatus) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        try {
+            assertEquals(expectedStatus, connection.getResponseCode(), method + " " + path);
+            InputStream body = expectedStatus < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if(body == null) {
+                return "";
+            }
+            try (InputStream in = body) {
+                return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.udacity.catpoint.security.server;
+
+import com.udacity.catpoint.image.service.LocalCatClassifierImageService;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ServerConfigTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("The local image service is only created from a configured model file")
+    public void whenLocalImageService_requireModelFile() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(ServerConfig.IMAGE_SERVICE, "local");
+        assertThrows(IllegalArgumentException.class, () -> new ServerConfig(properties).createImageService());
+
+        properties.setProperty(ServerConfig.IMAGE_SERVICE_MODEL, directory.resolve("missing.weights").toString());
+        assertThrows(UncheckedIOException.class, () -> new ServerConfig(properties).createImageService());
+
+        //a bias and the 130 feature weights, all zero
+        Path model = directory.resolve("cat.weights");
+        Files.writeString(model, "0 ".repeat(131));
+        properties.setProperty(ServerConfig.IMAGE_SERVICE_MODEL, model.toString());
+        assertTrue(new ServerConfig(properties).createImageService() instanceof LocalCatClassifierImageService);
+    }
+}
@@ -0,0 +1,24 @@
+package com.udacity.catpoint.security.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class CameraRegistryTest {
+
+    private final CameraRegistry cameras = new CameraRegistry();
+
+    @Test
+    @DisplayName("A verdict arriving after its camera was removed neither registers the camera again nor counts as a cat")
+    public void whenVerdictArrivesAfterCameraRemoved_verdictIsDropped() {
+        cameras.register("porch");
+        assertTrue(cameras.recordVerdict("porch", true));
+        cameras.unregister("porch");
+
+        assertFalse(cameras.recordVerdict("porch", true));
+        assertFalse(cameras.isRegistered("porch"));
+        assertFalse(cameras.anyCatDetected());
+    }
+}
@@ -0,0 +1,32 @@
+package com.udacity.catpoint.security.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class ImageScanPipelineTest {
+
+    @Test
+    @DisplayName("A scanner throwing an Error fails its frame without blocking the camera's next frame")
+    public void whenScannerThrowsError_futureFailsAndCameraIsReleased() throws Exception {
+        BufferedImage frame = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        AtomicInteger scans = new AtomicInteger();
+        try (ImageScanPipeline pipeline = new ImageScanPipeline((image, confidenceThreshhold) -> {
+            if(scans.getAndIncrement() == 0) {
+                throw new LinkageError("native library missing");
+            }
+            return true;
+        }, 4, 1, ImageScanPipeline.OverflowPolicy.COALESCE_LATEST)) {
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> pipeline.submit("garage", frame, 50.0f).get(5, TimeUnit.SECONDS));
+            assertTrue(failure.getCause() instanceof LinkageError);
+            assertTrue(pipeline.submit("garage", frame, 50.0f).get(5, TimeUnit.SECONDS));
+        }
+    }
+}
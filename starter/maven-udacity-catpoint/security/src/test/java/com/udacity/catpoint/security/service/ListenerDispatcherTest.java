@@ -0,0 +1,58 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.application.StatusListener;
+import com.udacity.catpoint.security.data.AlarmStatus;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class ListenerDispatcherTest {
+
+    @Mock
+    private StatusListener statusListener;
+
+    private final List<Runnable> queued = new ArrayList<>();
+    private final ListenerDispatcher dispatcher = new ListenerDispatcher();
+
+    @Test
+    @DisplayName("A listener callback that throws doesn't keep the listener's other callbacks from running")
+    public void whenListenerCallbackThrows_otherCallbacksStillRun() {
+        dispatcher.addStatusListener(statusListener, queued::add);
+        doThrow(new IllegalStateException("display gone")).when(statusListener).notify(AlarmStatus.ALARM);
+
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+        dispatcher.catDetected(true);
+        queued.forEach(Runnable::run);
+
+        verify(statusListener).catDetected(true);
+        assertEquals(1, dispatcher.getListenerStats().get(0).getFailures());
+    }
+
+    @Test
+    @DisplayName("A listener whose callback throws an Error still receives later events")
+    public void whenListenerCallbackThrowsError_laterEventsAreDelivered() {
+        dispatcher.addStatusListener(statusListener, queued::add);
+        doThrow(new AssertionError("bad state")).when(statusListener).notify(AlarmStatus.ALARM);
+
+        dispatcher.alarmStatusChanged(AlarmStatus.ALARM);
+        queued.forEach(Runnable::run);
+        queued.clear();
+
+        dispatcher.alarmStatusChanged(AlarmStatus.NO_ALARM);
+        assertEquals(1, queued.size());
+        queued.forEach(Runnable::run);
+        verify(statusListener).notify(AlarmStatus.NO_ALARM);
+        assertEquals(1, dispatcher.getListenerStats().get(0).getFailures());
+    }
+}
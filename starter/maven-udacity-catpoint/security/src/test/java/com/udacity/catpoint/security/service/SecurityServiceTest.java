@@ -10,17 +10,33 @@ import com.udacity.catpoint.security.data.SensorType;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyFloat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import com.udacity.catpoint.image.service.ImageService;
 
@@ -31,6 +47,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -56,6 +73,8 @@ public class SecurityServiceTest {
     @BeforeEach
     void init(){
         securityService = new SecurityService(securityRepository, imageService);
+        //call listeners on the test thread so they can be verified right away
+        securityService.setListenerExecutor(Runnable::run);
         sensor = new Sensor("TouchSensor", SensorType.DOOR);
     }
 
@@ -84,6 +103,7 @@ public class SecurityServiceTest {
     @Test
     @DisplayName("3. If pending alarm and all sensors are inactive, return to no alarm state.")
     public void whenAlarmPendingAndSensorAreInactive_alarmShouldBeSetToNoAlarm(){
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
         securityService.changeSensorActivationStatus(sensor, false);
         verify(securityRepository).setAlarmStatus(AlarmStatus.NO_ALARM);
@@ -109,6 +129,7 @@ public class SecurityServiceTest {
     @DisplayName("5. If a sensor is activated while already active and the system is in pending state, change it to alarm state.")
     public void whenSensorAllreadyActive_AndSystemInPending_changeStateToAlarm(){
         sensor.setActive(true);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
         securityService.changeSensorActivationStatus(sensor, true);
         verify(securityRepository).setAlarmStatus(AlarmStatus.ALARM);
@@ -138,13 +159,83 @@ public class SecurityServiceTest {
         verify(securityRepository).setAlarmStatus(AlarmStatus.ALARM);
     }
 
+    @Test
+    @DisplayName("A cat found by an asynchronous scan while armed-home puts the system into alarm status.")
+    public void whenAsyncScanFindsCatAndArmed_changeStateToAlarm() throws Exception {
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+
+        assertTrue(securityService.processImageAsync(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB))
+                .get(5, TimeUnit.SECONDS));
+        verify(securityRepository).setAlarmStatus(AlarmStatus.ALARM);
+    }
+
+    @Test
+    @DisplayName("A camera without a cat doesn't clear the alarm while another camera still sees one.")
+    public void whenOneCameraSeesCatAndAnotherDoesNot_catStatusStaysDetected() throws Exception {
+        BufferedImage catFrame = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+        BufferedImage emptyFrame = new BufferedImage(50, 50, BufferedImage.TYPE_INT_RGB);
+        when(imageService.imageContainsCat(catFrame, 50.0f)).thenReturn(true);
+        when(imageService.imageContainsCat(emptyFrame, 50.0f)).thenReturn(false);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        securityService.registerCamera("garage");
+        securityService.registerCamera("porch");
+
+        securityService.submitFrame("garage", catFrame).get(5, TimeUnit.SECONDS);
+        securityService.submitFrame("porch", emptyFrame).get(5, TimeUnit.SECONDS);
+
+        assertTrue(securityService.getCatStatus());
+        verify(securityRepository, atLeastOnce()).setAlarmStatus(AlarmStatus.ALARM);
+        verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    @DisplayName("A frame dropped under load leaves its future cancelled")
+    public void whenFrameDropped_futureIsCancelled() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(imageService.imageContainsCat(any(), anyFloat())).thenAnswer(invocation -> release.await(5, TimeUnit.SECONDS));
+        BufferedImage frame = new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+        try (ImageScanPipeline pipeline = new ImageScanPipeline(imageService, 1, 1, ImageScanPipeline.OverflowPolicy.DROP_OLDEST)) {
+            securityService.setImageScanPipeline(pipeline);
+            CompletableFuture<Boolean> scanning = securityService.processImageAsync("garage", frame);
+            //wait until the worker holds the first frame, so the next one queues behind it
+            while(pipeline.getQueuedCount() > 0) {
+                Thread.sleep(1);
+            }
+            CompletableFuture<Boolean> dropped = securityService.processImageAsync("porch", frame);
+            CompletableFuture<Boolean> kept = securityService.processImageAsync("yard", frame);
+            release.countDown();
+
+            assertTrue(dropped.isCancelled());
+            assertTrue(scanning.get(5, TimeUnit.SECONDS));
+            assertTrue(kept.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @DisplayName("Frames that don't differ from the last scanned frame keep its verdict without another scan.")
+    public void whenMotionGatingAndFrameUnchanged_reusePreviousVerdict() throws Exception {
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        securityService.enableMotionGating(0.05);
+
+        assertTrue(securityService.processImageAsync(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB))
+                .get(5, TimeUnit.SECONDS));
+        assertTrue(securityService.processImageAsync(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB))
+                .get(5, TimeUnit.SECONDS));
+
+        verify(imageService, times(1)).imageContainsCat(any(), anyFloat());
+        assertEquals(1, securityService.getMotionGate(SecurityService.DEFAULT_CAMERA_ID).getSkippedCount());
+    }
+
     @Test
     @DisplayName("8. If the image service identifies an image that does not contain a cat, change the status to no alarm as long as the sensors are not active.")
     public void whenImageIsNotCatAndSensorDeactivated_changeStatetoNoAlarm(){
         // pass sensors in deactivated state
-        when(securityService.getSensors()).thenReturn(
+        when(securityRepository.getSensors()).thenReturn(
             getSensorTestDataSet(false)
         );
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
         when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(false);
 
         securityService.processImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB));
@@ -161,10 +252,35 @@ public class SecurityServiceTest {
         .collect(Collectors.toSet());
     }
 
+    @Test
+    @DisplayName("A no-cat image doesn't clear the alarm while any sensor is still active.")
+    public void whenImageIsNotCatAndSensorActive_dontChangeStateToNoAlarm(){
+        Set<Sensor> sensors = getSensorTestDataSet(false);
+        sensors.iterator().next().setActive(true);
+        when(securityRepository.getSensors()).thenReturn(sensors);
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(false);
+
+        securityService.processImage(new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB));
+        verify(securityRepository, never()).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    @DisplayName("The sensor snapshot is reused until a sensor is added or removed")
+    public void whenSensorsReadRepeatedly_repositoryIsOnlyReadAfterChanges(){
+        Set<Sensor> first = securityService.getSensors();
+        assertSame(first, securityService.getSensors());
+        verify(securityRepository, times(1)).getSensors();
+
+        securityService.addSensor(sensor);
+        securityService.getSensors();
+        verify(securityRepository, times(2)).getSensors();
+    }
+
     @Test
     @DisplayName("9. If the system is disarmed, set the status to no alarm.")
     public void whenSystemIsDisarmed_verifyStateAsNoAlarm(){
         securityService.setSensorStatusListener(sensorStatusListener);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.ALARM);
         securityService.setArmingStatus(ArmingStatus.DISARMED);
         verify(securityRepository).setAlarmStatus(AlarmStatus.NO_ALARM);
     }
@@ -174,7 +290,7 @@ public class SecurityServiceTest {
     public void whenSystemIsArmed_verifySensorsToBeInActive(){
         securityService.setSensorStatusListener(sensorStatusListener);
         // pass sensors in deactivated state
-        when(securityService.getSensors()).thenReturn(
+        when(securityRepository.getSensors()).thenReturn(
             getSensorTestDataSet(true)
         );
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.PENDING_ALARM);
@@ -264,14 +380,163 @@ public class SecurityServiceTest {
     @DisplayName("when current image is Cat, changing to ARMED_HOME should set the status to ALARM")
     public void whenAlarmIsInPendingAndArmedAway_updateArmedStatusToDatabase(){
         // pass sensors in deactivated state
-        when(securityService.getSensors()).thenReturn(
+        when(securityRepository.getSensors()).thenReturn(
             getSensorTestDataSet(false)
         );
         securityService.setSensorStatusListener(sensorStatusListener);
         when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.ALARM);
         when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
         securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
-        verify(securityRepository, times(2)).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        // each reset sensor winds the alarm down one step: alarm, then pending, then no alarm
+        verify(securityRepository).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        verify(securityRepository).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    @DisplayName("Arming stores only the sensors it deactivated, in a single repository batch")
+    public void whenArmed_resetSensorsAreStoredInOneBatch(){
+        Set<Sensor> sensors = getSensorTestDataSet(false);
+        Sensor active = sensors.iterator().next();
+        active.setActive(true);
+        when(securityRepository.getSensors()).thenReturn(sensors);
+        securityService.setSensorStatusListener(sensorStatusListener);
+
+        securityService.setArmingStatus(ArmingStatus.ARMED_AWAY);
+
+        InOrder inOrder = inOrder(securityRepository);
+        inOrder.verify(securityRepository).beginBatch();
+        inOrder.verify(securityRepository).updateSensors(List.of(active));
+        inOrder.verify(securityRepository).commitBatch();
+        verify(securityRepository, never()).updateSensor(any());
+        assertFalse(active.getActive());
+    }
+
+    @Test
+    @DisplayName("A listener that falls behind only receives the latest alarm status")
+    public void whenListenerFallsBehind_intermediateStatusesAreCoalesced() {
+        List<Runnable> queued = new ArrayList<>();
+        securityService.setListenerExecutor(queued::add);
+        securityService.addStatusListener(statusListener);
+
+        securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        securityService.setAlarmStatus(AlarmStatus.ALARM);
+        securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        verify(statusListener, never()).notify(any(AlarmStatus.class));
+        assertEquals(1, queued.size());
+
+        queued.forEach(Runnable::run);
+        verify(statusListener).notify(AlarmStatus.PENDING_ALARM);
+        verify(statusListener, never()).notify(AlarmStatus.ALARM);
+        assertEquals(1, securityService.getListenerStats().get(0).getDeliveries());
+        assertEquals(2, securityService.getListenerStats().get(0).getCoalesced());
+    }
+
+    @Test
+    @DisplayName("A repository failure while publishing doesn't stop later changes from being stored")
+    public void whenRepositoryThrowsWhilePublishing_laterChangesArePublished() {
+        doThrow(new IllegalStateException("disk full")).doNothing().when(securityRepository).setAlarmStatus(any(AlarmStatus.class));
+
+        assertThrows(IllegalStateException.class, () -> securityService.setAlarmStatus(AlarmStatus.ALARM));
+        securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        verify(securityRepository).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+    }
+
+    @Test
+    @DisplayName("A change left to a publisher whose write fails is still stored before the failure is reported")
+    public void whenRepositoryThrowsWhileAnotherThreadChanges_thatChangeIsPublished() {
+        doAnswer(invocation -> {
+            //another thread changes the status while this write is failing and leaves publishing to us
+            Thread other = new Thread(() -> securityService.setAlarmStatus(AlarmStatus.PENDING_ALARM));
+            other.start();
+            other.join();
+            throw new IllegalStateException("disk full");
+        }).doNothing().when(securityRepository).setAlarmStatus(any(AlarmStatus.class));
+
+        assertThrows(IllegalStateException.class, () -> securityService.setAlarmStatus(AlarmStatus.ALARM));
+        verify(securityRepository).setAlarmStatus(AlarmStatus.PENDING_ALARM);
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getAlarmStatus());
+
+        //the publisher's role was released
+        securityService.setAlarmStatus(AlarmStatus.NO_ALARM);
+        verify(securityRepository).setAlarmStatus(AlarmStatus.NO_ALARM);
+    }
+
+    @Test
+    @DisplayName("An active sensor counts as soon as it is added or removed, so a no-cat image sees it")
+    public void whenActiveSensorAddedOrRemoved_countItStraightAway() {
+        Sensor window = new Sensor("window", SensorType.WINDOW);
+        window.setActive(true);
+        when(securityRepository.getSensors()).thenReturn(Set.of());
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_HOME);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        when(imageService.imageContainsCat(any(), anyFloat())).thenReturn(true, false);
+        BufferedImage image = new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB);
+
+        securityService.processImage(image);
+        securityService.addSensor(window);
+        securityService.processImage(image);
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+
+        securityService.removeSensor(window);
+        securityService.processImage(image);
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    @DisplayName("Sensors in one zone raise that zone's alarm without changing the other zones")
+    public void whenSensorsInDifferentZones_eachZoneKeepsItsOwnAlarm() {
+        Sensor garage = new Sensor("garage", SensorType.DOOR, "Garage");
+        Sensor hall = new Sensor("hall", SensorType.MOTION, "House");
+        when(securityRepository.getSensors()).thenReturn(Set.of(garage, hall));
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+
+        securityService.changeSensorActivationStatus(garage, true);
+        securityService.changeSensorActivationStatus(garage, true);
+        securityService.changeSensorActivationStatus(hall, true);
+
+        assertEquals(AlarmStatus.ALARM, securityService.getZoneAlarmStatuses().get("Garage"));
+        assertEquals(AlarmStatus.PENDING_ALARM, securityService.getZoneAlarmStatuses().get("House"));
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+
+        //the house winds down on its own while the garage stays in alarm
+        securityService.changeSensorActivationStatus(hall, false);
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getZoneAlarmStatuses().get("House"));
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    @DisplayName("Sensor events from many threads are all applied, and the repository ends up with the final state")
+    public void whenSensorsChangedConcurrently_noEventIsLost() throws Exception {
+        Set<Sensor> sensors = IntStream.range(0, 8)
+                .mapToObj(i -> new Sensor("s" + i, SensorType.MOTION))
+                .collect(Collectors.toSet());
+        when(securityRepository.getSensors()).thenReturn(sensors);
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+
+        ExecutorService executor = Executors.newFixedThreadPool(sensors.size());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(Sensor s : sensors) {
+                futures.add(executor.submit(() -> {
+                    for(int i = 0; i < 1000; i++) {
+                        securityService.changeSensorActivationStatus(s, i % 2 == 0);
+                    }
+                    securityService.changeSensorActivationStatus(s, false);
+                }));
+            }
+            for(Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // every sensor ended inactive, so the camera clearing leaves no alarm
+        securityService.processImage(new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB));
+        assertEquals(AlarmStatus.NO_ALARM, securityService.getAlarmStatus());
+        verify(securityRepository, atLeastOnce()).setAlarmStatus(AlarmStatus.NO_ALARM);
     }
     
 }
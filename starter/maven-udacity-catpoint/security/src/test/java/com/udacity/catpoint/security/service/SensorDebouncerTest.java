@@ -0,0 +1,80 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class SensorDebouncerTest {
+
+    //what reached the target, in order; the target also sets the sensor like the service would
+    private final List<Boolean> passedOn = Collections.synchronizedList(new ArrayList<>());
+    private final SensorDebouncer debouncer = new SensorDebouncer((sensor, active) -> {
+        synchronized (sensor) {
+            sensor.setActive(active);
+        }
+        passedOn.add(active);
+    }, TimeUnit.MILLISECONDS.toNanos(1), 64);
+
+    @AfterEach
+    void close() {
+        debouncer.close();
+    }
+
+    private void awaitPassedOn(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while(passedOn.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    @DisplayName("A change reverted within the hold time is dropped and a lasting one is passed on once")
+    public void chatteringSensor_onlyLastingChangePassedOn() throws InterruptedException {
+        Sensor motion = new Sensor("Hallway", SensorType.MOTION);
+        debouncer.setHoldTime(SensorType.MOTION, 40, TimeUnit.MILLISECONDS);
+        debouncer.setRateLimit(0, 1);
+
+        for(int i = 0; i < 10; i++) {
+            debouncer.submit(motion, true);
+            debouncer.submit(motion, false);
+        }
+        debouncer.submit(motion, true);
+        debouncer.submit(motion, true);
+        assertTrue(passedOn.isEmpty());
+
+        awaitPassedOn(1);
+        Thread.sleep(60);
+        assertEquals(List.of(true), passedOn);
+        assertEquals(10, debouncer.getSuppressedCount());
+        assertEquals(0, debouncer.getHeldCount());
+    }
+
+    @Test
+    @DisplayName("Changes beyond the burst wait for a token and the latest state still gets through")
+    public void rateLimitedSensor_latestStatePassedOnLater() throws InterruptedException {
+        Sensor door = new Sensor("Front Door", SensorType.DOOR);
+        debouncer.setHoldTime(SensorType.DOOR, 0, TimeUnit.MILLISECONDS);
+        debouncer.setRateLimit(20, 2);
+
+        debouncer.submit(door, true);
+        debouncer.submit(door, false);
+        debouncer.submit(door, true);
+        assertEquals(List.of(true, false), passedOn);
+        assertEquals(1, debouncer.getHeldCount());
+
+        awaitPassedOn(3);
+        assertEquals(List.of(true, false, true), passedOn);
+        assertEquals(1, debouncer.getRateLimitedCount());
+    }
+}
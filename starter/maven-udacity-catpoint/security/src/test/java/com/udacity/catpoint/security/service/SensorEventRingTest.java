@@ -0,0 +1,129 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.ImageService;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.SecurityRepository;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doCallRealMethod;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class SensorEventRingTest {
+
+    private SecurityService securityService;
+
+    @Mock
+    private ImageService imageService;
+
+    @Mock
+    private SecurityRepository securityRepository;
+
+    @BeforeEach
+    void init() {
+        securityService = new SecurityService(securityRepository, imageService);
+        securityService.setListenerExecutor(Runnable::run);
+    }
+
+    @Test
+    @DisplayName("Events published to the sensor event ring from many threads are applied in order per producer")
+    public void whenEventsPublishedToRing_applyAllAndWriteChangedSensors() throws Exception {
+        Sensor[] ringSensors = IntStream.range(0, 4)
+                .mapToObj(i -> new Sensor("ring" + i, SensorType.DOOR))
+                .toArray(Sensor[]::new);
+        when(securityRepository.getSensors()).thenReturn(Set.of(ringSensors));
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+
+        doCallRealMethod().when(securityRepository).updateSensors(any());
+
+        int eventsPerSensor = 10000;
+        SensorEventRing ring = new SensorEventRing(securityService, 256, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(ringSensors.length);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(Sensor s : ringSensors) {
+                futures.add(executor.submit(() -> {
+                    //the last event of each producer activates its sensor
+                    for(int i = 0; i < eventsPerSensor; i++) {
+                        ring.publish(s.getSensorId(), i % 2 == 1, System.nanoTime());
+                    }
+                }));
+            }
+            for(Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+            ring.close();
+        }
+
+        assertEquals((long) eventsPerSensor * ringSensors.length, ring.getAppliedCount());
+        assertEquals(0, ring.getUnknownSensorCount());
+        for(Sensor s : ringSensors) {
+            assertTrue(s.getActive());
+            verify(securityRepository, atLeastOnce()).updateSensor(s);
+        }
+        assertEquals(AlarmStatus.ALARM, securityService.getAlarmStatus());
+    }
+
+    @Test
+    @DisplayName("The sensor event ring skips events that throw and writes sensors again after a failed write")
+    public void whenRingEventOrWriteFails_consumerKeepsGoing() throws Exception {
+        Sensor broken = new Sensor("broken", SensorType.DOOR) {
+            @Override
+            public SensorType getSensorType() {
+                throw new IllegalStateException("unreadable sensor");
+            }
+        };
+        Sensor door = new Sensor("door", SensorType.DOOR);
+        when(securityRepository.getSensors()).thenReturn(Set.of(broken, door));
+        when(securityRepository.getArmingStatus()).thenReturn(ArmingStatus.ARMED_AWAY);
+        when(securityRepository.getAlarmStatus()).thenReturn(AlarmStatus.NO_ALARM);
+        doCallRealMethod().when(securityRepository).updateSensors(any());
+        doThrow(new IllegalStateException("disk full")).doNothing().when(securityRepository).updateSensor(door);
+
+        SensorEventRing ring = new SensorEventRing(securityService, 16, 16);
+        try {
+            ring.publish(broken, true);
+            ring.publish(door, true);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while(ring.getFlushFailureCount() == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(1, ring.getFlushFailureCount());
+            ring.publish(door, true);
+        } finally {
+            ring.close();
+        }
+
+        assertEquals(1, ring.getFailedCount());
+        assertEquals(2, ring.getAppliedCount());
+        verify(securityRepository, times(2)).updateSensor(door);
+    }
+}
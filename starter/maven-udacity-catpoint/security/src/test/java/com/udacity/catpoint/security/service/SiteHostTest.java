@@ -0,0 +1,98 @@
+package com.udacity.catpoint.security.service;
+
+import com.udacity.catpoint.image.service.FakeImageService;
+import com.udacity.catpoint.security.data.AlarmStatus;
+import com.udacity.catpoint.security.data.ArmingStatus;
+import com.udacity.catpoint.security.data.Sensor;
+import com.udacity.catpoint.security.data.SensorType;
+import com.udacity.catpoint.security.data.SiteStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SiteHostTest {
+
+    @TempDir
+    Path directory;
+
+    private static SiteHost newHost(SiteStore store) {
+        FakeImageService imageService = new FakeImageService();
+        return new SiteHost(store, imageService, 2, new ImageScanPipeline(imageService, 16, 1, ImageScanPipeline.OverflowPolicy.COALESCE_LATEST));
+    }
+
+    @Test
+    @DisplayName("Sites keep separate state, each changed on its own shard thread, and are restored from the store")
+    public void sites_isolatedAndPersisted() throws Exception {
+        try (SiteStore store = new SiteStore(directory, 1, TimeUnit.HOURS)) {
+            SiteHost host = newHost(store);
+            host.run("north", service -> {
+                Sensor door = new Sensor("Front Door", SensorType.DOOR);
+                service.addSensor(door);
+                service.setArmingStatus(ArmingStatus.ARMED_HOME);
+                service.changeSensorActivationStatus(door, true);
+            }).get(5, TimeUnit.SECONDS);
+            host.run("south", service -> service.addSensor(new Sensor("Garage", SensorType.WINDOW))).get(5, TimeUnit.SECONDS);
+
+            assertEquals(AlarmStatus.PENDING_ALARM, host.call("north", SecurityService::getAlarmStatus).get(5, TimeUnit.SECONDS));
+            assertEquals(AlarmStatus.NO_ALARM, host.call("south", SecurityService::getAlarmStatus).get(5, TimeUnit.SECONDS));
+            assertTrue(host.call("north", service -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS).startsWith("site-shard-"));
+            assertEquals(2, host.getSiteCount());
+            assertThrows(IllegalArgumentException.class, () -> host.call("../etc", SecurityService::getAlarmStatus));
+            host.close();
+        }
+
+        try (SiteStore store = new SiteStore(directory)) {
+            SiteHost host = newHost(store);
+            assertEquals(ArmingStatus.ARMED_HOME, host.call("north", SecurityService::getArmingStatus).get(5, TimeUnit.SECONDS));
+            assertEquals(AlarmStatus.PENDING_ALARM, host.call("north", SecurityService::getAlarmStatus).get(5, TimeUnit.SECONDS));
+            Sensor door = host.call("north", service -> service.getSensors().iterator().next()).get(5, TimeUnit.SECONDS);
+            assertEquals("Front Door", door.getName());
+            assertTrue(door.getActive());
+            assertEquals(1, host.call("south", service -> service.getSensors().size()).get(5, TimeUnit.SECONDS));
+            host.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Closing a site writes it and detaches its service, so a stale service can't overwrite the reopened site")
+    public void closeSite_detachesServiceAndRepository() throws Exception {
+        try (SiteStore store = new SiteStore(directory, 1, TimeUnit.HOURS)) {
+            SiteHost host = newHost(store);
+            SecurityService stale = host.call("north", service -> {
+                service.registerCamera("porch");
+                service.addSensor(new Sensor("Front Door", SensorType.DOOR));
+                return service;
+            }).get(5, TimeUnit.SECONDS);
+
+            assertTrue(host.closeSite("north").get(5, TimeUnit.SECONDS));
+            assertFalse(host.closeSite("north").get(5, TimeUnit.SECONDS));
+            assertEquals(0, host.getSiteCount());
+            assertTrue(stale.getCameraRegistry().getCameraIds().isEmpty());
+            //the stale service neither starts a pipeline of its own nor uses the shared one
+            assertThrows(IllegalStateException.class, () -> stale.processImageAsync("porch", new BufferedImage(8, 8, BufferedImage.TYPE_INT_RGB)));
+
+            //the store's writer hasn't run, so the reopened site sees the state written on close
+            assertEquals(1, host.call("north", service -> service.getSensors().size()).get(5, TimeUnit.SECONDS));
+            host.run("north", service -> service.addSensor(new Sensor("Garage", SensorType.WINDOW))).get(5, TimeUnit.SECONDS);
+            stale.setArmingStatus(ArmingStatus.ARMED_AWAY);
+            host.close();
+        }
+
+        try (SiteStore store = new SiteStore(directory)) {
+            SiteHost host = newHost(store);
+            assertEquals(2, host.call("north", service -> service.getSensors().size()).get(5, TimeUnit.SECONDS));
+            assertEquals(ArmingStatus.DISARMED, host.call("north", SecurityService::getArmingStatus).get(5, TimeUnit.SECONDS));
+            host.close();
+        }
+    }
+}